@@ -0,0 +1,66 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link OAuthSyntaxValidator} with the regular expressions it replaces, both
+ * compiled on each call ({@link String#matches(String)}) and precompiled.
+ *
+ * <p>Run with {@code mvn -P benchmarks test-compile exec:exec -Dbenchmark=OAuthSyntaxValidatorBenchmark},
+ * adding {@code -prof gc} to the JMH arguments to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OAuthSyntaxValidatorBenchmark {
+
+	private static final Pattern TOKEN_PATTERN = Pattern.compile(IOAuthToken.TOKEN_PATTERN);
+	private static final Pattern SCOPE_PATTERN = Pattern.compile(IOAuthToken.SCOPE_PATTERN);
+
+	private final String accessToken = "aZ09-._~+/bcdefghijklm";
+	private final String requestedScope = "user:read user:write account:read billing:read";
+
+	@Benchmark
+	public boolean accessTokenWithStringMatches() {
+		return accessToken.matches(IOAuthToken.TOKEN_PATTERN);
+	}
+
+	@Benchmark
+	public boolean accessTokenWithPrecompiledPattern() {
+		return TOKEN_PATTERN.matcher(accessToken).matches();
+	}
+
+	@Benchmark
+	public boolean accessTokenWithValidator() {
+		return OAuthSyntaxValidator.isValidAccessToken(accessToken, IOAuthToken.TOKEN_LENGTH);
+	}
+
+	@Benchmark
+	public boolean scopeWithStringMatches() {
+		return requestedScope.matches(IOAuthToken.SCOPE_PATTERN);
+	}
+
+	@Benchmark
+	public boolean scopeWithPrecompiledPattern() {
+		return SCOPE_PATTERN.matcher(requestedScope).matches();
+	}
+
+	@Benchmark
+	public boolean scopeWithValidator() {
+		return OAuthSyntaxValidator.isValidScope(requestedScope);
+	}
+}
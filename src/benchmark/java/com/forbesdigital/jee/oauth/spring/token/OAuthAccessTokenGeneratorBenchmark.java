@@ -0,0 +1,75 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.DatatypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link OAuthAccessTokenGenerator}, with and without prefetching, with a single
+ * {@link SecureRandom} shared by all the threads whose bytes are encoded in base64, when 64
+ * threads generate access tokens at the same time.
+ *
+ * <p>Run with {@code mvn -P benchmarks test-compile exec:exec -Dbenchmark=OAuthAccessTokenGeneratorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class OAuthAccessTokenGeneratorBenchmark {
+
+	private SecureRandom sharedRandom;
+	private SecureRandom sharedSha1Prng;
+	private OAuthAccessTokenGenerator generator;
+	private OAuthAccessTokenGenerator generatorWithoutPrefetch;
+
+	@Setup
+	public void setUp() throws NoSuchAlgorithmException {
+		sharedRandom = new SecureRandom();
+		sharedSha1Prng = SecureRandom.getInstance(OAuthAccessTokenGenerator.DEFAULT_ALGORITHM);
+		generator = new OAuthAccessTokenGenerator();
+		generatorWithoutPrefetch = new OAuthAccessTokenGenerator(OAuthAccessTokenGenerator.DEFAULT_ALGORITHM,
+			2 * Runtime.getRuntime().availableProcessors(), 1);
+	}
+
+	@Benchmark
+	public String sharedSecureRandom() {
+		return encode(sharedRandom);
+	}
+
+	@Benchmark
+	public String sharedSha1Prng() {
+		return encode(sharedSha1Prng);
+	}
+
+	@Benchmark
+	public String stripedGenerator() {
+		return generator.generate();
+	}
+
+	@Benchmark
+	public String stripedGeneratorWithoutPrefetch() {
+		return generatorWithoutPrefetch.generate();
+	}
+
+	private static String encode(SecureRandom random) {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return DatatypeConverter.printBase64Binary(bytes).substring(0, IOAuthToken.TOKEN_LENGTH);
+	}
+}
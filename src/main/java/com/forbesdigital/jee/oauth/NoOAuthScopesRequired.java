@@ -0,0 +1,18 @@
+package com.forbesdigital.jee.oauth;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks a REST resource method, or all the methods of a resource class, as not requiring
+ * any OAuth scope. No scope filter is registered for these methods, so that public
+ * endpoints such as health checks do not look at the security context at all.
+ *
+ * <p>This annotation cannot be combined with another scope annotation on the same method or
+ * class. On a class, it is overridden by the scope annotations of its methods.
+ *
+ * @see OAuthScopeDynamicFeature
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NoOAuthScopesRequired {
+}
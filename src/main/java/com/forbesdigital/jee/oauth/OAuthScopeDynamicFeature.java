@@ -1,15 +1,52 @@
 package com.forbesdigital.jee.oauth;
 
+import com.forbesdigital.jee.oauth.configuration.OAuthConfigurationException;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.ws.rs.container.DynamicFeature;
 import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.FeatureContext;
 import javax.ws.rs.ext.Provider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * The dynamic feature ensure that the REST application apply the right scope filtering.
  * 
+ * <p>The scope annotations are read from the {@link OAuthScopeIndex} generated at build time 
+ * when the resource method or class is in the index and still carries exactly the indexed 
+ * annotations, so that the scopes are neither copied nor parsed again. Otherwise they are 
+ * reflected: an index older than the classes, or a method or a class missing from it, never 
+ * relaxes the required scopes. The resource methods with the same scope annotations share 
+ * the same immutable filter, so that the work and the memory only depend on the number of 
+ * distinct scope requirements.
+ * 
+ * <p>The scope annotations of a resource method are looked up on the method, then on the 
+ * methods it overrides in the superclasses and the interfaces of the resource class. The 
+ * scope annotations of the resource class are looked up on the class, then on its 
+ * superclasses and its interfaces. In both cases, the first annotated method or class 
+ * wins. The annotations of the method then override the ones of the class, except that 
+ * the scopes of an {@link AllOAuthScopes} annotation on both are merged, the method 
+ * requiring the scopes of the class and its own ones. A resource method which ends up 
+ * with a {@link NoOAuthScopesRequired} annotation gets no filter at all, and one which 
+ * ends up without any annotation gets a filter denying all the requests.
+ * 
+ * <p>The {@link OAuthScopes} expressions are parsed when the resource methods are 
+ * configured: a malformed expression, or an expression or a {@link NoOAuthScopesRequired} 
+ * annotation combined with another scope annotation, fails the deployment with an 
+ * {@link OAuthConfigurationException}. A method or a class with both 
+ * {@link AllOAuthScopes} and {@link AnyOAuthScopes} is logged, since the latter is 
+ * ignored.
+ * 
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Florian Poulin <florian.poulin@forbes-digital.com>
  * @see OAuthScopeFilter
@@ -17,17 +54,288 @@ import javax.ws.rs.ext.Provider;
 @Provider
 public class OAuthScopeDynamicFeature implements DynamicFeature {
 
+	private static final Log LOG = LogFactory.getLog(OAuthScopeDynamicFeature.class);
+
+	private final OAuthScopeIndex index;
+	private final ConcurrentMap<ScopeRequirement, OAuthScopeFilter> filters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, ScopeRequirement> classRequirements = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor loading the scope index of the context class loader
+	 */
+	public OAuthScopeDynamicFeature() {
+		this(OAuthScopeIndex.load(getClassLoader()));
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param index The index of the scope annotations
+	 */
+	public OAuthScopeDynamicFeature(OAuthScopeIndex index) {
+		this.index = index;
+	}
+
 	@Override
 	public void configure(ResourceInfo resourceInfo, FeatureContext context) {
 		
-		// Retrieve the OAuthScope annotations on the REST Resource Method
-		AllOAuthScopes requiredScopes = resourceInfo.getResourceMethod().getAnnotation(AllOAuthScopes.class);
-		AnyOAuthScopes allowedScopes = resourceInfo.getResourceMethod().getAnnotation(AnyOAuthScopes.class);
+		Method resourceMethod = resourceInfo.getResourceMethod();
+		Class<?> resourceClass = resourceInfo.getResourceClass();
+		if (resourceClass == null || !resourceMethod.getDeclaringClass().isAssignableFrom(resourceClass)) {
+			resourceClass = resourceMethod.getDeclaringClass();
+		}
+
+		// Retrieve the OAuthScope annotations of the REST Resource Method and of its class
+		ScopeRequirement requirement = merge(getMethodRequirement(resourceMethod, resourceClass), getClassRequirement(resourceClass));
+		if (requirement != null && requirement.noScopesRequired) {
+			return;
+		}
 		
 		// Register a filter with values obtained from OAuth authorization annotations
-		context.register(new OAuthScopeFilter(
-			requiredScopes == null ? null : new TreeSet<>(Arrays.asList(requiredScopes.value())),
-			allowedScopes  == null ? null : new TreeSet<>(Arrays.asList(allowedScopes.value()))
-		));
+		context.register(getFilter(requirement != null ? requirement : ScopeRequirement.NONE));
+	}
+
+	/**
+	 * @return The number of distinct filters registered so far
+	 */
+	int getFilterCount() {
+		return filters.size();
+	}
+
+	/**
+	 * @return The scope annotations of the first method annotated among the resource method 
+	 * and the methods it overrides, null if there is none
+	 */
+	private ScopeRequirement getMethodRequirement(Method resourceMethod, Class<?> resourceClass) {
+		ScopeRequirement requirement = getRequirement(resourceMethod);
+		if (requirement != null) {
+			return requirement;
+		}
+		Class<?>[] parameterTypes = resourceMethod.getParameterTypes();
+		for (Class<?> type : getHierarchy(resourceClass)) {
+			if (type != resourceMethod.getDeclaringClass()) {
+				requirement = getRequirement(type, resourceMethod.getName(), parameterTypes);
+				if (requirement != null) {
+					return requirement;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The scope annotations of the first class annotated among the resource class, 
+	 * its superclasses and its interfaces, null if there is none
+	 */
+	private ScopeRequirement getClassRequirement(Class<?> resourceClass) {
+		ScopeRequirement requirement = classRequirements.get(resourceClass);
+		if (requirement == null) {
+			requirement = ScopeRequirement.NOT_ANNOTATED;
+			for (Class<?> type : getHierarchy(resourceClass)) {
+				ScopeRequirement typeRequirement = getRequirement(type);
+				if (typeRequirement != null) {
+					requirement = typeRequirement;
+					break;
+				}
+			}
+			classRequirements.putIfAbsent(resourceClass, requirement);
+		}
+		return requirement == ScopeRequirement.NOT_ANNOTATED ? null : requirement;
+	}
+
+	/**
+	 * @return The scope annotations of a method, from the index if it is indexed and if the 
+	 * method still carries the indexed annotations
+	 */
+	private ScopeRequirement getRequirement(Method method) {
+		OAuthScopeIndex.Entry entry = index.get(method);
+		return read(method, entry != null && entry.matches(method) ? entry : null);
+	}
+
+	/**
+	 * @return The scope annotations of the method declared by a class with this signature, 
+	 * null if there is none or if the method is not declared by the class
+	 */
+	private ScopeRequirement getRequirement(Class<?> type, String methodName, Class<?>[] parameterTypes) {
+		try {
+			return getRequirement(type.getDeclaredMethod(methodName, parameterTypes));
+		} catch (NoSuchMethodException nsme) {
+			// the method is not declared at this level
+			return null;
+		}
+	}
+
+	/**
+	 * @return The scope annotations of a class, from the index if it is indexed and if the 
+	 * class still carries the indexed annotations
+	 */
+	private ScopeRequirement getRequirement(Class<?> type) {
+		OAuthScopeIndex.Entry entry = index.get(type);
+		return read(type, entry != null && entry.matches(type) ? entry : null);
+	}
+
+	/**
+	 * @return The filter shared by all the resource methods with these scopes
+	 */
+	private OAuthScopeFilter getFilter(ScopeRequirement requirement) {
+		OAuthScopeFilter filter = filters.get(requirement);
+		if (filter == null) {
+			filter = requirement.expression != null ? new OAuthScopeFilter(requirement.expression) : new OAuthScopeFilter(requirement.allScopes, requirement.anyScopes);
+			OAuthScopeFilter existingFilter = filters.putIfAbsent(requirement, filter);
+			if (existingFilter != null) {
+				filter = existingFilter;
+			}
+		}
+		return filter;
+	}
+
+	/**
+	 * Read the scope annotations of a method or a class.
+	 * 
+	 * @param element The method or the class
+	 * @param entry The indexed annotations of the method or the class, null to reflect them
+	 * @return The scope annotations, null if there is none
+	 * @throws OAuthConfigurationException If the annotations are invalid
+	 */
+	private static ScopeRequirement read(AnnotatedElement element, OAuthScopeIndex.Entry entry) {
+		Set<String> allScopes;
+		Set<String> anyScopes;
+		OAuthScopeExpression expression;
+		boolean noScopesRequired;
+		if (entry != null) {
+			allScopes = entry.getAllScopes();
+			anyScopes = entry.getAnyScopes();
+			expression = entry.getExpression();
+			noScopesRequired = entry.isNoScopesRequired();
+		} else {
+			AllOAuthScopes requiredScopes = element.getAnnotation(AllOAuthScopes.class);
+			AnyOAuthScopes allowedScopes = element.getAnnotation(AnyOAuthScopes.class);
+			OAuthScopes scopeExpression = element.getAnnotation(OAuthScopes.class);
+			allScopes = requiredScopes == null ? null : new TreeSet<>(Arrays.asList(requiredScopes.value()));
+			anyScopes = allowedScopes == null ? null : new TreeSet<>(Arrays.asList(allowedScopes.value()));
+			expression = scopeExpression == null ? null : parse(element, scopeExpression.value());
+			noScopesRequired = element.isAnnotationPresent(NoOAuthScopesRequired.class);
+		}
+
+		if (noScopesRequired && (allScopes != null || anyScopes != null || expression != null)) {
+			throw new OAuthConfigurationException("The resource " + element 
+				+ " cannot have both a @NoOAuthScopesRequired annotation and another scope annotation.");
+		}
+		if (expression != null && (allScopes != null || anyScopes != null)) {
+			throw new OAuthConfigurationException("The resource " + element 
+				+ " cannot have both an @OAuthScopes annotation and an @AllOAuthScopes or @AnyOAuthScopes annotation.");
+		}
+		if (allScopes != null && anyScopes != null) {
+			LOG.warn("The @AnyOAuthScopes annotation of the resource " + element 
+				+ " is ignored, since its @AllOAuthScopes annotation takes priority.");
+			anyScopes = null;
+		}
+
+		if (allScopes == null && anyScopes == null && expression == null && !noScopesRequired) {
+			return null;
+		}
+		return new ScopeRequirement(allScopes, anyScopes, expression, noScopesRequired);
+	}
+
+	/**
+	 * @return The annotations of the method overriding the ones of the class, the required 
+	 * scopes of both being merged
+	 */
+	private static ScopeRequirement merge(ScopeRequirement methodRequirement, ScopeRequirement classRequirement) {
+		if (methodRequirement == null) {
+			return classRequirement;
+		}
+		if (classRequirement == null || methodRequirement.allScopes == null || classRequirement.allScopes == null) {
+			return methodRequirement;
+		}
+		Set<String> allScopes = new TreeSet<>(classRequirement.allScopes);
+		allScopes.addAll(methodRequirement.allScopes);
+		return new ScopeRequirement(allScopes, null, null, false);
+	}
+
+	/**
+	 * @return The class, its superclasses and then all their interfaces
+	 */
+	private static List<Class<?>> getHierarchy(Class<?> type) {
+		List<Class<?>> classes = new ArrayList<>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			classes.add(c);
+		}
+		Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Class<?> c : classes) {
+			addInterfaces(c, interfaces);
+		}
+		classes.addAll(interfaces);
+		return classes;
+	}
+
+	private static void addInterfaces(Class<?> type, Set<Class<?>> interfaces) {
+		for (Class<?> i : type.getInterfaces()) {
+			if (interfaces.add(i)) {
+				addInterfaces(i, interfaces);
+			}
+		}
+	}
+
+	/**
+	 * @throws OAuthConfigurationException If the expression is malformed
+	 */
+	private static OAuthScopeExpression parse(AnnotatedElement element, String expression) {
+		try {
+			return OAuthScopeExpression.parse(expression);
+		} catch (IllegalArgumentException iae) {
+			throw new OAuthConfigurationException("The @OAuthScopes annotation of the resource " + element 
+				+ " is invalid. " + iae.getMessage());
+		}
+	}
+
+	private static ClassLoader getClassLoader() {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return classLoader != null ? classLoader : OAuthScopeDynamicFeature.class.getClassLoader();
+	}
+
+	/**
+	 * Scopes of the annotations of a resource method or class, as immutable sets
+	 */
+	private static final class ScopeRequirement {
+
+		/**
+		 * Requirement of the resource methods without any annotation, denying all the requests
+		 */
+		private static final ScopeRequirement NONE = new ScopeRequirement(null, null, null, false);
+
+		/**
+		 * Cached requirement of the classes without any annotation
+		 */
+		private static final ScopeRequirement NOT_ANNOTATED = new ScopeRequirement(null, null, null, false);
+
+		private final Set<String> allScopes;
+		private final Set<String> anyScopes;
+		private final OAuthScopeExpression expression;
+		private final boolean noScopesRequired;
+
+		ScopeRequirement(Set<String> allScopes, Set<String> anyScopes, OAuthScopeExpression expression, boolean noScopesRequired) {
+			this.allScopes = allScopes == null ? null : Collections.unmodifiableSet(new TreeSet<>(allScopes));
+			this.anyScopes = anyScopes == null ? null : Collections.unmodifiableSet(new TreeSet<>(anyScopes));
+			this.expression = expression;
+			this.noScopesRequired = noScopesRequired;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ScopeRequirement)) {
+				return false;
+			}
+			ScopeRequirement other = (ScopeRequirement) obj;
+			return (allScopes == null ? other.allScopes == null : allScopes.equals(other.allScopes))
+				&& (anyScopes == null ? other.anyScopes == null : anyScopes.equals(other.anyScopes))
+				&& (expression == null ? other.expression == null : expression.equals(other.expression));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 31 * (allScopes == null ? 0 : allScopes.hashCode() + 1) + (anyScopes == null ? 0 : anyScopes.hashCode() + 1);
+			return 31 * hash + (expression == null ? 0 : expression.hashCode() + 1);
+		}
 	}
 }
@@ -0,0 +1,241 @@
+package com.forbesdigital.jee.oauth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Boolean expression of scopes, as written in an {@link OAuthScopes} annotation.
+ *
+ * <p>The expression is parsed once into its disjunctive normal form: a list of alternative
+ * terms, each term being a set of scopes which are all required. A token matches the
+ * expression when its scopes contain all the scopes of at least one term, so that the
+ * expression can be checked with one {@link OAuthScopeSet#containsAll(OAuthScopeSet)} per
+ * term, stopping at the first matching term.
+ *
+ * <p>Grammar, where a scope is any sequence of characters other than spaces, {@code &},
+ * {@code |} and parentheses:
+ * <pre>
+ * expression = term *( "|" term )
+ * term       = factor *( "&amp;" factor )
+ * factor     = scope / "(" expression ")"
+ * </pre>
+ */
+public final class OAuthScopeExpression {
+
+	/**
+	 * Maximum number of alternative terms of an expression
+	 */
+	public static final int MAX_TERMS = 64;
+
+	private final String expression;
+	private final List<Set<String>> terms;
+
+	private OAuthScopeExpression(String expression, List<Set<String>> terms) {
+		this.expression = expression;
+		this.terms = terms;
+	}
+
+	/**
+	 * Parse a scope expression.
+	 *
+	 * @param expression The expression
+	 * @return The parsed expression
+	 * @throws IllegalArgumentException If the expression is malformed or has more than
+	 * {@link #MAX_TERMS} alternative terms once expanded
+	 */
+	public static OAuthScopeExpression parse(String expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("The scope expression must not be null.");
+		}
+		Parser parser = new Parser(expression);
+		List<Set<String>> terms = parser.parseExpression();
+		if (parser.position < expression.length()) {
+			throw parser.error("unexpected '" + expression.charAt(parser.position) + "'");
+		}
+
+		List<Set<String>> immutableTerms = new ArrayList<>(terms.size());
+		for (Set<String> term : terms) {
+			immutableTerms.add(Collections.unmodifiableSet(term));
+		}
+		return new OAuthScopeExpression(expression, Collections.unmodifiableList(immutableTerms));
+	}
+
+	/**
+	 * @return The alternative terms of the expression, each term being a set of scopes which
+	 * are all required
+	 */
+	public List<Set<String>> getTerms() {
+		return terms;
+	}
+
+	/**
+	 * @return All the scopes of the expression
+	 */
+	public Set<String> getScopes() {
+		Set<String> scopes = new TreeSet<>();
+		for (Set<String> term : terms) {
+			scopes.addAll(term);
+		}
+		return scopes;
+	}
+
+	/**
+	 * Two expressions are equal when they have the same terms, whatever the way they are
+	 * written.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof OAuthScopeExpression && terms.equals(((OAuthScopeExpression) obj).terms);
+	}
+
+	@Override
+	public int hashCode() {
+		return terms.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/**
+	 * Recursive descent parser producing the terms of the disjunctive normal form
+	 */
+	private static class Parser {
+
+		private final String expression;
+		private int position;
+
+		Parser(String expression) {
+			this.expression = expression;
+		}
+
+		List<Set<String>> parseExpression() {
+			List<Set<String>> terms = parseTerm();
+			while (accept('|')) {
+				terms = or(terms, parseTerm());
+			}
+			return terms;
+		}
+
+		private List<Set<String>> parseTerm() {
+			List<Set<String>> terms = parseFactor();
+			while (accept('&')) {
+				terms = and(terms, parseFactor());
+			}
+			return terms;
+		}
+
+		private List<Set<String>> parseFactor() {
+			if (accept('(')) {
+				List<Set<String>> terms = parseExpression();
+				if (!accept(')')) {
+					throw error("missing ')'");
+				}
+				return terms;
+			}
+
+			skipSpaces();
+			int start = position;
+			while (position < expression.length() && isScopeChar(expression.charAt(position))) {
+				position++;
+			}
+			if (start == position) {
+				throw error(position < expression.length() ? "unexpected '" + expression.charAt(position) + "'" : "missing scope");
+			}
+			List<Set<String>> terms = new ArrayList<>();
+			terms.add(new TreeSet<>(Collections.singleton(expression.substring(start, position))));
+			return terms;
+		}
+
+		private boolean accept(char c) {
+			skipSpaces();
+			if (position < expression.length() && expression.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpaces() {
+			while (position < expression.length() && expression.charAt(position) == ' ') {
+				position++;
+			}
+		}
+
+		private static boolean isScopeChar(char c) {
+			return c > ' ' && c <= '~' && c != '"' && c != '\\' && c != '&' && c != '|' && c != '(' && c != ')';
+		}
+
+		private List<Set<String>> or(List<Set<String>> left, List<Set<String>> right) {
+			List<Set<String>> terms = new ArrayList<>(left);
+			terms.addAll(right);
+			return simplify(terms);
+		}
+
+		private List<Set<String>> and(List<Set<String>> left, List<Set<String>> right) {
+			if (left.size() * right.size() > MAX_TERMS) {
+				throw tooManyTerms();
+			}
+			List<Set<String>> terms = new ArrayList<>(left.size() * right.size());
+			for (Set<String> leftTerm : left) {
+				for (Set<String> rightTerm : right) {
+					Set<String> term = new TreeSet<>(leftTerm);
+					term.addAll(rightTerm);
+					terms.add(term);
+				}
+			}
+			return simplify(terms);
+		}
+
+		/**
+		 * Remove the terms containing another term, since they can never be the only
+		 * matching term, and sort the remaining ones so that equivalent expressions have
+		 * the same terms.
+		 */
+		private List<Set<String>> simplify(List<Set<String>> terms) {
+			List<Set<String>> result = new ArrayList<>(terms.size());
+			for (int i = 0; i < terms.size(); i++) {
+				if (!isAbsorbed(terms, i)) {
+					result.add(terms.get(i));
+				}
+			}
+			if (result.size() > MAX_TERMS) {
+				throw tooManyTerms();
+			}
+			Collections.sort(result, new Comparator<Set<String>>() {
+				@Override
+				public int compare(Set<String> first, Set<String> second) {
+					return first.toString().compareTo(second.toString());
+				}
+			});
+			return result;
+		}
+
+		/**
+		 * @return True if the term contains a smaller term, or an equal term found before it
+		 */
+		private static boolean isAbsorbed(List<Set<String>> terms, int index) {
+			Set<String> term = terms.get(index);
+			for (int i = 0; i < terms.size(); i++) {
+				Set<String> other = terms.get(i);
+				if (i != index && term.containsAll(other) && (term.size() > other.size() || i < index)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private IllegalArgumentException tooManyTerms() {
+			return new IllegalArgumentException("The scope expression '" + expression + "' must not expand to more than " + MAX_TERMS + " alternatives.");
+		}
+
+		private IllegalArgumentException error(String reason) {
+			return new IllegalArgumentException("The scope expression '" + expression + "' is malformed: " + reason + " at position " + position + ".");
+		}
+	}
+}
@@ -1,22 +1,24 @@
 package com.forbesdigital.jee.oauth;
 
+import com.forbesdigital.jee.oauth.configuration.OAuthContext;
 import com.forbesdigital.jee.oauth.spring.token.exceptions.OAuthAccessDeniedException;
 import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 /**
- * The OAuth scope filter enforces access to the REST operation based on the two OAuth 
- * annotations (<code>@AllOAuthScopes(...)</code> and <code>@AnyOAuthScopes(...)</code>).
+ * The OAuth scope filter enforces access to the REST operation based on the OAuth 
+ * annotations (<code>@AllOAuthScopes(...)</code>, <code>@AnyOAuthScopes(...)</code> and 
+ * <code>@OAuthScopes(...)</code>).
  * 
  * <ul>
- * <li>If no annotation is present, the access to the operation is denied</li>
+ * <li>If no annotation is present, neither on the method nor on its class (see 
+ *     {@link OAuthScopeDynamicFeature}), the access to the operation is denied</li>
  * <li>If both annotations are present, the <code>@AllOAuthScopes(...)</code> takes 
  *     priority (the <code>@AnyOAuthScopes(...)</code> is ignored)</li>
  * <li>If the <code>@AllOAuthScopes(...)</code> is present and is empty, the resource 
@@ -31,20 +33,29 @@ import org.springframework.security.core.context.SecurityContextHolder;
  * <li>If the <code>@AnyOAuthScopes(...)</code> is present (on its own) and contains
  *     scopes, the resource can only be accessed if a valid token containing at least one
  *     of the scopes is used</li>
+ * <li>If the <code>@OAuthScopes(...)</code> is present, the resource can only be accessed
+ *     if a valid token whose scopes satisfy the expression is used</li>
  * </ul>
+ * 
+ * <p>The scopes are checked as {@link OAuthScopeSet bitsets}: the scopes of the annotation 
+ * are converted once per tenant, and the granted scopes once per token details. An 
+ * expression is checked as the alternative bitsets of its 
+ * {@link OAuthScopeExpression#getTerms() terms}.
  *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Florian Poulin <florian.poulin@forbes-digital.com>
  */
 public class OAuthScopeFilter implements ContainerRequestFilter {
 
-	//TODO - add a @NoOAuthScopesRequired annotation
 	// TODO - make sure that we do not need to put the @OAuth annotation on the token endpoint
 	/**
 	 * Cache of OAuth scopes granting access to the REST Method Resource
 	 */
 	private final Set<String> allScopes;
 	private final Set<String> anyScopes;
+	private final OAuthScopeExpression expression;
+	private final OAuthScopeRegistryCache<OAuthScopeSet> checkedScopes = new OAuthScopeRegistryCache<>();
+	private final OAuthScopeRegistryCache<OAuthScopeSet[]> checkedTerms = new OAuthScopeRegistryCache<>();
 
 	/**
 	 * Constructor.
@@ -59,11 +70,30 @@ public class OAuthScopeFilter implements ContainerRequestFilter {
 	public OAuthScopeFilter(Set<String> allScopes, Set<String> anyScopes) {
 		this.allScopes = allScopes;
 		this.anyScopes = anyScopes;
+		this.expression = null;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expression The expression of the OAuth scopes required to get access to the 
+	 * annotated resource
+	 */
+	public OAuthScopeFilter(OAuthScopeExpression expression) {
+		this.allScopes = null;
+		this.anyScopes = null;
+		this.expression = expression;
 	}
 
 	@Override
 	public void filter(ContainerRequestContext requestContext) throws IOException {
 		
+		// handle a scope expression ("oAuthScopes" annotation)
+		if (expression != null) {
+			filterExpression();
+			return;
+		}
+		
 		// if there is no annotation at all, access is denied by default
 		if (allScopes == null && anyScopes == null) {
 			throw new OAuthAccessDeniedException(); // HTTP 403
@@ -83,11 +113,8 @@ public class OAuthScopeFilter implements ContainerRequestFilter {
 
 			if (authentication != null) {
 				role = ((OAuthTokenDetails) authentication.getPrincipal()).getClientRole();
-				Set<String> gaStr = new TreeSet<>();
-				for (GrantedAuthority ga : authentication.getAuthorities()) {
-					gaStr.add(ga.getAuthority());
-				}
-				if (gaStr.containsAll(allScopes)) {
+				OAuthScopeSet requiredScopes = getCheckedScopes();
+				if (getGrantedScopes(authentication, requiredScopes.getRegistry()).containsAll(requiredScopes)) {
 					return;
 				}
 			}
@@ -102,12 +129,70 @@ public class OAuthScopeFilter implements ContainerRequestFilter {
 		// otherwise, check that the token has at least one of the allowed scopes
 		final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 		if (authentication != null) {
-			for (GrantedAuthority ga : authentication.getAuthorities()) {
-				if (anyScopes.contains(ga.getAuthority())) {
+			OAuthScopeSet allowedScopes = getCheckedScopes();
+			if (getGrantedScopes(authentication, allowedScopes.getRegistry()).containsAny(allowedScopes)) {
+				return;
+			}
+		}
+		throw new OAuthAccessDeniedException(); // HTTP 403
+	}
+
+	private void filterExpression() throws OAuthAccessDeniedException {
+		String role = null;
+		final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null) {
+			role = ((OAuthTokenDetails) authentication.getPrincipal()).getClientRole();
+			OAuthScopeSet[] terms = getCheckedTerms();
+			OAuthScopeSet grantedScopes = getGrantedScopes(authentication, terms[0].getRegistry());
+			for (OAuthScopeSet term : terms) {
+				if (grantedScopes.containsAll(term)) {
 					return;
 				}
 			}
 		}
-		throw new OAuthAccessDeniedException(); // HTTP 403
+		throw new OAuthAccessDeniedException(expression.getScopes(), role); // HTTP 403
+	}
+
+	/**
+	 * @return The terms of the expression, as bitsets built once for each scope registry
+	 */
+	private OAuthScopeSet[] getCheckedTerms() {
+		OAuthScopeRegistry registry = OAuthContext.getScopeRegistry();
+		OAuthScopeSet[] result = checkedTerms.get(registry);
+		if (result == null) {
+			List<Set<String>> terms = expression.getTerms();
+			result = new OAuthScopeSet[terms.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = registry.toScopeSet(terms.get(i));
+			}
+			checkedTerms.put(registry, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The scopes of the annotation taking priority, as a bitset built once for each 
+	 * scope registry
+	 */
+	private OAuthScopeSet getCheckedScopes() {
+		OAuthScopeRegistry registry = OAuthContext.getScopeRegistry();
+		OAuthScopeSet result = checkedScopes.get(registry);
+		if (result == null) {
+			result = registry.toScopeSet(allScopes != null ? allScopes : anyScopes);
+			checkedScopes.put(registry, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The scopes granted to the authenticated token, kept along with its details when 
+	 * possible
+	 */
+	private static OAuthScopeSet getGrantedScopes(Authentication authentication, OAuthScopeRegistry registry) {
+		Object principal = authentication.getPrincipal();
+		if (principal instanceof OAuthTokenDetails && ((OAuthTokenDetails) principal).getAuthorities() != null) {
+			return ((OAuthTokenDetails) principal).getScopeSet(registry);
+		}
+		return registry.toAuthoritiesScopeSet(authentication.getAuthorities());
 	}
 }
@@ -0,0 +1,184 @@
+package com.forbesdigital.jee.oauth;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Implications between hierarchical scopes, whose segments are separated by a separator
+ * such as {@code ':'}. A scope implies itself and all the scopes below it, and a wildcard
+ * scope ending with the separator and {@code '*'} implies all the scopes below its
+ * prefix: with the {@code ':'} separator, both {@code orders} and {@code orders:*} imply
+ * {@code orders:read} and {@code orders:read:history}. The {@code *} scope implies all the
+ * scopes.
+ *
+ * <p>The configured scopes are compiled into a trie of their segments once, and the
+ * configured scopes implied by each of them are computed at the same time.
+ *
+ * @see OAuthScopeRegistry
+ * @see com.forbesdigital.jee.oauth.configuration.OAuthContext#getScopeHierarchy()
+ */
+public final class OAuthScopeHierarchy {
+
+	/**
+	 * Last segment of the wildcard scopes
+	 */
+	public static final String WILDCARD = "*";
+
+	private final String separator;
+	private final Pattern segmentSeparator;
+	private final Node root = new Node();
+	private final Map<String, Set<String>> impliedScopes = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuredScopes The scopes of the configuration, null if none
+	 * @param separator The separator of the segments of the scopes
+	 * @throws IllegalArgumentException If the separator is empty
+	 */
+	public OAuthScopeHierarchy(Collection<String> configuredScopes, String separator) {
+		if (separator == null || separator.isEmpty()) {
+			throw new IllegalArgumentException("The separator must not be empty.");
+		}
+		this.separator = separator;
+		this.segmentSeparator = Pattern.compile(Pattern.quote(separator));
+
+		if (configuredScopes != null) {
+			for (String scope : configuredScopes) {
+				add(scope);
+			}
+			for (String scope : configuredScopes) {
+				impliedScopes.put(scope, Collections.unmodifiableSet(computeImpliedScopes(scope)));
+			}
+		}
+	}
+
+	/**
+	 * @return The separator of the segments of the scopes
+	 */
+	public String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @param scope A scope
+	 * @return The scope and the configured scopes it implies
+	 */
+	public Set<String> getImpliedScopes(String scope) {
+		Set<String> result = impliedScopes.get(scope);
+		return result != null ? result : computeImpliedScopes(scope);
+	}
+
+	/**
+	 * Check whether a scope is implied by one of the granted scopes, by looking up the scope
+	 * and the exact and wildcard scopes of its ancestors.
+	 *
+	 * @param grantedScopes The granted scopes
+	 * @param scope A scope
+	 * @return True if the scope is one of the granted scopes or is implied by one of them
+	 */
+	public boolean implies(Set<String> grantedScopes, String scope) {
+		if (grantedScopes.contains(scope) || grantedScopes.contains(WILDCARD)) {
+			return true;
+		}
+		int end = scope.lastIndexOf(separator);
+		while (end > 0) {
+			String prefix = scope.substring(0, end);
+			if (grantedScopes.contains(prefix) || grantedScopes.contains(prefix + separator + WILDCARD)) {
+				return true;
+			}
+			end = scope.lastIndexOf(separator, end - 1);
+		}
+		return false;
+	}
+
+	private void add(String scope) {
+		if (scope.equals(WILDCARD)) {
+			root.wildcardScope = scope;
+			return;
+		}
+		boolean wildcard = isWildcard(scope);
+		Node node = root;
+		for (String segment : segments(wildcard ? prefix(scope) : scope)) {
+			Node child = node.children.get(segment);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segment, child);
+			}
+			node = child;
+		}
+		if (wildcard) {
+			node.wildcardScope = scope;
+		} else {
+			node.scope = scope;
+		}
+	}
+
+	private Set<String> computeImpliedScopes(String scope) {
+		Set<String> result = new TreeSet<>();
+		result.add(scope);
+
+		boolean wildcard = isWildcard(scope);
+		Node node = scope.equals(WILDCARD) ? root : find(wildcard ? prefix(scope) : scope);
+		if (node != null) {
+			if (!wildcard && node.wildcardScope != null) {
+				result.add(node.wildcardScope);
+			}
+			for (Node child : node.children.values()) {
+				child.collect(result);
+			}
+		}
+		return result;
+	}
+
+	private Node find(String scope) {
+		Node node = root;
+		for (String segment : segments(scope)) {
+			node = node.children.get(segment);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	private boolean isWildcard(String scope) {
+		return scope.equals(WILDCARD) || scope.endsWith(separator + WILDCARD);
+	}
+
+	private String prefix(String wildcardScope) {
+		return wildcardScope.substring(0, wildcardScope.length() - separator.length() - WILDCARD.length());
+	}
+
+	private String[] segments(String scope) {
+		return segmentSeparator.split(scope, -1);
+	}
+
+	/**
+	 * Segment of the trie
+	 */
+	private static class Node {
+
+		private final Map<String, Node> children = new TreeMap<>();
+		private String scope;
+		private String wildcardScope;
+
+		private void collect(Set<String> result) {
+			if (scope != null) {
+				result.add(scope);
+			}
+			if (wildcardScope != null) {
+				result.add(wildcardScope);
+			}
+			for (Node child : children.values()) {
+				child.collect(result);
+			}
+		}
+	}
+}
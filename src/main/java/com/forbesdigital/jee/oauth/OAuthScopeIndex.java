@@ -0,0 +1,343 @@
+package com.forbesdigital.jee.oauth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the scope annotations of the resource methods and classes, generated at build
+ * time by the {@link com.forbesdigital.jee.oauth.processing.OAuthScopeIndexProcessor}, so
+ * that the scope annotations do not have to be reflected at deployment time.
+ *
+ * <p>The index is read from all the {@link #INDEX_RESOURCE} resources of the class loader.
+ * Each entry is keyed by the {@link #key(Method) signature} of an annotated method, or by the
+ * binary name of an annotated class, followed by {@code .all} or {@code .any} for the scopes
+ * of the annotation separated by spaces, by {@code .expression} for the expression of an
+ * {@link OAuthScopes} annotation, or by {@code .none} for a {@link NoOAuthScopesRequired}
+ * annotation.
+ *
+ * <p>The entries are grouped by class and by method name, so that looking up a method which
+ * is not annotated costs two map lookups, and the parameter types are only compared with the
+ * ones of the indexed methods with the same name. An entry is only used if its method or
+ * class still carries exactly the indexed annotations, see {@link Entry#matches}. The methods
+ * and the classes which are not in the index, for instance because they were compiled
+ * without the processor, and the ones whose annotations changed since the index was
+ * generated, are reflected as before.
+ *
+ * @see OAuthScopeDynamicFeature
+ */
+public final class OAuthScopeIndex {
+
+	/**
+	 * Location of the generated index in the class path
+	 */
+	public static final String INDEX_RESOURCE = "META-INF/oauth/scope-index.properties";
+
+	/**
+	 * Suffixes of the keys of the required scopes ({@link AllOAuthScopes}) and of the allowed
+	 * scopes ({@link AnyOAuthScopes})
+	 */
+	public static final String ALL_SUFFIX = ".all";
+	public static final String ANY_SUFFIX = ".any";
+
+	/**
+	 * Suffix of the keys of the scope expressions ({@link OAuthScopes})
+	 */
+	public static final String EXPRESSION_SUFFIX = ".expression";
+
+	/**
+	 * Suffix of the keys of the resources which require no scope ({@link NoOAuthScopesRequired})
+	 */
+	public static final String NONE_SUFFIX = ".none";
+
+	private static final Pattern SCOPE_SEPARATOR = Pattern.compile(" +");
+
+	private final Map<String, TypeEntry> types;
+
+	private OAuthScopeIndex(Map<String, TypeEntry> types) {
+		this.types = types;
+	}
+
+	/**
+	 * Load all the indexes of a class loader.
+	 *
+	 * @param classLoader The class loader
+	 * @return The index, empty if there is none
+	 * @throws IllegalStateException If an index cannot be read or has a malformed entry
+	 */
+	public static OAuthScopeIndex load(ClassLoader classLoader) {
+		Map<String, TypeEntry> types = new HashMap<>();
+		try {
+			Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+				Properties properties = new Properties();
+				try (InputStream in = resource.openStream(); Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+					properties.load(reader);
+				}
+				for (String key : properties.stringPropertyNames()) {
+					if (key.endsWith(ALL_SUFFIX)) {
+						getEntry(types, key, ALL_SUFFIX).allScopes = parseScopes(properties.getProperty(key));
+					} else if (key.endsWith(ANY_SUFFIX)) {
+						getEntry(types, key, ANY_SUFFIX).anyScopes = parseScopes(properties.getProperty(key));
+					} else if (key.endsWith(EXPRESSION_SUFFIX)) {
+						Entry entry = getEntry(types, key, EXPRESSION_SUFFIX);
+						entry.expressionSource = properties.getProperty(key);
+						entry.expression = parseExpression(entry.expressionSource);
+					} else if (key.endsWith(NONE_SUFFIX)) {
+						getEntry(types, key, NONE_SUFFIX).noScopesRequired = true;
+					}
+				}
+			}
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to read the OAuth scope index.", ioe);
+		}
+		return new OAuthScopeIndex(types);
+	}
+
+	/**
+	 * @param type A resource class
+	 * @return The scope annotations of the class, null if the class is not in the index
+	 */
+	public Entry get(Class<?> type) {
+		TypeEntry typeEntry = types.get(type.getName());
+		return typeEntry != null ? typeEntry.annotations : null;
+	}
+
+	/**
+	 * @param method A resource method
+	 * @return The scope annotations of the method, null if the method is not in the index
+	 */
+	public Entry get(Method method) {
+		List<Entry> candidates = getCandidates(method.getDeclaringClass(), method.getName());
+		return candidates != null ? find(candidates, method.getParameterTypes()) : null;
+	}
+
+	/**
+	 * @param type A class
+	 * @param methodName The name of a method declared by the class
+	 * @param parameterTypes The parameter types of the method
+	 * @return The scope annotations of the method, null if the method is not in the index
+	 */
+	public Entry get(Class<?> type, String methodName, Class<?>[] parameterTypes) {
+		List<Entry> candidates = getCandidates(type, methodName);
+		return candidates != null ? find(candidates, parameterTypes) : null;
+	}
+
+	/**
+	 * @return The number of indexed methods
+	 */
+	public int size() {
+		int size = 0;
+		for (TypeEntry typeEntry : types.values()) {
+			for (List<Entry> candidates : typeEntry.methods.values()) {
+				size += candidates.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Signature of a method in the index: binary name of the declaring class, '#', name of
+	 * the method and canonical names of the erased parameter types between parentheses,
+	 * for example {@code com.example.Resource#get(java.lang.String,int[])}.
+	 *
+	 * @param method A method
+	 * @return The signature of the method
+	 */
+	public static String key(Method method) {
+		StringBuilder key = new StringBuilder(method.getDeclaringClass().getName()).append('#').append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				key.append(',');
+			}
+			key.append(parameterTypes[i].getCanonicalName());
+		}
+		return key.append(')').toString();
+	}
+
+	private List<Entry> getCandidates(Class<?> type, String methodName) {
+		if (types.isEmpty()) {
+			return null;
+		}
+		TypeEntry typeEntry = types.get(type.getName());
+		return typeEntry != null ? typeEntry.methods.get(methodName) : null;
+	}
+
+	private static Entry find(List<Entry> candidates, Class<?>[] parameterTypes) {
+		for (Entry candidate : candidates) {
+			if (candidate.parameterTypes.length == parameterTypes.length && matches(candidate.parameterTypes, parameterTypes)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String[] names, Class<?>[] parameterTypes) {
+		for (int i = 0; i < names.length; i++) {
+			if (!names[i].equals(parameterTypes[i].getCanonicalName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static TypeEntry getTypeEntry(Map<String, TypeEntry> types, String typeName) {
+		TypeEntry typeEntry = types.get(typeName);
+		if (typeEntry == null) {
+			typeEntry = new TypeEntry();
+			types.put(typeName, typeEntry);
+		}
+		return typeEntry;
+	}
+
+	/**
+	 * @throws IllegalStateException If the key of a method entry is malformed
+	 */
+	private static Entry getEntry(Map<String, TypeEntry> types, String key, String suffix) {
+		String elementKey = key.substring(0, key.length() - suffix.length());
+		int hash = elementKey.indexOf('#');
+		if (hash < 0) {
+			TypeEntry typeEntry = getTypeEntry(types, elementKey);
+			if (typeEntry.annotations == null) {
+				typeEntry.annotations = new Entry(null);
+			}
+			return typeEntry.annotations;
+		}
+
+		int open = elementKey.indexOf('(', hash);
+		if (open < 0 || !elementKey.endsWith(")")) {
+			throw new IllegalStateException("The OAuth scope index is invalid, the key '" + key + "' is malformed.");
+		}
+		String parameters = elementKey.substring(open + 1, elementKey.length() - 1);
+		String[] parameterTypes = parameters.isEmpty() ? new String[0] : parameters.split(",");
+
+		TypeEntry typeEntry = getTypeEntry(types, elementKey.substring(0, hash));
+		String methodName = elementKey.substring(hash + 1, open);
+		List<Entry> candidates = typeEntry.methods.get(methodName);
+		if (candidates == null) {
+			candidates = new ArrayList<>(1);
+			typeEntry.methods.put(methodName, candidates);
+		}
+		for (Entry candidate : candidates) {
+			if (Arrays.equals(candidate.parameterTypes, parameterTypes)) {
+				return candidate;
+			}
+		}
+		Entry entry = new Entry(parameterTypes);
+		candidates.add(entry);
+		return entry;
+	}
+
+	private static OAuthScopeExpression parseExpression(String value) {
+		try {
+			return OAuthScopeExpression.parse(value);
+		} catch (IllegalArgumentException iae) {
+			throw new IllegalStateException("The OAuth scope index is invalid.", iae);
+		}
+	}
+
+	private static Set<String> parseScopes(String value) {
+		String trimmed = value.trim();
+		if (trimmed.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(SCOPE_SEPARATOR.split(trimmed))));
+	}
+
+	/**
+	 * Scope annotations of a class and of its methods, grouped by method name
+	 */
+	private static final class TypeEntry {
+
+		private final Map<String, List<Entry>> methods = new HashMap<>();
+		private Entry annotations;
+	}
+
+	/**
+	 * Scope annotations of an indexed method or class
+	 */
+	public static final class Entry {
+
+		private final String[] parameterTypes;
+		private Set<String> allScopes;
+		private Set<String> anyScopes;
+		private OAuthScopeExpression expression;
+		private String expressionSource;
+		private boolean noScopesRequired;
+
+		private Entry(String[] parameterTypes) {
+			this.parameterTypes = parameterTypes;
+		}
+
+		/**
+		 * @return The scopes of the {@link AllOAuthScopes} annotation, null if there is none
+		 */
+		public Set<String> getAllScopes() {
+			return allScopes;
+		}
+
+		/**
+		 * @return The scopes of the {@link AnyOAuthScopes} annotation, null if there is none
+		 */
+		public Set<String> getAnyScopes() {
+			return anyScopes;
+		}
+
+		/**
+		 * @return The expression of the {@link OAuthScopes} annotation, null if there is none
+		 */
+		public OAuthScopeExpression getExpression() {
+			return expression;
+		}
+
+		/**
+		 * @return True if there is a {@link NoOAuthScopesRequired} annotation
+		 */
+		public boolean isNoScopesRequired() {
+			return noScopesRequired;
+		}
+
+		/**
+		 * Check that the entry is still up to date with an element: the element must carry
+		 * the indexed scope annotations with the indexed values, and no other one. The
+		 * annotations of an element are parsed once by the first of these reads.
+		 *
+		 * @param element The indexed method or class
+		 * @return True if the element carries exactly the indexed annotations
+		 */
+		public boolean matches(AnnotatedElement element) {
+			AllOAuthScopes requiredScopes = element.getAnnotation(AllOAuthScopes.class);
+			AnyOAuthScopes allowedScopes = element.getAnnotation(AnyOAuthScopes.class);
+			OAuthScopes scopeExpression = element.getAnnotation(OAuthScopes.class);
+			return matches(allScopes, requiredScopes == null ? null : requiredScopes.value())
+				&& matches(anyScopes, allowedScopes == null ? null : allowedScopes.value())
+				&& (scopeExpression == null ? expressionSource == null : scopeExpression.value().equals(expressionSource))
+				&& noScopesRequired == element.isAnnotationPresent(NoOAuthScopesRequired.class);
+		}
+
+		private static boolean matches(Set<String> scopes, String[] values) {
+			if (scopes == null || values == null) {
+				return scopes == null && values == null;
+			}
+			return scopes.equals(new TreeSet<>(Arrays.asList(values)));
+		}
+	}
+}
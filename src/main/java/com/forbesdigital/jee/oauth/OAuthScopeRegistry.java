@@ -0,0 +1,217 @@
+package com.forbesdigital.jee.oauth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Gives each scope a dense integer id, so that sets of scopes can be represented as
+ * {@link OAuthScopeSet bitsets}.
+ *
+ * <p>The scopes of the configuration get the first ids, in their natural order. The scopes
+ * which are not part of the configuration, such as the ones of an annotation with a typo,
+ * get the next ids the first time they are seen, so that they never match a scope of the
+ * configuration.
+ *
+ * <p>When the scopes are {@link OAuthScopeHierarchy hierarchical}, the sets of granted
+ * scopes are expanded to the configured scopes they imply, so that they can still be
+ * checked against the required scopes as plain bitsets.
+ *
+ * <p>Each registry has an {@link #getOrdinal() ordinal}, which a registry replacing another 
+ * one keeps, so that the values computed per registry are kept per tenant, see 
+ * {@link OAuthScopeRegistryCache}.
+ *
+ * @see com.forbesdigital.jee.oauth.configuration.OAuthContext#getScopeRegistry()
+ */
+public final class OAuthScopeRegistry {
+
+	private static final AtomicInteger ordinals = new AtomicInteger();
+
+	private final int ordinal;
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private final List<String> scopes = new ArrayList<>();
+	private final OAuthScopeHierarchy hierarchy;
+	private final long[][] impliedWords;
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuredScopes The scopes of the configuration, null if none
+	 */
+	public OAuthScopeRegistry(Collection<String> configuredScopes) {
+		this(configuredScopes, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuredScopes The scopes of the configuration, null if none
+	 * @param hierarchy The implications between the scopes, null if the scopes are not 
+	 * hierarchical
+	 */
+	public OAuthScopeRegistry(Collection<String> configuredScopes, OAuthScopeHierarchy hierarchy) {
+		this(configuredScopes, hierarchy, ordinals.getAndIncrement());
+	}
+
+	/**
+	 * Constructor of a registry replacing another one, for instance when a configuration is 
+	 * reloaded, which keeps its ordinal
+	 *
+	 * @param configuredScopes The scopes of the configuration, null if none
+	 * @param hierarchy The implications between the scopes, null if the scopes are not 
+	 * hierarchical
+	 * @param replacedRegistry The registry replaced by this one
+	 */
+	public OAuthScopeRegistry(Collection<String> configuredScopes, OAuthScopeHierarchy hierarchy, OAuthScopeRegistry replacedRegistry) {
+		this(configuredScopes, hierarchy, replacedRegistry.ordinal);
+	}
+
+	private OAuthScopeRegistry(Collection<String> configuredScopes, OAuthScopeHierarchy hierarchy, int ordinal) {
+		this.ordinal = ordinal;
+		this.hierarchy = hierarchy;
+		if (configuredScopes != null) {
+			for (String scope : new TreeSet<>(configuredScopes)) {
+				register(scope);
+			}
+		}
+
+		// the configured scopes have the first ids, so their implications can be indexed by id
+		impliedWords = new long[hierarchy != null ? scopes.size() : 0][];
+		for (int id = 0; id < impliedWords.length; id++) {
+			impliedWords[id] = toWords(hierarchy.getImpliedScopes(scopes.get(id)));
+		}
+	}
+
+	/**
+	 * @return The ordinal of the registry, shared with the registries it replaces
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	/**
+	 * @return The implications between the scopes, null if the scopes are not hierarchical
+	 */
+	public OAuthScopeHierarchy getHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * @param scope A scope
+	 * @return The id of the scope
+	 */
+	public int getId(String scope) {
+		Integer id = ids.get(scope);
+		return id != null ? id : register(scope);
+	}
+
+	/**
+	 * @param scope A scope
+	 * @return The id of the scope, -1 if the scope has no id yet (no id is given to it)
+	 */
+	public int findId(String scope) {
+		Integer id = ids.get(scope);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @param id The id of a scope
+	 * @return The scope
+	 */
+	public synchronized String getScope(int id) {
+		return scopes.get(id);
+	}
+
+	/**
+	 * @return The number of scopes which have an id
+	 */
+	public synchronized int size() {
+		return scopes.size();
+	}
+
+	/**
+	 * @param scopes Scopes
+	 * @return The set of the scopes, not expanded to the scopes they imply
+	 */
+	public OAuthScopeSet toScopeSet(Collection<String> scopes) {
+		return new OAuthScopeSet(this, scopes != null ? toWords(scopes) : new long[0]);
+	}
+
+	/**
+	 * @param scopes Granted scopes
+	 * @return The set of the scopes and of the scopes they imply
+	 */
+	public OAuthScopeSet toImpliedScopeSet(Collection<String> scopes) {
+		long[] words = new long[0];
+		if (scopes != null) {
+			for (String scope : scopes) {
+				words = grant(words, scope);
+			}
+		}
+		return new OAuthScopeSet(this, words);
+	}
+
+	/**
+	 * @param authorities Granted authorities, whose names are scopes
+	 * @return The set of the scopes and of the scopes they imply
+	 */
+	public OAuthScopeSet toAuthoritiesScopeSet(Collection<? extends GrantedAuthority> authorities) {
+		long[] words = new long[0];
+		if (authorities != null) {
+			for (GrantedAuthority authority : authorities) {
+				// authorities which cannot be represented as a string are not scopes
+				if (authority.getAuthority() != null) {
+					words = grant(words, authority.getAuthority());
+				}
+			}
+		}
+		return new OAuthScopeSet(this, words);
+	}
+
+	private long[] grant(long[] words, String scope) {
+		if (hierarchy == null) {
+			return set(words, getId(scope));
+		}
+		int id = getId(scope);
+		return or(words, id < impliedWords.length ? impliedWords[id] : toWords(hierarchy.getImpliedScopes(scope)));
+	}
+
+	private long[] toWords(Collection<String> scopes) {
+		long[] words = new long[0];
+		for (String scope : scopes) {
+			words = set(words, getId(scope));
+		}
+		return words;
+	}
+
+	private synchronized int register(String scope) {
+		Integer id = ids.get(scope);
+		if (id == null) {
+			id = scopes.size();
+			scopes.add(scope);
+			ids.put(scope, id);
+		}
+		return id;
+	}
+
+	private static long[] set(long[] words, int id) {
+		int index = id >>> 6;
+		long[] result = index < words.length ? words : Arrays.copyOf(words, index + 1);
+		result[index] |= 1L << id;
+		return result;
+	}
+
+	private static long[] or(long[] words, long[] other) {
+		long[] result = other.length <= words.length ? words : Arrays.copyOf(words, other.length);
+		for (int i = 0; i < other.length; i++) {
+			result[i] |= other[i];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,73 @@
+package com.forbesdigital.jee.oauth;
+
+import java.util.Arrays;
+
+/**
+ * Values computed once per {@link OAuthScopeRegistry}, such as the bitsets of the scopes of
+ * an annotation. The values are kept in an array indexed by the
+ * {@link OAuthScopeRegistry#getOrdinal() ordinal} of their registry, so that the requests of
+ * several tenants do not evict the values of each other. A registry replacing another one,
+ * when the configuration of a tenant is reloaded, takes over its slot.
+ *
+ * <p>Reading a value is an array access without synchronization. The array grows, when a new
+ * registry is seen, by being replaced as a whole.
+ *
+ * @param <T> The type of the values
+ */
+public final class OAuthScopeRegistryCache<T> {
+
+	private volatile Slot<T>[] slots = newSlots(0);
+
+	/**
+	 * @param registry A scope registry
+	 * @return The value computed for the registry, null if there is none
+	 */
+	public T get(OAuthScopeRegistry registry) {
+		Slot<T>[] currentSlots = slots;
+		int ordinal = registry.getOrdinal();
+		if (ordinal < currentSlots.length) {
+			Slot<T> slot = currentSlots[ordinal];
+			if (slot != null && slot.registry == registry) {
+				return slot.value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keep the value computed for a registry, in place of the value of the registry it
+	 * replaces.
+	 *
+	 * @param registry A scope registry
+	 * @param value The value computed for the registry
+	 */
+	public synchronized void put(OAuthScopeRegistry registry, T value) {
+		int ordinal = registry.getOrdinal();
+		Slot<T>[] currentSlots = slots;
+		if (ordinal >= currentSlots.length) {
+			currentSlots = Arrays.copyOf(currentSlots, ordinal + 1);
+		}
+		// the fields of a slot are final, so that a slot is never seen partially built
+		currentSlots[ordinal] = new Slot<>(registry, value);
+		slots = currentSlots;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> Slot<T>[] newSlots(int length) {
+		return new Slot[length];
+	}
+
+	/**
+	 * A value along with its registry
+	 */
+	private static final class Slot<T> {
+
+		private final OAuthScopeRegistry registry;
+		private final T value;
+
+		Slot(OAuthScopeRegistry registry, T value) {
+			this.registry = registry;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.forbesdigital.jee.oauth;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of scopes, as a bitset indexed by the ids given to the scopes by an
+ * {@link OAuthScopeRegistry}. Checking a set of scopes against another one is a few word
+ * operations, without any allocation nor string comparison.
+ *
+ * <p>Scope sets are only comparable when they come from the same registry.
+ *
+ * @see OAuthScopeRegistry
+ */
+public final class OAuthScopeSet {
+
+	private final OAuthScopeRegistry registry;
+	private final long[] words;
+
+	/**
+	 * @param registry The registry which gave the ids of the scopes
+	 * @param words The bits of the scope ids, not copied
+	 */
+	OAuthScopeSet(OAuthScopeRegistry registry, long[] words) {
+		this.registry = registry;
+		this.words = words;
+	}
+
+	/**
+	 * @return The registry which gave the ids of the scopes
+	 */
+	public OAuthScopeRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @param scopeId The id of a scope
+	 * @return True if the scope is in this set
+	 */
+	public boolean contains(int scopeId) {
+		int index = scopeId >>> 6;
+		return index < words.length && (words[index] & (1L << scopeId)) != 0;
+	}
+
+	/**
+	 * @param scopes Other scopes
+	 * @return True if all the other scopes are in this set
+	 */
+	public boolean containsAll(OAuthScopeSet scopes) {
+		long[] otherWords = scopes.words;
+		for (int i = 0; i < otherWords.length; i++) {
+			long word = i < words.length ? words[i] : 0;
+			if ((word & otherWords[i]) != otherWords[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param scopes Other scopes
+	 * @return True if at least one of the other scopes is in this set
+	 */
+	public boolean containsAny(OAuthScopeSet scopes) {
+		long[] otherWords = scopes.words;
+		int length = Math.min(words.length, otherWords.length);
+		for (int i = 0; i < length; i++) {
+			if ((words[i] & otherWords[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param scopes Other scopes
+	 * @return The scopes which are both in this set and in the other one
+	 */
+	public OAuthScopeSet intersect(OAuthScopeSet scopes) {
+		long[] result = new long[Math.min(words.length, scopes.words.length)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = words[i] & scopes.words[i];
+		}
+		return new OAuthScopeSet(registry, result);
+	}
+
+	/**
+	 * @return True if there is no scope in this set
+	 */
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof OAuthScopeSet)) {
+			return false;
+		}
+		OAuthScopeSet other = (OAuthScopeSet) obj;
+		if (registry != other.registry) {
+			return false;
+		}
+		int length = Math.max(words.length, other.words.length);
+		for (int i = 0; i < length; i++) {
+			long word = i < words.length ? words[i] : 0;
+			long otherWord = i < other.words.length ? other.words[i] : 0;
+			if (word != otherWord) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int length = words.length;
+		while (length > 0 && words[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.hashCode(Arrays.copyOf(words, length));
+	}
+}
@@ -0,0 +1,24 @@
+package com.forbesdigital.jee.oauth;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Defines the OAuth scopes required for a REST resource method as a boolean expression of
+ * scopes, for example {@code "(orders:read & orders:write) | admin"}.
+ *
+ * <p>The {@code &} operator takes precedence over the {@code |} operator, and parentheses
+ * group sub-expressions. This annotation cannot be combined with {@link AllOAuthScopes} or
+ * {@link AnyOAuthScopes} on the same method.
+ *
+ * @see OAuthScopeExpression
+ * @see OAuthScopeFilter
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OAuthScopes {
+
+	/**
+	 * @return The expression of the OAuth scopes required for the REST operation
+	 */
+	public String value();
+}
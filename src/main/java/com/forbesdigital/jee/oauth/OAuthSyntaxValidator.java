@@ -0,0 +1,80 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+
+/**
+ * Checks the syntax of the access tokens and of the requested scopes.
+ *
+ * <p>The grammars are the ones of {@link IOAuthToken#TOKEN_PATTERN} and
+ * {@link IOAuthToken#SCOPE_PATTERN}, checked in a single pass against precomputed lookup
+ * tables of the allowed characters instead of regular expressions, so that nothing is
+ * compiled nor allocated on each request.
+ */
+public final class OAuthSyntaxValidator {
+
+	/**
+	 * Characters allowed in an access token: [a-zA-Z0-9-._~+/]
+	 */
+	private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+	/**
+	 * Characters allowed in a scope, separator included: [ !#-\[\]-~]
+	 */
+	private static final boolean[] SCOPE_CHARS = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			TOKEN_CHARS[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			TOKEN_CHARS[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			TOKEN_CHARS[c] = true;
+		}
+		for (char c : "-._~+/".toCharArray()) {
+			TOKEN_CHARS[c] = true;
+		}
+
+		for (char c = ' '; c <= '~'; c++) {
+			SCOPE_CHARS[c] = c != '"' && c != '\\';
+		}
+	}
+
+	private OAuthSyntaxValidator() {}
+
+	/**
+	 * Check that an access token has the expected length and only uses the characters of
+	 * {@link IOAuthToken#TOKEN_PATTERN}.
+	 *
+	 * @param accessToken The access token to check
+	 * @param expectedLength The expected length of the access token, 0 to accept any length
+	 * @return True if the access token is valid
+	 */
+	public static boolean isValidAccessToken(String accessToken, int expectedLength) {
+		if (accessToken == null || (expectedLength > 0 && accessToken.length() != expectedLength)) {
+			return false;
+		}
+		return allCharsIn(accessToken, TOKEN_CHARS);
+	}
+
+	/**
+	 * Check that a requested scope only uses the characters of {@link IOAuthToken#SCOPE_PATTERN}.
+	 *
+	 * @param requestedScope The requested scope, made of scopes separated by spaces
+	 * @return True if the requested scope is valid
+	 */
+	public static boolean isValidScope(String requestedScope) {
+		return requestedScope != null && allCharsIn(requestedScope, SCOPE_CHARS);
+	}
+
+	private static boolean allCharsIn(String value, boolean[] allowedChars) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= allowedChars.length || !allowedChars[c]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
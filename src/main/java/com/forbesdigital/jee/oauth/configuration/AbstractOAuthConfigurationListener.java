@@ -1,5 +1,7 @@
 package com.forbesdigital.jee.oauth.configuration;
 
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenDetailsSnapshot;
+import java.io.IOException;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
@@ -25,21 +27,91 @@ import javax.servlet.annotation.WebListener;
  * <p>The registered OAuth configuration will be made available to the OAuth library
  * classes (and to yours) through {@link OAuthContext#getConfig()}.
  * 
+ * <p>Optionally, override {@link #getTokenDetailsSnapshot()} to save the token details 
+ * cache when the application stops and to load it back when it starts, override 
+ * {@link #getScopeSeparator()} to make the scopes hierarchical, and override 
+ * {@link #getConfigurationPoller()} to reload the configuration when its file changes.
+ * 
  * @author Florian Poulin <florian.poulin@forbes-digital.com>
  * @see OAuthContext
  */
 public abstract class AbstractOAuthConfigurationListener implements ServletContextListener {
 
+	private OAuthConfigurationFilePoller configurationPoller;
+
 	/**
 	 * @return An instance of {@link IOAuthConfiguration}
 	 */
 	public abstract IOAuthConfiguration getOAuthConfiguration();
 	
+	/**
+	 * Provide a snapshot of the token details cache in order to keep the cached token 
+	 * details across restarts. The snapshot is loaded when the application starts and saved 
+	 * when it stops.
+	 * 
+	 * @return The token details cache snapshot, null if the cache is not kept across restarts
+	 */
+	public OAuthTokenDetailsSnapshot getTokenDetailsSnapshot() {
+		return null;
+	}
+	
+	/**
+	 * Provide the separator of the segments of hierarchical scopes, so that a scope implies 
+	 * the scopes below it. For instance, with the ':' separator, the "orders" and "orders:*" 
+	 * scopes imply the "orders:read" scope.
+	 * 
+	 * @return The separator of the segments of the scopes, null if the scopes are not 
+	 * hierarchical
+	 * @see com.forbesdigital.jee.oauth.OAuthScopeHierarchy
+	 */
+	public String getScopeSeparator() {
+		return null;
+	}
+	
+	/**
+	 * Provide a poller reloading the configuration when the file describing it changes. This 
+	 * method is invoked once, when the application starts, and the returned poller must 
+	 * already have its polling scheduler. The poller is destroyed when the application stops.
+	 * 
+	 * @return The configuration file poller, null if the configuration is not reloaded
+	 */
+	public OAuthConfigurationFilePoller getConfigurationPoller() {
+		return null;
+	}
+	
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
-		OAuthContext.registerConfiguration(getOAuthConfiguration());
+		OAuthContext.registerConfiguration(getOAuthConfiguration(), getScopeSeparator());
+		configurationPoller = getConfigurationPoller();
+		
+		OAuthTokenDetailsSnapshot snapshot = getTokenDetailsSnapshot();
+		if (snapshot != null) {
+			try {
+				int loaded = snapshot.load();
+				sce.getServletContext().log("Loaded " + loaded + " token details from " + snapshot.getFile() + ".");
+			} catch (IOException ioe) {
+				// a cold cache is not an error
+				sce.getServletContext().log("Unable to load the token details snapshot.", ioe);
+			}
+		}
 	}
 
 	@Override
-	public void contextDestroyed(ServletContextEvent sce) {}
+	public void contextDestroyed(ServletContextEvent sce) {
+		if (configurationPoller != null) {
+			configurationPoller.destroy();
+			configurationPoller = null;
+		}
+		
+		OAuthTokenDetailsSnapshot snapshot = getTokenDetailsSnapshot();
+		if (snapshot != null) {
+			try {
+				int saved = snapshot.save();
+				sce.getServletContext().log("Saved " + saved + " token details to " + snapshot.getFile() + ".");
+			} catch (IOException ioe) {
+				sce.getServletContext().log("Unable to save the token details snapshot.", ioe);
+			}
+		}
+	}
 }
+
@@ -0,0 +1,19 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads an OAuth configuration from a file.
+ *
+ * @see OAuthConfigurationFilePoller
+ */
+public interface IOAuthConfigurationLoader {
+
+	/**
+	 * @param file The file describing the configuration
+	 * @return The configuration
+	 * @throws IOException If the file cannot be read
+	 */
+	IOAuthConfiguration load(Path file) throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+/**
+ * Listener notified each time the OAuth configuration is reloaded, typically to rebuild a
+ * cache derived from the configuration. The snapshot, and the scope resolutions it
+ * remembers, are rebuilt by {@link OAuthContext} itself. The listener is notified of the
+ * reloads of the global configuration and of the reloads of the tenants of an
+ * {@link OAuthTenantRegistry}, which it tells apart by the name of the reloaded tenant.
+ *
+ * @see OAuthContext#addReloadListener(IOAuthConfigurationReloadListener)
+ */
+public interface IOAuthConfigurationReloadListener {
+
+	/**
+	 * Invoked once the new configuration is published.
+	 *
+	 * @param tenant The reloaded tenant, with the new configuration and its compiled
+	 * snapshot, whose name is null for the global configuration
+	 * @param previousConfiguration The replaced configuration
+	 */
+	void configurationReloaded(OAuthTenant tenant, IOAuthConfiguration previousConfiguration);
+}
@@ -0,0 +1,145 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reloads the OAuth configuration when the file describing it changes. The file is polled in
+ * the background: when its modification time or its size changes, it is read by an
+ * {@link IOAuthConfigurationLoader} and the configuration is replaced with
+ * {@link OAuthContext#reloadConfiguration(IOAuthConfiguration)}.
+ *
+ * <p>The file as it is when the poller is created is considered already loaded. A file which
+ * cannot be read, or which describes an invalid configuration, is reported and the current
+ * configuration is kept until the file changes again. A missing file is not a change: the
+ * current configuration is kept, and the file is loaded as soon as it exists again.
+ *
+ * @see AbstractOAuthConfigurationListener#getConfigurationPoller()
+ */
+public class OAuthConfigurationFilePoller {
+
+	private static final Log LOG = LogFactory.getLog(OAuthConfigurationFilePoller.class);
+
+	/**
+	 * Default interval between two polls, in milliseconds
+	 */
+	public static final long DEFAULT_POLLING_INTERVAL = 10 * 1000L;
+
+	private final Path file;
+	private final IOAuthConfigurationLoader loader;
+	private long pollingInterval = DEFAULT_POLLING_INTERVAL;
+	private ScheduledFuture<?> polling;
+	private FileTime lastModifiedTime;
+	private long lastSize = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file The file describing the configuration
+	 * @param loader The loader reading the configuration from the file
+	 */
+	public OAuthConfigurationFilePoller(Path file, IOAuthConfigurationLoader loader) {
+		this.file = file;
+		this.loader = loader;
+
+		try {
+			lastModifiedTime = Files.getLastModifiedTime(file);
+			lastSize = Files.size(file);
+		} catch (IOException ioe) {
+			// the file is loaded as soon as it exists
+			lastModifiedTime = null;
+		}
+	}
+
+	/**
+	 * Reload the configuration if the file changed since the last poll.
+	 *
+	 * @return True if the configuration has been reloaded, false if the file did not change
+	 * or does not exist
+	 * @throws IOException If the file cannot be read
+	 * @throws OAuthConfigurationException If the file describes an invalid configuration
+	 */
+	public synchronized boolean poll() throws IOException {
+		FileTime modifiedTime;
+		long size;
+		try {
+			modifiedTime = Files.getLastModifiedTime(file);
+			size = Files.size(file);
+		} catch (NoSuchFileException nsfe) {
+			return false;
+		}
+		if (modifiedTime.equals(lastModifiedTime) && size == lastSize) {
+			return false;
+		}
+
+		// the change is recorded first, so that a broken file is reported once
+		lastModifiedTime = modifiedTime;
+		lastSize = size;
+
+		OAuthContext.reloadConfiguration(loader.load(file));
+		return true;
+	}
+
+	/**
+	 * @return The file describing the configuration
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	public long getPollingInterval() {
+		return pollingInterval;
+	}
+
+	/**
+	 * @param pollingInterval The interval between two polls, in milliseconds. Must be set
+	 * before the polling scheduler.
+	 */
+	public void setPollingInterval(long pollingInterval) {
+		if (pollingInterval <= 0) {
+			throw new IllegalArgumentException("The polling interval must be strictly positive.");
+		}
+		this.pollingInterval = pollingInterval;
+	}
+
+	/**
+	 * @param pollingScheduler The scheduler on which the file is polled in the background,
+	 * typically a {@code ManagedScheduledExecutorService}
+	 */
+	public synchronized void setPollingScheduler(ScheduledExecutorService pollingScheduler) {
+		if (polling != null) {
+			polling.cancel(false);
+		}
+		polling = pollingScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (poll()) {
+						LOG.info("Reloaded the OAuth configuration from " + file + ".");
+					}
+				} catch (IOException | RuntimeException e) {
+					// a failed poll must not cancel the next ones
+					LOG.warn("Unable to reload the OAuth configuration from " + file + ".", e);
+				}
+			}
+		}, pollingInterval, pollingInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background polling, if any.
+	 */
+	public synchronized void destroy() {
+		if (polling != null) {
+			polling.cancel(false);
+			polling = null;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import com.forbesdigital.jee.oauth.OAuthScopeSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable snapshot of an {@link IOAuthConfiguration}, compiled into lookup tables so that
+ * the token requests are checked without calling the configuration again.
+ *
+ * <p>The grant types are indexed by their ordinal, and the scopes are {@link OAuthScopeSet
+ * bitsets} of the ids of the {@link OAuthScopeRegistry}: checking a requested scope or a
+ * grant type is an array lookup and a bit test. Each client role is compiled into a
+ * {@link Role} holding its allowed grant types and, for each grant type, the scopes allowed
+ * for both the role and the grant type. The roles of
+ * {@link IOAuthConfiguration#getClientRoleNames()} are compiled with the snapshot, and the
+ * other roles the first time they are used. The snapshot also remembers how the requested
+ * scopes are resolved, see {@link OAuthScopeResolver}.
+ *
+ * @see OAuthContext#getSnapshot()
+ */
+public final class OAuthConfigurationSnapshot {
+
+	private static final EOAuthGrantType[] GRANT_TYPES = EOAuthGrantType.values();
+
+	private final IOAuthConfiguration configuration;
+	private final OAuthScopeRegistry registry;
+	private final OAuthScopeSet allScopes;
+	private final boolean[] supportedGrantTypes = new boolean[GRANT_TYPES.length];
+	private final OAuthScopeSet[] grantTypeScopes = new OAuthScopeSet[GRANT_TYPES.length];
+	private final OAuthScopeSet noScopes;
+	private final ConcurrentMap<String, Role> roles = new ConcurrentHashMap<>();
+	private final OAuthScopeResolver scopeResolver = new OAuthScopeResolver(this, OAuthScopeResolver.DEFAULT_MAXIMUM_SIZE);
+
+	/**
+	 * Compile a configuration.
+	 *
+	 * @param configuration The configuration
+	 * @param registry The registry giving the ids of the scopes
+	 */
+	public OAuthConfigurationSnapshot(IOAuthConfiguration configuration, OAuthScopeRegistry registry) {
+		this.configuration = configuration;
+		this.registry = registry;
+		this.allScopes = registry.toScopeSet(configuration.getAllScopes());
+		this.noScopes = registry.toScopeSet(Collections.<String>emptySet());
+
+		Set<EOAuthGrantType> grantTypes = configuration.getAllGrantTypes();
+		for (EOAuthGrantType grantType : GRANT_TYPES) {
+			supportedGrantTypes[grantType.ordinal()] = grantTypes != null && grantTypes.contains(grantType);
+			grantTypeScopes[grantType.ordinal()] = registry.toImpliedScopeSet(configuration.getAllowedScopes(grantType));
+		}
+
+		Set<String> roleNames = configuration.getClientRoleNames();
+		if (roleNames != null) {
+			for (String roleName : roleNames) {
+				getRole(roleName);
+			}
+		}
+	}
+
+	/**
+	 * @return The compiled configuration
+	 */
+	public IOAuthConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return The registry giving the ids of the scopes
+	 */
+	public OAuthScopeRegistry getScopeRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return The resolver of the requested scopes against this snapshot
+	 */
+	public OAuthScopeResolver getScopeResolver() {
+		return scopeResolver;
+	}
+
+	/**
+	 * @param scope A scope
+	 * @return The id of the scope, -1 if the scope is unknown
+	 */
+	public int getScopeId(String scope) {
+		return registry.findId(scope);
+	}
+
+	/**
+	 * @param scopeId The id of a scope, -1 if the scope is unknown
+	 * @return True if the scope is one of {@link IOAuthConfiguration#getAllScopes()}
+	 */
+	public boolean isValidScope(int scopeId) {
+		return scopeId >= 0 && allScopes.contains(scopeId);
+	}
+
+	/**
+	 * @param grantType A grant type, null if the grant type is unknown
+	 * @return True if the grant type is one of {@link IOAuthConfiguration#getAllGrantTypes()}
+	 */
+	public boolean isGrantTypeSupported(EOAuthGrantType grantType) {
+		return grantType != null && supportedGrantTypes[grantType.ordinal()];
+	}
+
+	/**
+	 * @param grantType A grant type, null if the grant type is unknown
+	 * @return The scopes allowed for the grant type, and the scopes they imply
+	 */
+	public OAuthScopeSet getGrantTypeScopes(EOAuthGrantType grantType) {
+		return grantType != null ? grantTypeScopes[grantType.ordinal()] : noScopes;
+	}
+
+	/**
+	 * @param name The name of a client role
+	 * @return The compiled client role, null if the configuration has no such role
+	 */
+	public Role getRole(String name) {
+		if (name == null) {
+			return null;
+		}
+		Role role = roles.get(name);
+		if (role == null) {
+			IOAuthClientRole clientRole = configuration.getClientRole(name);
+			if (clientRole == null) {
+				return null;
+			}
+			role = new Role(clientRole);
+			Role existingRole = roles.putIfAbsent(name, role);
+			if (existingRole != null) {
+				role = existingRole;
+			}
+		}
+		return role;
+	}
+
+	/**
+	 * Compiled client role
+	 */
+	public final class Role {
+
+		private final String name;
+		private final Integer tokenLifetime;
+		private final OAuthScopeSet allowedScopes;
+		private final boolean[] allowedGrantTypes = new boolean[GRANT_TYPES.length];
+		private final OAuthScopeSet[] grantTypeAllowedScopes = new OAuthScopeSet[GRANT_TYPES.length];
+
+		private Role(IOAuthClientRole clientRole) {
+			this.name = clientRole.getName();
+			this.tokenLifetime = clientRole.getTokenLifetime();
+			this.allowedScopes = registry.toImpliedScopeSet(clientRole.getAllowedScopes());
+
+			Set<EOAuthGrantType> grantTypes = clientRole.getAllowedOAuthGrantTypes();
+			for (EOAuthGrantType grantType : GRANT_TYPES) {
+				allowedGrantTypes[grantType.ordinal()] = grantTypes != null && grantTypes.contains(grantType);
+				grantTypeAllowedScopes[grantType.ordinal()] = allowedScopes.intersect(grantTypeScopes[grantType.ordinal()]);
+			}
+		}
+
+		/**
+		 * @return The name of the role
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The maximum (and default) token lifetime of the role
+		 */
+		public Integer getTokenLifetime() {
+			return tokenLifetime;
+		}
+
+		/**
+		 * @param grantType A grant type, null if the grant type is unknown
+		 * @return True if the role allows the grant type
+		 */
+		public boolean isGrantTypeAllowed(EOAuthGrantType grantType) {
+			return grantType != null && allowedGrantTypes[grantType.ordinal()];
+		}
+
+		/**
+		 * @return The scopes allowed for the role, and the scopes they imply
+		 */
+		public OAuthScopeSet getAllowedScopes() {
+			return allowedScopes;
+		}
+
+		/**
+		 * @param grantType A grant type, null if the grant type is unknown
+		 * @return The scopes allowed for both the role and the grant type
+		 */
+		public OAuthScopeSet getAllowedScopes(EOAuthGrantType grantType) {
+			return grantType != null ? grantTypeAllowedScopes[grantType.ordinal()] : noScopes;
+		}
+	}
+}
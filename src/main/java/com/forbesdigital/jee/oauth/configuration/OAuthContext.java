@@ -1,13 +1,34 @@
 package com.forbesdigital.jee.oauth.configuration;
 
+import com.forbesdigital.jee.oauth.OAuthScopeHierarchy;
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 /**
  * Makes the OAuth configuration available globally.
+ *
+ * <p>The configuration, its scope hierarchy, its scope registry and its compiled snapshot
+ * are published together as an {@link OAuthTenant} through a single volatile reference, so 
+ * that a reader never sees the parts of two different configurations, and never locks. The 
+ * configuration can be replaced while the application runs with 
+ * {@link #reloadConfiguration(IOAuthConfiguration)}.
+ * 
+ * <p>When several configurations are served by the same application, the tenant of an 
+ * {@link OAuthTenantRegistry} is bound to the thread processing the request, and takes 
+ * precedence over the global configuration, see {@link #bindTenant(OAuthTenant)}.
  * 
  * @author Florian Poulin <florian.poulin@forbes-digital.com>
  */
 public class OAuthContext {
 	
-	private static IOAuthConfiguration configuration;
+	private static final Log LOG = LogFactory.getLog(OAuthContext.class);
+
+	private static volatile OAuthTenant globalTenant = new OAuthTenant();
+	private static final ThreadLocal<OAuthTenant> boundTenant = new ThreadLocal<>();
+	private static final List<IOAuthConfigurationReloadListener> reloadListeners = new CopyOnWriteArrayList<>();
 	
 	private OAuthContext(){}
 	
@@ -18,30 +39,162 @@ public class OAuthContext {
 	 * @param configuration The OAuth configuration for this application
 	 */
 	static void registerConfiguration(IOAuthConfiguration config) {
-		if (configuration != null) {
+		registerConfiguration(config, null);
+	}
+	
+	/**
+	 * Register the OAuth configuration for this application, whose scopes are hierarchical.
+	 * 
+	 * @param configuration The OAuth configuration for this application
+	 * @param scopeSeparator The separator of the segments of the hierarchical scopes, null if 
+	 * the scopes are not hierarchical
+	 * @see OAuthScopeHierarchy
+	 */
+	static synchronized void registerConfiguration(IOAuthConfiguration config, String scopeSeparator) {
+		if (globalTenant.getConfiguration() != null) {
 			throw new OAuthConfigurationException("Trying to configure a new OAuth "
 					  + "configuration, but there is already one.");
 		}
-		configuration = config;
+		globalTenant = new OAuthTenant(null, config, scopeSeparator);
+	}
+
+	/**
+	 * Replace the registered OAuth configuration while the application runs. The new
+	 * configuration is validated and compiled before being published, so that the requests
+	 * are checked either against the previous configuration or against the new one. The scope
+	 * hierarchy keeps the separator given at registration, and the scope registry is kept
+	 * when the configured scopes do not change, so that the scopes already resolved against
+	 * it remain valid. The {@link IOAuthConfigurationReloadListener reload listeners} are
+	 * notified once the new configuration is published.
+	 *
+	 * @param config The new OAuth configuration for this application
+	 * @throws OAuthConfigurationException If no configuration is registered, or if the new
+	 * configuration is invalid, in which case the registered configuration is kept
+	 */
+	public static void reloadConfiguration(IOAuthConfiguration config) {
+		IOAuthConfiguration previousConfiguration;
+		OAuthTenant reloaded;
+
+		synchronized (OAuthContext.class) {
+			OAuthTenant current = globalTenant;
+			if (current.getConfiguration() == null) {
+				throw new OAuthConfigurationException("Trying to reload the OAuth "
+						  + "configuration, but there is none registered.");
+			}
+			reloaded = current.reload(config);
+			previousConfiguration = current.getConfiguration();
+			globalTenant = reloaded;
+		}
+		notifyReloadListeners(reloaded, previousConfiguration);
+	}
+
+	/**
+	 * Notify the reload listeners that a configuration has been replaced.
+	 * 
+	 * @param tenant The reloaded tenant
+	 * @param previousConfiguration The replaced configuration
+	 */
+	static void notifyReloadListeners(OAuthTenant tenant, IOAuthConfiguration previousConfiguration) {
+		for (IOAuthConfigurationReloadListener listener : reloadListeners) {
+			try {
+				listener.configurationReloaded(tenant, previousConfiguration);
+			} catch (RuntimeException re) {
+				// a failing listener must not prevent the other ones from being notified
+				LOG.warn("Unable to notify a listener of the OAuth configuration reload.", re);
+			}
+		}
 	}
 	
 	/**
 	 * Unregister the OAuth configuration for this application. This method is internally invoked by the OAuth library
 	 */
-	static void unregisterConfiguration(){
-		configuration = null;
+	static synchronized void unregisterConfiguration(){
+		globalTenant = new OAuthTenant();
+	}
+
+	/**
+	 * @param listener A listener notified each time the configuration is reloaded
+	 */
+	public static void addReloadListener(IOAuthConfigurationReloadListener listener) {
+		reloadListeners.add(listener);
+	}
+
+	/**
+	 * @param listener A listener which must no longer be notified
+	 */
+	public static void removeReloadListener(IOAuthConfigurationReloadListener listener) {
+		reloadListeners.remove(listener);
 	}
 	
 	/**
-	 * @return The global OAuth configuration for this application
+	 * Bind a tenant to the current thread, so that the requests processed by the thread are 
+	 * checked against its configuration rather than the global one.
+	 * 
+	 * @param tenant The tenant, null to use the global configuration
+	 * @return The tenant previously bound to the current thread, null if there was none
+	 * @see OAuthTenantRegistry
+	 */
+	public static OAuthTenant bindTenant(OAuthTenant tenant) {
+		OAuthTenant previousTenant = boundTenant.get();
+		if (tenant != null) {
+			boundTenant.set(tenant);
+		} else {
+			boundTenant.remove();
+		}
+		return previousTenant;
+	}
+
+	/**
+	 * @return The tenant bound to the current thread or, if there is none, the global 
+	 * configuration along with the objects derived from it
+	 */
+	public static OAuthTenant getTenant() {
+		OAuthTenant tenant = boundTenant.get();
+		return tenant != null ? tenant : globalTenant;
+	}
+
+	/**
+	 * @return The global OAuth configuration for this application, or the configuration of 
+	 * the tenant bound to the current thread
 	 * @see IOAuthConfiguration
 	 */
 	public static IOAuthConfiguration getConfig() {
+		IOAuthConfiguration configuration = getTenant().getConfiguration();
 		if (configuration == null) {
-			throw new OAuthConfigurationException("Could not find the OAuth configuration. "
-					  + "Make sure you have registered a Weblistener which extends "
-					  + "'com.forbesdigital.library.oauth.configuration.AbstractOAuthConfigurationListener'");
+			throw OAuthTenant.missingConfiguration();
 		}
 		return configuration;
 	}
+
+	/**
+	 * Get the compiled snapshot of the global OAuth configuration. The snapshot of a
+	 * registered configuration is compiled the first time it is used rather than when the
+	 * configuration is registered, so that the configuration can complete its initialization
+	 * after its registration. The snapshot of a reloaded configuration is compiled before
+	 * the configuration is published.
+	 * 
+	 * @return The compiled snapshot of the global OAuth configuration
+	 * @see OAuthConfigurationSnapshot
+	 */
+	public static OAuthConfigurationSnapshot getSnapshot() {
+		return getTenant().getSnapshot();
+	}
+
+	/**
+	 * @return The implications between the scopes of the global OAuth configuration, null if 
+	 * the scopes are not hierarchical
+	 * @see OAuthScopeHierarchy
+	 */
+	public static OAuthScopeHierarchy getScopeHierarchy() {
+		return getTenant().getScopeHierarchy();
+	}
+
+	/**
+	 * @return The ids of the scopes of the global OAuth configuration, or of the scopes seen 
+	 * so far when no configuration is registered
+	 * @see OAuthScopeRegistry
+	 */
+	public static OAuthScopeRegistry getScopeRegistry() {
+		return getTenant().getScopeRegistry();
+	}
 }
@@ -0,0 +1,169 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.forbesdigital.jee.oauth.OAuthScopeSet;
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the scope requested by a client into the granted scopes, and remembers the
+ * outcome for each client role, grant type and requested scope string. Clients send the
+ * same scope strings over and over, so they are split and checked once per configuration
+ * snapshot: the resolver belongs to an {@link OAuthConfigurationSnapshot} and is dropped
+ * along with it when the configuration changes.
+ *
+ * <p>The number of remembered outcomes is bounded. Once the bound is reached, the new
+ * requested scopes are resolved without being remembered, so that a client sending random
+ * scopes cannot evict the frequent ones.
+ *
+ * @see OAuthConfigurationSnapshot#getScopeResolver()
+ */
+public final class OAuthScopeResolver {
+
+	/**
+	 * Default maximum number of remembered outcomes
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	private final OAuthConfigurationSnapshot snapshot;
+	private final int maximumSize;
+	private final ConcurrentMap<Key, Resolution> resolutions = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param snapshot The configuration against which the scopes are checked
+	 * @param maximumSize The maximum number of remembered outcomes
+	 * @throws IllegalArgumentException If the maximum size is negative
+	 */
+	public OAuthScopeResolver(OAuthConfigurationSnapshot snapshot, int maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("The maximum size must be positive or zero.");
+		}
+		this.snapshot = snapshot;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Resolve a requested scope.
+	 *
+	 * @param role The role of the client
+	 * @param grantType The requested grant type, null if it is unknown
+	 * @param requestedScope The requested scope, not empty
+	 * @return The outcome of the resolution
+	 */
+	public Resolution resolve(OAuthConfigurationSnapshot.Role role, EOAuthGrantType grantType, String requestedScope) {
+		Key key = new Key(role, grantType, requestedScope);
+		Resolution resolution = resolutions.get(key);
+		if (resolution == null) {
+			resolution = compute(role, grantType, requestedScope);
+			if (resolutions.size() < maximumSize) {
+				resolutions.putIfAbsent(key, resolution);
+			}
+		}
+		return resolution;
+	}
+
+	/**
+	 * @return The number of remembered outcomes
+	 */
+	public int size() {
+		return resolutions.size();
+	}
+
+	private Resolution compute(OAuthConfigurationSnapshot.Role role, EOAuthGrantType grantType, String requestedScope) {
+
+		// Check Scope format
+		if (!OAuthSyntaxValidator.isValidScope(requestedScope)) {
+			return new Resolution(null, "The requested scope is malformed.");
+		}
+
+		Set<String> grantedScopes = new TreeSet<>();
+		OAuthScopeSet allowedScopes = role.getAllowedScopes(grantType);
+		for (String clientScope : requestedScope.split(IOAuthToken.SCOPES_SEPARATOR)) {
+
+			// Handle the case when double spaces are found in the requested Scope.
+			if (clientScope.isEmpty()) {
+				continue;
+			}
+
+			// the scopes allowed for both the role and the grant type are checked at once
+			int scopeId = snapshot.getScopeId(clientScope);
+			if (!allowedScopes.contains(scopeId) || !snapshot.isValidScope(scopeId)) {
+				if (!snapshot.isValidScope(scopeId)) {
+					return new Resolution(null, "The requested scope is invalid.");
+				}
+				if (!role.getAllowedScopes().contains(scopeId)) {
+					return new Resolution(null, "The requested scope exceeds the scope granted by the resource owner.");
+				}
+				return new Resolution(null, "The requested scope requires a different grant_type.");
+			}
+			grantedScopes.add(clientScope);
+		}
+		return new Resolution(Collections.unmodifiableSet(grantedScopes), null);
+	}
+
+	/**
+	 * Outcome of the resolution of a requested scope: either the granted scopes, or the
+	 * reason why the requested scope is refused
+	 */
+	public static final class Resolution {
+
+		private final Set<String> scopes;
+		private final String error;
+
+		private Resolution(Set<String> scopes, String error) {
+			this.scopes = scopes;
+			this.error = error;
+		}
+
+		/**
+		 * @return The granted scopes, sorted and immutable, null if the requested scope is
+		 * refused
+		 */
+		public Set<String> getScopes() {
+			return scopes;
+		}
+
+		/**
+		 * @return The reason why the requested scope is refused, null if it is not
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Client role, grant type and requested scope
+	 */
+	private static final class Key {
+
+		private final OAuthConfigurationSnapshot.Role role;
+		private final EOAuthGrantType grantType;
+		private final String requestedScope;
+
+		Key(OAuthConfigurationSnapshot.Role role, EOAuthGrantType grantType, String requestedScope) {
+			this.role = role;
+			this.grantType = grantType;
+			this.requestedScope = requestedScope;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return role == other.role && grantType == other.grantType && requestedScope.equals(other.requestedScope);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * System.identityHashCode(role) + (grantType == null ? 0 : grantType.hashCode())) + requestedScope.hashCode();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.forbesdigital.jee.oauth.OAuthScopeHierarchy;
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An OAuth configuration published at once with the objects derived from it: its scope
+ * hierarchy, its scope registry and its compiled snapshot. The global configuration of
+ * {@link OAuthContext} is a tenant, and so is each configuration of an
+ * {@link OAuthTenantRegistry}.
+ *
+ * <p>A tenant is immutable: reloading its configuration builds a new tenant, which keeps the
+ * scope registry when the configured scopes do not change.
+ *
+ * @see OAuthContext#getTenant()
+ */
+public final class OAuthTenant {
+
+	private final String name;
+	private final IOAuthConfiguration configuration;
+	private final Set<String> scopes;
+	private final OAuthScopeHierarchy hierarchy;
+	private final OAuthScopeRegistry registry;
+	private volatile OAuthConfigurationSnapshot snapshot;
+
+	/**
+	 * Tenant without configuration, whose registry gives ids to the scopes seen so far
+	 */
+	OAuthTenant() {
+		this(null, null, null, null, new OAuthScopeRegistry(null), null);
+	}
+
+	/**
+	 * Tenant whose snapshot is compiled the first time it is used
+	 *
+	 * @param name The name of the tenant, null for the global configuration
+	 * @param configuration The configuration
+	 * @param scopeSeparator The separator of the segments of the hierarchical scopes, null if
+	 * the scopes are not hierarchical
+	 */
+	OAuthTenant(String name, IOAuthConfiguration configuration, String scopeSeparator) {
+		this.name = name;
+		this.configuration = configuration;
+
+		Set<String> allScopes = configuration.getAllScopes();
+		this.scopes = allScopes != null ? new TreeSet<>(allScopes) : null;
+		this.hierarchy = scopeSeparator != null ? new OAuthScopeHierarchy(allScopes, scopeSeparator) : null;
+		this.registry = new OAuthScopeRegistry(allScopes, hierarchy);
+	}
+
+	private OAuthTenant(String name, IOAuthConfiguration configuration, Set<String> scopes, OAuthScopeHierarchy hierarchy,
+			OAuthScopeRegistry registry, OAuthConfigurationSnapshot snapshot) {
+		this.name = name;
+		this.configuration = configuration;
+		this.scopes = scopes;
+		this.hierarchy = hierarchy;
+		this.registry = registry;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Validate and compile a new configuration for this tenant. The scope hierarchy keeps its
+	 * separator, and the scope registry is kept when the configured scopes do not change, so
+	 * that the scopes already resolved against it remain valid.
+	 *
+	 * @param config The new configuration
+	 * @return The tenant with the new configuration, whose snapshot is already compiled
+	 * @throws OAuthConfigurationException If the new configuration is invalid
+	 */
+	OAuthTenant reload(IOAuthConfiguration config) {
+		validate(config);
+
+		Set<String> newScopes = new TreeSet<>(config.getAllScopes());
+		OAuthScopeHierarchy newHierarchy = hierarchy;
+		OAuthScopeRegistry newRegistry = registry;
+		if (!newScopes.equals(scopes)) {
+			if (newHierarchy != null) {
+				newHierarchy = new OAuthScopeHierarchy(newScopes, newHierarchy.getSeparator());
+			}
+			newRegistry = new OAuthScopeRegistry(newScopes, newHierarchy, registry);
+		}
+		return new OAuthTenant(name, config, newScopes, newHierarchy, newRegistry, new OAuthConfigurationSnapshot(config, newRegistry));
+	}
+
+	/**
+	 * @return The name of the tenant, null for the global configuration
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The configuration, null if none is registered
+	 */
+	public IOAuthConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return The implications between the scopes, null if the scopes are not hierarchical
+	 */
+	public OAuthScopeHierarchy getScopeHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * @return The ids of the scopes
+	 */
+	public OAuthScopeRegistry getScopeRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return The compiled snapshot of the configuration
+	 * @throws OAuthConfigurationException If there is no configuration
+	 */
+	public OAuthConfigurationSnapshot getSnapshot() {
+		OAuthConfigurationSnapshot result = snapshot;
+		if (result == null) {
+			result = compileSnapshot();
+		}
+		return result;
+	}
+
+	private synchronized OAuthConfigurationSnapshot compileSnapshot() {
+		if (snapshot == null) {
+			if (configuration == null) {
+				throw missingConfiguration();
+			}
+			snapshot = new OAuthConfigurationSnapshot(configuration, registry);
+		}
+		return snapshot;
+	}
+
+	static OAuthConfigurationException missingConfiguration() {
+		return new OAuthConfigurationException("Could not find the OAuth configuration. "
+				  + "Make sure you have registered a Weblistener which extends "
+				  + "'com.forbesdigital.library.oauth.configuration.AbstractOAuthConfigurationListener'");
+	}
+
+	/**
+	 * Check that a configuration is complete and consistent: the scopes allowed for the
+	 * client roles and the grant types must be configured scopes, and each client role must
+	 * have a token lifetime.
+	 *
+	 * @param config The configuration to check
+	 * @throws OAuthConfigurationException If the configuration is invalid
+	 */
+	static void validate(IOAuthConfiguration config) {
+		if (config == null) {
+			throw new OAuthConfigurationException("The OAuth configuration must not be null.");
+		}
+
+		Set<String> allScopes = config.getAllScopes();
+		Set<EOAuthGrantType> grantTypes = config.getAllGrantTypes();
+		Set<String> roleNames = config.getClientRoleNames();
+		if (allScopes == null || grantTypes == null || roleNames == null) {
+			throw new OAuthConfigurationException("The scopes, the grant types and the client "
+					  + "role names of the OAuth configuration must not be null.");
+		}
+
+		for (EOAuthGrantType grantType : grantTypes) {
+			validateScopes(allScopes, config.getAllowedScopes(grantType), "grant type " + grantType);
+		}
+
+		for (String roleName : roleNames) {
+			IOAuthClientRole role = config.getClientRole(roleName);
+			if (role == null) {
+				throw new OAuthConfigurationException("The client role '" + roleName + "' must be defined.");
+			}
+			if (role.getAllowedOAuthGrantTypes() == null) {
+				throw new OAuthConfigurationException("The grant types of the client role '" + roleName + "' must not be null.");
+			}
+			if (role.getTokenLifetime() == null || role.getTokenLifetime() <= 0) {
+				throw new OAuthConfigurationException("The token lifetime of the client role '" + roleName + "' must be strictly positive.");
+			}
+			validateScopes(allScopes, role.getAllowedScopes(), "client role '" + roleName + "'");
+		}
+	}
+
+	private static void validateScopes(Set<String> allScopes, Set<String> allowedScopes, String owner) {
+		if (allowedScopes == null) {
+			throw new OAuthConfigurationException("The scopes of the " + owner + " must not be null.");
+		}
+		for (String allowedScope : allowedScopes) {
+			if (!allScopes.contains(allowedScope)) {
+				throw new OAuthConfigurationException("The scopes of the " + owner + " must be "
+						  + "configured scopes, but '" + allowedScope + "' is not.");
+			}
+		}
+	}
+}
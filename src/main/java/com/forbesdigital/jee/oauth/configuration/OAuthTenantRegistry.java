@@ -0,0 +1,176 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Serves several OAuth configurations from the same application, one per tenant. Each tenant
+ * has its own scope registry and compiled snapshot, and so its own admission tables and
+ * scope resolutions. The token details of each tenant are served from its own caches by the
+ * {@link com.forbesdigital.jee.oauth.spring.token.OAuthTenantTokenDetailsService}.
+ *
+ * <p>The tenant of a request is resolved from the host name of the request, then from the
+ * longest mapped prefix of its path. The mappings are kept in maps replaced as a whole when
+ * they change, so that resolving a tenant is a few map lookups without synchronization. The
+ * resolved tenant is bound to the thread processing the request by the
+ * {@link com.forbesdigital.jee.oauth.spring.OAuthTenantFilter}, which makes it the
+ * configuration returned by {@link OAuthContext}.
+ *
+ * @see OAuthTenant
+ */
+public class OAuthTenantRegistry {
+
+	private volatile Map<String, OAuthTenant> tenants = Collections.emptyMap();
+	private volatile Map<String, String> hostTenants = Collections.emptyMap();
+	private volatile Map<String, String> pathPrefixTenants = Collections.emptyMap();
+
+	/**
+	 * Register the configuration of a tenant. The configuration is validated and compiled
+	 * right away.
+	 *
+	 * @param name The name of the tenant
+	 * @param configuration The configuration of the tenant
+	 * @param scopeSeparator The separator of the segments of the hierarchical scopes, null if
+	 * the scopes are not hierarchical
+	 * @return The registered tenant
+	 * @throws OAuthConfigurationException If the tenant is already registered, or if its
+	 * configuration is invalid
+	 */
+	public synchronized OAuthTenant register(String name, IOAuthConfiguration configuration, String scopeSeparator) {
+		if (name == null) {
+			throw new IllegalArgumentException("The name of the tenant must not be null.");
+		}
+		if (tenants.containsKey(name)) {
+			throw new OAuthConfigurationException("Trying to configure the OAuth tenant '" + name
+					  + "', but there is already one.");
+		}
+		OAuthTenant.validate(configuration);
+
+		OAuthTenant tenant = new OAuthTenant(name, configuration, scopeSeparator);
+		tenant.getSnapshot();
+		putTenant(tenant);
+		return tenant;
+	}
+
+	/**
+	 * Replace the configuration of a tenant while the application runs, in the same way as
+	 * {@link OAuthContext#reloadConfiguration(IOAuthConfiguration)}. The requests already
+	 * bound to the tenant keep its previous configuration. The reload listeners of
+	 * {@link OAuthContext} are notified with the reloaded tenant.
+	 *
+	 * @param name The name of the tenant
+	 * @param configuration The new configuration of the tenant
+	 * @return The reloaded tenant
+	 * @throws OAuthConfigurationException If the tenant is not registered, or if its new
+	 * configuration is invalid, in which case the registered configuration is kept
+	 */
+	public OAuthTenant reload(String name, IOAuthConfiguration configuration) {
+		OAuthTenant current;
+		OAuthTenant reloaded;
+
+		synchronized (this) {
+			current = tenants.get(name);
+			if (current == null) {
+				throw new OAuthConfigurationException("Trying to reload the OAuth tenant '" + name
+						  + "', but there is none registered.");
+			}
+			reloaded = current.reload(configuration);
+			putTenant(reloaded);
+		}
+		OAuthContext.notifyReloadListeners(reloaded, current.getConfiguration());
+		return reloaded;
+	}
+
+	/**
+	 * Resolve the requests sent to a host name to a tenant.
+	 *
+	 * @param host The host name, as returned by {@link HttpServletRequest#getServerName()}
+	 * @param name The name of a registered tenant
+	 */
+	public synchronized void mapHost(String host, String name) {
+		if (host == null) {
+			throw new IllegalArgumentException("The host must not be null.");
+		}
+		checkRegistered(name);
+
+		Map<String, String> newHostTenants = new HashMap<>(hostTenants);
+		newHostTenants.put(host.toLowerCase(Locale.ENGLISH), name);
+		hostTenants = newHostTenants;
+	}
+
+	/**
+	 * Resolve the requests whose path, within the application, starts with a prefix to a
+	 * tenant. A prefix matches whole path segments: "/acme" matches "/acme/api" but not
+	 * "/acmeapi".
+	 *
+	 * @param pathPrefix The path prefix, such as "/acme"
+	 * @param name The name of a registered tenant
+	 */
+	public synchronized void mapPathPrefix(String pathPrefix, String name) {
+		if (pathPrefix == null || !pathPrefix.startsWith("/") || pathPrefix.length() < 2 || pathPrefix.endsWith("/")) {
+			throw new IllegalArgumentException("The path prefix must start with '/' and must not end with '/'.");
+		}
+		checkRegistered(name);
+
+		Map<String, String> newPathPrefixTenants = new HashMap<>(pathPrefixTenants);
+		newPathPrefixTenants.put(pathPrefix, name);
+		pathPrefixTenants = newPathPrefixTenants;
+	}
+
+	/**
+	 * @param name The name of a tenant
+	 * @return The tenant, null if there is no such tenant
+	 */
+	public OAuthTenant getTenant(String name) {
+		return name != null ? tenants.get(name) : null;
+	}
+
+	/**
+	 * Resolve the tenant of a request, from its host name first, then from its path.
+	 *
+	 * @param request The request
+	 * @return The tenant, null if the request is not mapped to any tenant
+	 */
+	public OAuthTenant resolve(HttpServletRequest request) {
+		Map<String, String> currentHostTenants = hostTenants;
+		if (!currentHostTenants.isEmpty() && request.getServerName() != null) {
+			String name = currentHostTenants.get(request.getServerName().toLowerCase(Locale.ENGLISH));
+			if (name != null) {
+				return tenants.get(name);
+			}
+		}
+
+		Map<String, String> currentPathPrefixTenants = pathPrefixTenants;
+		String uri = request.getRequestURI();
+		if (!currentPathPrefixTenants.isEmpty() && uri != null) {
+			String contextPath = request.getContextPath();
+			String path = contextPath != null && uri.startsWith(contextPath) ? uri.substring(contextPath.length()) : uri;
+
+			// from the longest to the shortest prefix made of whole segments
+			int end = path.length();
+			while (end > 0) {
+				String name = currentPathPrefixTenants.get(path.substring(0, end));
+				if (name != null) {
+					return tenants.get(name);
+				}
+				end = path.lastIndexOf('/', end - 1);
+			}
+		}
+		return null;
+	}
+
+	private void putTenant(OAuthTenant tenant) {
+		Map<String, OAuthTenant> newTenants = new HashMap<>(tenants);
+		newTenants.put(tenant.getName(), tenant);
+		tenants = newTenants;
+	}
+
+	private void checkRegistered(String name) {
+		if (!tenants.containsKey(name)) {
+			throw new IllegalArgumentException("The tenant '" + name + "' must be registered.");
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.forbesdigital.jee.oauth.processing;
+
+import com.forbesdigital.jee.oauth.AllOAuthScopes;
+import com.forbesdigital.jee.oauth.AnyOAuthScopes;
+import com.forbesdigital.jee.oauth.NoOAuthScopesRequired;
+import com.forbesdigital.jee.oauth.OAuthScopeExpression;
+import com.forbesdigital.jee.oauth.OAuthScopeIndex;
+import com.forbesdigital.jee.oauth.OAuthScopes;
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating the {@link OAuthScopeIndex} of the resource methods and
+ * classes annotated with {@link AllOAuthScopes}, {@link AnyOAuthScopes}, {@link OAuthScopes}
+ * or {@link NoOAuthScopesRequired}.
+ *
+ * <p>The processor is not registered as a service, so that it does not run in the
+ * compilations of the applications which do not ask for it. It is enabled with
+ * {@code -processor com.forbesdigital.jee.oauth.processing.OAuthScopeIndexProcessor}, or with
+ * the {@code annotationProcessors} of the Maven compiler plugin. The scopes of the
+ * annotations are checked at build time when the
+ * configured scopes are given to the processor, either as a list with
+ * {@code -Aoauth.scopes=scope1,scope2} or as the string constants of a class with
+ * {@code -Aoauth.scopesClass=com.example.OAuthConfiguration.Scopes}: an annotation listing an
+ * unknown scope then fails the build. A malformed {@link OAuthScopes} expression, or an
+ * expression or a {@link NoOAuthScopesRequired} annotation combined with another scope
+ * annotation, always fails the build.
+ *
+ * <p>The processor claims no annotation, so that it takes part in every compilation: the
+ * index is written at the end of each compilation, even when it is empty, and never keeps
+ * the entries of a previous compilation.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({OAuthScopeIndexProcessor.SCOPES_OPTION, OAuthScopeIndexProcessor.SCOPES_CLASS_OPTION})
+public class OAuthScopeIndexProcessor extends AbstractProcessor {
+
+	/**
+	 * Option listing the configured scopes, separated by commas or spaces
+	 */
+	public static final String SCOPES_OPTION = "oauth.scopes";
+
+	/**
+	 * Option naming a class whose string constants are the configured scopes
+	 */
+	public static final String SCOPES_CLASS_OPTION = "oauth.scopesClass";
+
+	private final Map<String, String> index = new TreeMap<>();
+	private Set<String> configuredScopes;
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+
+		String scopes = processingEnv.getOptions().get(SCOPES_OPTION);
+		if (scopes != null) {
+			configuredScopes = new HashSet<>(Arrays.asList(scopes.trim().split("[\\s,]+")));
+		}
+
+		String scopesClass = processingEnv.getOptions().get(SCOPES_CLASS_OPTION);
+		if (scopesClass != null) {
+			TypeElement type = processingEnv.getElementUtils().getTypeElement(scopesClass);
+			if (type == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The scopes class " + scopesClass + " cannot be found.");
+				return;
+			}
+			if (configuredScopes == null) {
+				configuredScopes = new HashSet<>();
+			}
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				if (field.getConstantValue() instanceof String) {
+					configuredScopes.add((String) field.getConstantValue());
+				}
+			}
+		}
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(AllOAuthScopes.class)) {
+			addEntry(element, OAuthScopeIndex.ALL_SUFFIX, element.getAnnotation(AllOAuthScopes.class).value());
+		}
+		for (Element element : roundEnv.getElementsAnnotatedWith(AnyOAuthScopes.class)) {
+			addEntry(element, OAuthScopeIndex.ANY_SUFFIX, element.getAnnotation(AnyOAuthScopes.class).value());
+			if (element.getAnnotation(AllOAuthScopes.class) != null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, 
+					"The @AnyOAuthScopes annotation is ignored, since the @AllOAuthScopes annotation takes priority.", element);
+			}
+		}
+		for (Element element : roundEnv.getElementsAnnotatedWith(OAuthScopes.class)) {
+			addExpressionEntry(element, element.getAnnotation(OAuthScopes.class).value());
+		}
+		for (Element element : roundEnv.getElementsAnnotatedWith(NoOAuthScopesRequired.class)) {
+			addNoScopesEntry(element);
+		}
+
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		}
+		return false;
+	}
+
+	private void addEntry(Element element, String suffix, String[] scopes) {
+		StringBuilder value = new StringBuilder();
+		for (String scope : scopes) {
+			checkScope(element, scope);
+			if (value.length() > 0) {
+				value.append(' ');
+			}
+			value.append(scope);
+		}
+		if (isIndexed(element)) {
+			index.put(key(element) + suffix, value.toString());
+		}
+	}
+
+	private void addExpressionEntry(Element element, String expression) {
+		if (element.getAnnotation(AllOAuthScopes.class) != null || element.getAnnotation(AnyOAuthScopes.class) != null) {
+			error(element, "The @OAuthScopes annotation cannot be combined with an @AllOAuthScopes or @AnyOAuthScopes annotation.");
+			return;
+		}
+
+		try {
+			for (String scope : OAuthScopeExpression.parse(expression).getScopes()) {
+				checkScope(element, scope);
+			}
+		} catch (IllegalArgumentException iae) {
+			error(element, iae.getMessage());
+			return;
+		}
+		if (isIndexed(element)) {
+			index.put(key(element) + OAuthScopeIndex.EXPRESSION_SUFFIX, expression);
+		}
+	}
+
+	private void addNoScopesEntry(Element element) {
+		if (element.getAnnotation(AllOAuthScopes.class) != null || element.getAnnotation(AnyOAuthScopes.class) != null 
+			|| element.getAnnotation(OAuthScopes.class) != null) {
+			error(element, "The @NoOAuthScopesRequired annotation cannot be combined with another scope annotation.");
+			return;
+		}
+		if (isIndexed(element)) {
+			index.put(key(element) + OAuthScopeIndex.NONE_SUFFIX, "");
+		}
+	}
+
+	/**
+	 * @return True for the methods and the classes, the only elements whose annotations are 
+	 * read at runtime
+	 */
+	private static boolean isIndexed(Element element) {
+		return element.getKind() == ElementKind.METHOD || element.getKind().isClass() || element.getKind().isInterface();
+	}
+
+	private void checkScope(Element element, String scope) {
+		if (!OAuthSyntaxValidator.isValidScope(scope) || scope.isEmpty() || scope.indexOf(' ') >= 0) {
+			error(element, "The scope '" + scope + "' is not a valid OAuth scope.");
+		} else if (configuredScopes != null && !configuredScopes.contains(scope)) {
+			error(element, "The scope '" + scope + "' is not part of the OAuth configuration.");
+		}
+	}
+
+	private void writeIndex() {
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", OAuthScopeIndex.INDEX_RESOURCE);
+			try (Writer writer = resource.openWriter()) {
+				writer.write("# Generated by " + OAuthScopeIndexProcessor.class.getName() + "\n");
+				for (Map.Entry<String, String> entry : index.entrySet()) {
+					writer.write(escapeKey(entry.getKey()) + "=" + entry.getValue() + "\n");
+				}
+			}
+		} catch (IOException ioe) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write the OAuth scope index: " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * @return The binary name of a class, or the signature of a method
+	 * @see OAuthScopeIndex#key(java.lang.reflect.Method)
+	 */
+	private String key(Element element) {
+		if (element.getKind() != ElementKind.METHOD) {
+			return processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+		}
+
+		ExecutableElement method = (ExecutableElement) element;
+		TypeElement type = (TypeElement) method.getEnclosingElement();
+		StringBuilder key = new StringBuilder(processingEnv.getElementUtils().getBinaryName(type)).append('#')
+			.append(method.getSimpleName()).append('(');
+		for (int i = 0; i < method.getParameters().size(); i++) {
+			if (i > 0) {
+				key.append(',');
+			}
+			key.append(canonicalName(processingEnv.getTypeUtils().erasure(method.getParameters().get(i).asType())));
+		}
+		return key.append(')').toString();
+	}
+
+	private String canonicalName(TypeMirror type) {
+		switch (type.getKind()) {
+			case ARRAY:
+				return canonicalName(((ArrayType) type).getComponentType()) + "[]";
+			case DECLARED:
+				return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+			default:
+				// primitive types, whose names must not depend on the locale of the build
+				return type.getKind().name().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	private static String escapeKey(String key) {
+		StringBuilder escaped = new StringBuilder(key.length());
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == '\\' || c == ':' || c == '=' || c == ' ' || c == '#' || c == '!') {
+				escaped.append('\\');
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -3,8 +3,9 @@ package com.forbesdigital.jee.oauth.rest.api;
 import com.forbesdigital.jee.oauth.OAuthTokenError;
 import com.forbesdigital.jee.oauth.OAuthTokenResponse;
 import com.forbesdigital.jee.oauth.configuration.EOAuthGrantType;
-import com.forbesdigital.jee.oauth.configuration.IOAuthConfiguration;
+import com.forbesdigital.jee.oauth.configuration.OAuthConfigurationSnapshot;
 import com.forbesdigital.jee.oauth.configuration.OAuthContext;
+import com.forbesdigital.jee.oauth.configuration.OAuthScopeResolver;
 import com.forbesdigital.jee.oauth.model.IOAuthClient;
 import com.forbesdigital.jee.oauth.model.IOAuthToken;
 import com.forbesdigital.jee.oauth.model.IOAuthUser;
@@ -12,6 +13,9 @@ import com.forbesdigital.jee.oauth.spring.client.exceptions.AbstractOAuthTokenRe
 import com.forbesdigital.jee.oauth.spring.client.exceptions.InvalidGrantException;
 import com.forbesdigital.jee.oauth.spring.client.exceptions.InvalidRequestException;
 import com.forbesdigital.jee.oauth.spring.client.exceptions.InvalidScopeException;
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -55,13 +59,21 @@ public abstract class AbstractAccessTokenResource<Client extends IOAuthClient, U
 			
 			User user = getAuthenticatedUser(grantType, username);
 
-			Set<String> grantedScopes = validateOAuthScope(scope, client, grantType);
+			OAuthScopeResolver.Resolution scopeResolution = validateOAuthScope(scope, client, grantType);
+			Set<String> grantedScopes = getGrantedScopes(scopeResolution);
 			
 			// calculate the token lifetime and expirationDate
 			Integer expiresInParsed = validateExpiresIn(expiresIn);
 			
 			Integer tokenLifetime = getTokenLifetime(client, expiresInParsed, user);
 			Token token = createOAuthToken(client, tokenLifetime, grantedScopes, user);
+			
+			// make sure that no stale information about the new access token is used and
+			// cache its details right away if they can be built
+			OAuthTokenDetailsService tokenDetailsService = getTokenDetailsService();
+			if (tokenDetailsService != null) {
+				tokenDetailsService.tokenCreated(token.getAccessToken(), buildTokenDetails(client, token, user));
+			}
 
 			OAuthTokenResponse tokenTO = toTransferObject(token);
 			Map<String, String> headers = new HashMap<>();
@@ -101,9 +113,39 @@ public abstract class AbstractAccessTokenResource<Client extends IOAuthClient, U
 	 * @param grantedScopes The granted OAuth Scopes
 	 * @param user The authenticated OAuth user, if there is one
 	 * @return The generated Token
+	 * @see com.forbesdigital.jee.oauth.spring.token.OAuthAccessTokenGenerator
 	 */
 	protected abstract Token createOAuthToken(Client client, Integer tokenLifetime, Set<String> grantedScopes, User user);
 
+	/**
+	 * Method provided to be overwritten in order to notify the token details service used to
+	 * authenticate the API calls of the tokens created by this resource. This is required when
+	 * the service is configured with caches.
+	 * 
+	 * @return The token details service, null if it does not need to be notified
+	 */
+	protected OAuthTokenDetailsService getTokenDetailsService() {
+		// Default behaviour - no token details service to notify
+		return null;
+	}
+
+	/**
+	 * Method provided to be overwritten in order to build the token details of a created token,
+	 * the same way the {@link IOAuthTokenDetailsBuilder} used to authenticate the API calls 
+	 * does. The token details are then put in the cache of the token details service, so that 
+	 * the first API call with the new token does not need a lookup.
+	 * 
+	 * @param client The authenticated OAuth Client
+	 * @param token The created OAuth Token, holding the granted scopes
+	 * @param user The authenticated OAuth user, if there is one
+	 * @return The token details, null to skip caching them at creation
+	 * @see #getTokenDetailsService()
+	 */
+	protected OAuthTokenDetails buildTokenDetails(Client client, Token token, User user) {
+		// Default behaviour - the token details are built at first use
+		return null;
+	}
+
 	/**
 	 * Method provided to be overwritten in case a custom processing of the granted scopes is desired after the default OAuth validation.
 	 * 
@@ -203,57 +245,40 @@ public abstract class AbstractAccessTokenResource<Client extends IOAuthClient, U
 	}
 
 	/**
-	 * Validates the requested scope and builds the granted scope which will be associated to the token.
+	 * Validates the requested scope. The outcome of the validation is remembered by the 
+	 * {@link OAuthScopeResolver} of the configuration snapshot, for each client role, grant 
+	 * type and requested scope string.
 	 * 
 	 * @param requestedScope The requested scope
 	 * @param client The Authenticated Client
 	 * @param grantType The requested grantType (a valid {@link EOAuthGrantType} string)
-	 * @return The list of granted scopes
+	 * @return The resolved scope, null if no scope is requested
 	 */
-	private Set<String> validateOAuthScope(String requestedScope, Client client, String grantTypeStr) {
-		
-		Set<String> grantedScopes = new TreeSet<>();
+	private OAuthScopeResolver.Resolution validateOAuthScope(String requestedScope, Client client, String grantTypeStr) {
 		
 		// In case no scope is requested return the default BASIC_ACCESS scope only.
 		if (requestedScope == null || requestedScope.isEmpty()){
-			// BASIC_SCOPE granted by default
-			return afterOAuthScopesResolution(grantedScopes);
-		}
-			
-		// Check Scope format
-		if (!requestedScope.matches(Token.SCOPE_PATTERN)) {
-			throw new InvalidScopeException("The requested scope is malformed.");
+			return null;
 		}
 		
-		// Split Scope by space and validate each individual scope
-		String[] requestedScopes = requestedScope.split(Token.SCOPES_SEPARATOR);
-		Set<String> allScopes = OAuthContext.getConfig().getAllScopes();
-		Set<String> allowedScopes = OAuthContext.getConfig().getClientRole(client.getClientRole()).getAllowedScopes();
-		for (String clientScope : requestedScopes) {
-			
-			// Handle the case when double spaces are found in the requested Scope.
-			if (clientScope.isEmpty()){
-				continue;
-			}
-			// Check if the scope is valid
-			if (!allScopes.contains(clientScope)) {
-				throw new InvalidScopeException("The requested scope is invalid.");
-			}
-			// Check if the scope is allowed
-			if (!allowedScopes.contains(clientScope)) {
-				throw new InvalidScopeException("The requested scope exceeds the scope granted by the resource owner.");
-			}
-			
-			// check that the scope is allowed for the given grant type
-			EOAuthGrantType grantType = EOAuthGrantType.fromValue(grantTypeStr);
-			if (!OAuthContext.getConfig().getAllowedScopes(grantType).contains(clientScope)) {
-				throw new InvalidScopeException("The requested scope requires a different grant_type.");
-			}
-			
-			// Add the scope to the granted scopes list
-			grantedScopes.add(clientScope);
+		OAuthConfigurationSnapshot snapshot = OAuthContext.getSnapshot();
+		OAuthScopeResolver.Resolution resolution = snapshot.getScopeResolver().resolve(
+			snapshot.getRole(client.getClientRole()), EOAuthGrantType.fromValue(grantTypeStr), requestedScope);
+		if (resolution.getError() != null) {
+			throw new InvalidScopeException(resolution.getError());
 		}
-		
+		return resolution;
+	}
+	
+	/**
+	 * Builds the granted scope which will be associated to the token.
+	 * 
+	 * @param resolution The resolved scope, null if no scope is requested
+	 * @return The list of granted scopes
+	 */
+	private Set<String> getGrantedScopes(OAuthScopeResolver.Resolution resolution) {
+		// BASIC_SCOPE granted by default, the set is copied since it may be modified
+		Set<String> grantedScopes = resolution == null ? new TreeSet<String>() : new TreeSet<>(resolution.getScopes());
 		return afterOAuthScopesResolution(grantedScopes);
 	}
 	
@@ -270,8 +295,7 @@ public abstract class AbstractAccessTokenResource<Client extends IOAuthClient, U
 		Integer tokenLifetime = client.getTokenLifetime();
 		if (tokenLifetime == null) {
 			// Use default tokenLifetime in case this is not defined for the client
-			IOAuthConfiguration config = OAuthContext.getConfig();
-			tokenLifetime = config.getClientRole(client.getClientRole()).getTokenLifetime();
+			tokenLifetime = OAuthContext.getSnapshot().getRole(client.getClientRole()).getTokenLifetime();
 		}
 		// Try setting the lifetime requested by the user
 		if (expiresIn != null && expiresIn > 0) {
@@ -0,0 +1,83 @@
+package com.forbesdigital.jee.oauth.spring;
+
+import com.forbesdigital.jee.oauth.configuration.OAuthContext;
+import com.forbesdigital.jee.oauth.configuration.OAuthTenant;
+import com.forbesdigital.jee.oauth.configuration.OAuthTenantRegistry;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.web.filter.GenericFilterBean;
+
+/**
+ * Filter binding the tenant of the request to the thread processing it, so that the request
+ * is checked against the configuration of the tenant. It must come before the other OAuth
+ * filters.
+ *
+ * <p>The tenant is resolved once per request and kept in the {@link #TENANT_ATTRIBUTE}
+ * request attribute, which is reused when the request is forwarded or dispatched again. A
+ * request which is not mapped to any tenant is checked against the global configuration.
+ * Override {@link #resolveTenant(HttpServletRequest)} to resolve the tenant from other
+ * request metadata, such as a header or the client key.
+ *
+ * @see OAuthTenantRegistry
+ */
+public class OAuthTenantFilter extends GenericFilterBean {
+
+	/**
+	 * Name of the request attribute holding the {@link OAuthTenant} of the request
+	 */
+	public static final String TENANT_ATTRIBUTE = OAuthTenant.class.getName();
+
+	private final OAuthTenantRegistry tenantRegistry;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tenantRegistry The registry resolving the tenants of the requests
+	 */
+	public OAuthTenantFilter(OAuthTenantRegistry tenantRegistry) {
+		this.tenantRegistry = tenantRegistry;
+	}
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+		throws IOException, ServletException {
+
+		final HttpServletRequest request = (HttpServletRequest) req;
+
+		OAuthTenant tenant = (OAuthTenant) request.getAttribute(TENANT_ATTRIBUTE);
+		if (tenant == null) {
+			tenant = resolveTenant(request);
+			if (tenant != null) {
+				request.setAttribute(TENANT_ATTRIBUTE, tenant);
+			}
+		}
+
+		OAuthTenant previousTenant = OAuthContext.bindTenant(tenant);
+		try {
+			chain.doFilter(request, res);
+		} finally {
+			OAuthContext.bindTenant(previousTenant);
+		}
+	}
+
+	/**
+	 * Resolve the tenant of a request.
+	 *
+	 * @param request The request
+	 * @return The tenant, null to check the request against the global configuration
+	 */
+	protected OAuthTenant resolveTenant(HttpServletRequest request) {
+		return tenantRegistry.resolve(request);
+	}
+
+	/**
+	 * @return The registry resolving the tenants of the requests
+	 */
+	protected OAuthTenantRegistry getTenantRegistry() {
+		return tenantRegistry;
+	}
+}
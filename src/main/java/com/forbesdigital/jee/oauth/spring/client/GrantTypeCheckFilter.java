@@ -1,6 +1,7 @@
 package com.forbesdigital.jee.oauth.spring.client;
 
 import com.forbesdigital.jee.oauth.configuration.EOAuthGrantType;
+import com.forbesdigital.jee.oauth.configuration.OAuthConfigurationSnapshot;
 import com.forbesdigital.jee.oauth.configuration.OAuthContext;
 import com.forbesdigital.jee.oauth.spring.client.exceptions.InvalidRequestException;
 import com.forbesdigital.jee.oauth.spring.client.exceptions.UnauthorizedClientException;
@@ -55,13 +56,14 @@ public class GrantTypeCheckFilter extends GenericFilterBean {
 			throw new InvalidRequestException("The request is missing a required parameter.");
 		}
 		// check that the grant type exists and can be used in this application
+		OAuthConfigurationSnapshot snapshot = OAuthContext.getSnapshot();
 		EOAuthGrantType grantType = EOAuthGrantType.fromValue(grantTypeStr);
-		if (grantType == null || !OAuthContext.getConfig().getAllGrantTypes().contains(grantType)) {
+		if (!snapshot.isGrantTypeSupported(grantType)) {
 			throw new UnsupportedGrantTypeException("The authorization grant type is not supported by the authorization server.");
 		}
 
 		String clientRole = ((OAuthClientDetails) existingAuth.getPrincipal()).getClientRole();
-		if (!OAuthContext.getConfig().getClientRole(clientRole).getAllowedOAuthGrantTypes().contains(grantType)) {
+		if (!snapshot.getRole(clientRole).isGrantTypeAllowed(grantType)) {
 			throw new UnauthorizedClientException("The authenticated client is not authorized to use this authorization grant type.");
 		}
 	}
@@ -0,0 +1,90 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.spring.token.exceptions.ExpiredBearerTokenException;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationRegistry;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Authentication provider dedicated to the OAuth bearer tokens.
+ * 
+ * <p>Contrary to the {@code DaoAuthenticationProvider}, there is no password to check: the 
+ * token details are loaded through the {@link OAuthTokenDetailsService} and the token is 
+ * authenticated as long as it is known, enabled (not revoked) and not expired. When 
+ * {@link OAuthRevocationEpochs} are configured, the tokens generated before the last 
+ * revocation of their client or of their user are rejected as well, and so are the tokens 
+ * revoked in the {@link OAuthRevocationRegistry}, if any. The epochs can instead be given to
+ * the {@link OAuthTokenDetailsService}, which then returns the details of these tokens
+ * revoked to all its consumers.
+ * 
+ * @see BearerTokenAuthenticationToken
+ * @see TokenBearerAuthenticationFilter
+ */
+public class BearerTokenAuthenticationProvider implements AuthenticationProvider {
+
+	private UserDetailsService tokenDetailsService;
+	private OAuthRevocationEpochs revocationEpochs;
+	private OAuthRevocationRegistry revocationRegistry;
+
+	@Override
+	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+		String accessToken = (String) authentication.getPrincipal();
+
+		UserDetails details;
+		try {
+			details = tokenDetailsService.loadUserByUsername(accessToken);
+		} catch (UsernameNotFoundException unfe) {
+			throw new BadCredentialsException("Bad credentials", unfe);
+		}
+
+		if (!details.isEnabled() || (details instanceof OAuthTokenDetails && isRevoked((OAuthTokenDetails) details))) {
+			throw new DisabledException("The token is revoked.");
+		}
+		if (!details.isAccountNonExpired()) {
+			throw new ExpiredBearerTokenException("The token is expired.");
+		}
+
+		BearerTokenAuthenticationToken result = new BearerTokenAuthenticationToken(details, details.getAuthorities());
+		result.setDetails(authentication.getDetails());
+		return result;
+	}
+
+	private boolean isRevoked(OAuthTokenDetails details) {
+		return (revocationEpochs != null && revocationEpochs.isRevoked(details))
+			|| (revocationRegistry != null && revocationRegistry.isRevoked(details.getId()));
+	}
+
+	@Override
+	public boolean supports(Class<?> authentication) {
+		return BearerTokenAuthenticationToken.class.isAssignableFrom(authentication);
+	}
+
+	/**
+	 * @param tokenDetailsService Service to load the token details, typically an {@link OAuthTokenDetailsService}
+	 */
+	public void setTokenDetailsService(UserDetailsService tokenDetailsService) {
+		this.tokenDetailsService = tokenDetailsService;
+	}
+
+	/**
+	 * @param revocationEpochs Epochs to revoke all the tokens of a client or of a user at once
+	 */
+	public void setRevocationEpochs(OAuthRevocationEpochs revocationEpochs) {
+		this.revocationEpochs = revocationEpochs;
+	}
+
+	/**
+	 * @param revocationRegistry Registry of the revoked tokens, for the tokens which are not 
+	 * reloaded from the storage on each request
+	 */
+	public void setRevocationRegistry(OAuthRevocationRegistry revocationRegistry) {
+		this.revocationRegistry = revocationRegistry;
+	}
+}
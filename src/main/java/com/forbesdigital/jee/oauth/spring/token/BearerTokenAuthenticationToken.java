@@ -0,0 +1,38 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import java.util.Collection;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Authentication request, or authenticated principal, for an OAuth bearer token.
+ * 
+ * <p>The principal of the request is the access token and there are no credentials. Once
+ * authenticated, the principal is the {@link OAuthTokenDetails} of the token. The class
+ * extends {@link UsernamePasswordAuthenticationToken} so that the authentication requests
+ * can still be processed by a {@code DaoAuthenticationProvider}.
+ * 
+ * @see BearerTokenAuthenticationProvider
+ */
+public class BearerTokenAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+	/**
+	 * Constructor of an authentication request
+	 * 
+	 * @param accessToken The access token sent by the client
+	 */
+	public BearerTokenAuthenticationToken(String accessToken) {
+		super(accessToken, "");
+	}
+
+	/**
+	 * Constructor of an authenticated principal
+	 * 
+	 * @param details The details of the authenticated token
+	 * @param authorities The authorities granted to the token
+	 */
+	public BearerTokenAuthenticationToken(UserDetails details, Collection<? extends GrantedAuthority> authorities) {
+		super(details, "", authorities);
+	}
+}
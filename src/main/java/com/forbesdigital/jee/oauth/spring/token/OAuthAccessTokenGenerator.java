@@ -0,0 +1,148 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Generates random access tokens of {@link IOAuthToken#TOKEN_LENGTH} characters from the
+ * base64url alphabet, which belongs to {@link IOAuthToken#TOKEN_PATTERN}. Each token carries
+ * 132 random bits.
+ *
+ * <p>A single {@link SecureRandom} shared by all the threads serializes the token requests,
+ * so the generator spreads them over several stripes, chosen by thread id. Each stripe has
+ * its own deterministic random bit generator, seeded independently by the provider, a
+ * buffer of random bytes filled for several tokens at once, and a character buffer in which
+ * the tokens are encoded. The random bytes are erased from the buffer as soon as they are
+ * used.
+ *
+ * @see com.forbesdigital.jee.oauth.rest.api.AbstractAccessTokenResource#createOAuthToken
+ */
+public class OAuthAccessTokenGenerator {
+
+	/**
+	 * Default algorithm of the random bit generators, available on all the Java platforms
+	 */
+	public static final String DEFAULT_ALGORITHM = "SHA1PRNG";
+
+	/**
+	 * Default number of tokens whose random bytes are generated at once
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 16;
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	/**
+	 * Random bytes of a token: the 22 characters encode the first 132 of these 136 bits
+	 */
+	static final int TOKEN_BYTES = 17;
+
+	private final Stripe[] stripes;
+	private final int mask;
+
+	/**
+	 * Constructor using the default algorithm and batch size, with two stripes per processor
+	 */
+	public OAuthAccessTokenGenerator() {
+		this(DEFAULT_ALGORITHM, 2 * Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param algorithm The algorithm of the random bit generators, such as "SHA1PRNG"
+	 * @param stripes The number of stripes, rounded up to a power of two
+	 * @param batchSize The number of tokens whose random bytes are generated at once, 1 to
+	 * generate them for each token
+	 * @throws IllegalArgumentException If the algorithm is not available, or if the number of
+	 * stripes or the batch size is not strictly positive
+	 */
+	public OAuthAccessTokenGenerator(String algorithm, int stripes, int batchSize) {
+		if (stripes <= 0) {
+			throw new IllegalArgumentException("The number of stripes must be strictly positive.");
+		}
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size must be strictly positive.");
+		}
+
+		int stripeCount = Integer.highestOneBit(stripes);
+		if (stripeCount < stripes) {
+			stripeCount <<= 1;
+		}
+		this.stripes = new Stripe[stripeCount];
+		this.mask = stripeCount - 1;
+		for (int i = 0; i < stripeCount; i++) {
+			try {
+				this.stripes[i] = new Stripe(SecureRandom.getInstance(algorithm), batchSize);
+			} catch (NoSuchAlgorithmException nsae) {
+				throw new IllegalArgumentException("The algorithm '" + algorithm + "' must be available.", nsae);
+			}
+		}
+	}
+
+	/**
+	 * @return A new random access token
+	 */
+	public String generate() {
+		long threadId = Thread.currentThread().getId();
+		return stripes[(int) (threadId ^ (threadId >>> 16)) & mask].generate();
+	}
+
+	/**
+	 * @return The number of stripes
+	 */
+	public int getStripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Encode the first 132 bits of {@link #TOKEN_BYTES} bytes in base64url.
+	 *
+	 * @param bytes The bytes
+	 * @param offset The index of the first byte to encode
+	 * @param chars The buffer receiving the {@link IOAuthToken#TOKEN_LENGTH} characters
+	 */
+	static void encode(byte[] bytes, int offset, char[] chars) {
+		int c = 0;
+		int i = offset;
+		for (int end = offset + TOKEN_BYTES - 2; i < end; i += 3) {
+			int chunk = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			chars[c++] = ALPHABET[chunk >>> 18];
+			chars[c++] = ALPHABET[(chunk >>> 12) & 0x3f];
+			chars[c++] = ALPHABET[(chunk >>> 6) & 0x3f];
+			chars[c++] = ALPHABET[chunk & 0x3f];
+		}
+		int chunk = (bytes[i] & 0xff) << 8 | (bytes[i + 1] & 0xff);
+		chars[c++] = ALPHABET[chunk >>> 10];
+		chars[c] = ALPHABET[(chunk >>> 4) & 0x3f];
+	}
+
+	/**
+	 * Random bit generator with its buffers, used by one thread at a time
+	 */
+	private static final class Stripe {
+
+		private final SecureRandom random;
+		private final byte[] bytes;
+		private final char[] chars = new char[IOAuthToken.TOKEN_LENGTH];
+		private int position;
+
+		Stripe(SecureRandom random, int batchSize) {
+			this.random = random;
+			this.bytes = new byte[batchSize * TOKEN_BYTES];
+			this.position = bytes.length;
+		}
+
+		synchronized String generate() {
+			if (position == bytes.length) {
+				random.nextBytes(bytes);
+				position = 0;
+			}
+			encode(bytes, position, chars);
+			Arrays.fill(bytes, position, position + TOKEN_BYTES, (byte) 0);
+			position += TOKEN_BYTES;
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.configuration.OAuthContext;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Token details service serving each tenant of an
+ * {@link com.forbesdigital.jee.oauth.configuration.OAuthTenantRegistry} from its own
+ * {@link OAuthTokenDetailsService}, and so from its own token details builder, cache and
+ * negative cache. The tenant is the one bound to the thread by the
+ * {@link com.forbesdigital.jee.oauth.spring.OAuthTenantFilter}.
+ *
+ * <p>The requests which are not bound to a tenant, or whose tenant has no service of its
+ * own, are served by this service itself, configured as a plain
+ * {@link OAuthTokenDetailsService}.
+ *
+ * @see OAuthContext#getTenant()
+ */
+public class OAuthTenantTokenDetailsService extends OAuthTokenDetailsService {
+
+	private volatile Map<String, OAuthTokenDetailsService> tenantServices = Collections.emptyMap();
+
+	@Override
+	public UserDetails loadUserByUsername(String accessToken) throws UsernameNotFoundException, DataAccessException {
+		OAuthTokenDetailsService tenantService = getTenantService();
+		return tenantService != null ? tenantService.loadUserByUsername(accessToken) : super.loadUserByUsername(accessToken);
+	}
+
+	@Override
+	public void tokenCreated(String accessToken, OAuthTokenDetails details) {
+		OAuthTokenDetailsService tenantService = getTenantService();
+		if (tenantService != null) {
+			tenantService.tokenCreated(accessToken, details);
+		} else {
+			super.tokenCreated(accessToken, details);
+		}
+	}
+
+	/**
+	 * @param tenantServices The token details services, by name of tenant
+	 */
+	public void setTenantServices(Map<String, OAuthTokenDetailsService> tenantServices) {
+		this.tenantServices = new HashMap<>(tenantServices);
+	}
+
+	/**
+	 * @return The token details service of the tenant bound to the current thread, null if
+	 * there is none
+	 */
+	private OAuthTokenDetailsService getTenantService() {
+		String name = OAuthContext.getTenant().getName();
+		return name != null ? tenantServices.get(name) : null;
+	}
+}
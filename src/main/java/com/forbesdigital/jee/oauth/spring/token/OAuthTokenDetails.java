@@ -1,5 +1,8 @@
 package com.forbesdigital.jee.oauth.spring.token;
 
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import com.forbesdigital.jee.oauth.OAuthScopeRegistryCache;
+import com.forbesdigital.jee.oauth.OAuthScopeSet;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
@@ -23,7 +26,10 @@ public class OAuthTokenDetails implements UserDetails {
 	private final String clientRole;
 	private final Collection<GrantedAuthority> authorities;
 	private final Map<String, String> properties;
+	private final int clientEpoch;
+	private final int userEpoch;
 	private Boolean enabled;
+	private transient volatile OAuthScopeRegistryCache<OAuthScopeSet> scopeSets;
 		
 	/**
 	 * Constructor
@@ -41,6 +47,28 @@ public class OAuthTokenDetails implements UserDetails {
 			  String userKey, Collection<GrantedAuthority> authorities, 
 			  String clientRole, Map<String, String> properties) {
 		
+		this(id, accessToken, expirationDate, clientKey, userKey, authorities, clientRole, properties, 0, 0);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param id The id of the token
+	 * @param accessToken The accessToken
+	 * @param expirationDate The expiration date of the token
+	 * @param clientKey The key of the client for which the token was generated
+	 * @param userKey The key of the user for which the token was generated (if any)
+	 * @param authorities The granted authorities
+	 * @param clientRole The client role
+	 * @param properties Additional properties to keep in the token details
+	 * @param clientEpoch The revocation epoch of the client when the token was generated
+	 * @param userEpoch The revocation epoch of the user when the token was generated
+	 * @see com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs
+	 */
+	public OAuthTokenDetails(Long id, String accessToken, Date expirationDate, String clientKey, 
+			  String userKey, Collection<GrantedAuthority> authorities, 
+			  String clientRole, Map<String, String> properties, int clientEpoch, int userEpoch) {
+		
 		this.id = id;
 		this.accessToken = accessToken;
 		this.expirationDate = expirationDate;
@@ -49,6 +77,8 @@ public class OAuthTokenDetails implements UserDetails {
 		this.authorities = authorities;
 		this.clientRole = clientRole;
 		this.properties = properties;
+		this.clientEpoch = clientEpoch;
+		this.userEpoch = userEpoch;
 		this.enabled = true;
 	}
 
@@ -60,6 +90,10 @@ public class OAuthTokenDetails implements UserDetails {
 		return id;
 	}
 
+	public Date getExpirationDate() {
+		return expirationDate;
+	}
+
 	public String getClientKey() {
 		return clientKey;
 	}
@@ -76,6 +110,37 @@ public class OAuthTokenDetails implements UserDetails {
 		return properties;
 	}
 
+	public int getClientEpoch() {
+		return clientEpoch;
+	}
+
+	public int getUserEpoch() {
+		return userEpoch;
+	}
+
+	/**
+	 * Get the granted scopes as a bitset. The bitset is computed on the first call for each 
+	 * scope registry and kept along with the token details, so that the scope checks of the 
+	 * next requests using the same cached token details do not allocate anything, even when 
+	 * the requests are served by several tenants.
+	 * 
+	 * @param registry The registry giving the ids of the scopes
+	 * @return The granted scopes
+	 */
+	public OAuthScopeSet getScopeSet(OAuthScopeRegistry registry) {
+		OAuthScopeRegistryCache<OAuthScopeSet> cache = scopeSets;
+		if (cache == null) {
+			cache = new OAuthScopeRegistryCache<>();
+			scopeSets = cache;
+		}
+		OAuthScopeSet result = cache.get(registry);
+		if (result == null) {
+			result = registry.toAuthoritiesScopeSet(authorities);
+			cache.put(registry, result);
+		}
+		return result;
+	}
+
 	//<editor-fold defaultstate="collapsed" desc="Spring overrides">
 	@Override
 	public Collection<GrantedAuthority> getAuthorities() {
@@ -1,12 +1,25 @@
 package com.forbesdigital.jee.oauth.spring.token;
 
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenDetailsCache;
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenNegativeCache;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs;
 import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 /**
- * Represent the Spring Security TokenDetails service for the tokens
+ * Represent the Spring Security TokenDetails service for the tokens.
+ * 
+ * <p>When a {@link OAuthTokenDetailsCache} is configured, the token details are looked up 
+ * in the cache first and the {@link IOAuthTokenDetailsBuilder} is only used on a cache miss,
+ * or to refresh the cached details. If the builder fails, the cached details are still 
+ * served during the stale-if-error window of the cache.
+ * When a {@link OAuthTokenNegativeCache} is configured, the access tokens recently proven
+ * not to exist are rejected without using the {@link IOAuthTokenDetailsBuilder} at all.
+ * When {@link OAuthRevocationEpochs} are configured, the details of the tokens generated
+ * before the last revocation of their client or of their user are returned revoked, whether
+ * they were cached or built, so that they are rejected by any consumer of the service.
  *
  * @author Cristian Calugar <cristian.calugar@fortech.ro>
  * @author Florian Poulin <florian.poulin@forbes-digital.com>
@@ -14,21 +27,104 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 public class OAuthTokenDetailsService implements UserDetailsService {
 
 	private IOAuthTokenDetailsBuilder builder;
+	private OAuthTokenDetailsCache cache;
+	private OAuthTokenNegativeCache negativeCache;
+	private OAuthRevocationEpochs revocationEpochs;
 
 	@Override
 	public UserDetails loadUserByUsername(String accessToken) throws UsernameNotFoundException, DataAccessException {
+		OAuthTokenDetails details = loadTokenDetails(accessToken);
+		if (revocationEpochs != null && details.isEnabled() && revocationEpochs.isRevoked(details)) {
+			// the epochs never go back, so the details, cached ones included, stay revoked
+			details.revoke();
+		}
+		return details;
+	}
+
+	private OAuthTokenDetails loadTokenDetails(String accessToken) {
+		
+		if (cache != null) {
+			OAuthTokenDetails cachedDetails = cache.get(accessToken, builder);
+			if (cachedDetails != null) {
+				return cachedDetails;
+			}
+		}
+		
+		if (negativeCache != null && negativeCache.contains(accessToken)) {
+			throw new UsernameNotFoundException("Token not found.");
+		}
+		
+		OAuthTokenDetails details;
+		try {
+			details = builder.buildTokenDetails(accessToken);
+		} catch (RuntimeException re) {
+			// serve the last known details if they are still in the stale-if-error window
+			OAuthTokenDetails staleDetails = cache != null ? cache.getStale(accessToken) : null;
+			if (staleDetails == null) {
+				throw re;
+			}
+			return staleDetails;
+		}
 		
-		OAuthTokenDetails details = builder.buildTokenDetails(accessToken);
 		if (details == null) {
+			if (negativeCache != null) {
+				negativeCache.add(accessToken);
+			}
 			throw new UsernameNotFoundException("Token not found.");
 		}
+		
+		if (cache != null) {
+			cache.put(details);
+		}
 		return details;
 	}
 
+	/**
+	 * Notify the service that a token has been created, so that no stale information about
+	 * its access token is used anymore. If provided, the token details are written to the 
+	 * cache so that the first use of the token does not need the builder.
+	 * 
+	 * @param accessToken The access token of the created token
+	 * @param details The details of the created token, null if not available
+	 */
+	public void tokenCreated(String accessToken, OAuthTokenDetails details) {
+		if (negativeCache != null) {
+			negativeCache.remove(accessToken);
+		}
+		if (cache != null) {
+			if (details != null) {
+				cache.put(details);
+			} else {
+				cache.invalidate(accessToken);
+			}
+		}
+	}
+
 	/**
 	 * @param builder Service to build a {@link TokenDetails} instance from an access token
 	 */
 	public void setTokenDetailsBuilder(IOAuthTokenDetailsBuilder builder) {
 		this.builder = builder;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @param cache Cache of token details consulted before the token details builder (optional)
+	 */
+	public void setTokenDetailsCache(OAuthTokenDetailsCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @param negativeCache Cache of the unknown access tokens (optional)
+	 */
+	public void setTokenNegativeCache(OAuthTokenNegativeCache negativeCache) {
+		this.negativeCache = negativeCache;
+	}
+
+	/**
+	 * @param revocationEpochs Epochs to revoke all the tokens of a client or of a user at once (optional)
+	 */
+	public void setRevocationEpochs(OAuthRevocationEpochs revocationEpochs) {
+		this.revocationEpochs = revocationEpochs;
+	}
+}
@@ -1,8 +1,13 @@
 package com.forbesdigital.jee.oauth.spring.token;
 
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
 import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import com.forbesdigital.jee.oauth.spring.token.exceptions.ExpiredBearerTokenException;
 import com.forbesdigital.jee.oauth.spring.token.exceptions.MalformedBearerTokenException;
 import com.forbesdigital.jee.oauth.spring.token.exceptions.MissingAuthorizationHeaderException;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationRegistry;
+import com.forbesdigital.jee.oauth.spring.token.signed.SignedToken;
+import com.forbesdigital.jee.oauth.spring.token.signed.SignedTokenCodec;
 import java.io.IOException;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -13,6 +18,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -31,6 +37,9 @@ public class TokenBearerAuthenticationFilter extends GenericFilterBean {
 	private AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource = new WebAuthenticationDetailsSource();
 	private final AuthenticationManager authenticationManager;
 	private String credentialsCharset = "UTF-8";
+	private int tokenLength = IOAuthToken.TOKEN_LENGTH;
+	private SignedTokenCodec signedTokenCodec;
+	private OAuthRevocationRegistry revocationRegistry;
 
 	/**
 	 * Constructor
@@ -66,17 +75,31 @@ public class TokenBearerAuthenticationFilter extends GenericFilterBean {
 			
 			String accessToken = extractAndDecodeHeader(authorizationHeader);
 			assert accessToken.length() > 0;
-			if (!accessToken.matches(IOAuthToken.TOKEN_PATTERN)) {
+			int expectedLength = signedTokenCodec != null ? SignedTokenCodec.TOKEN_LENGTH : tokenLength;
+			if (!OAuthSyntaxValidator.isValidAccessToken(accessToken, expectedLength)) {
 				throw new MalformedBearerTokenException("The token received is malformed.");
 			}
+			
+			// Reject the forged, tampered and expired signed tokens before any lookup
+			if (signedTokenCodec != null) {
+				SignedToken signedToken = signedTokenCodec.decode(accessToken);
+				if (signedToken == null) {
+					throw new MalformedBearerTokenException("The token signature is invalid.");
+				}
+				if (signedToken.isExpired()) {
+					throw new ExpiredBearerTokenException("The token is expired.");
+				}
+				if (revocationRegistry != null && revocationRegistry.isRevoked(signedToken.getId())) {
+					throw new DisabledException("The token is revoked.");
+				}
+			}
 
 			if (debug) {
 				logger.debug("Bearer Authentication Authorization header found for token '" + accessToken + "'");
 			}
 
 			if (authenticationIsRequired(accessToken)) {
-				UsernamePasswordAuthenticationToken authRequest =
-					new UsernamePasswordAuthenticationToken(accessToken, "");
+				BearerTokenAuthenticationToken authRequest = new BearerTokenAuthenticationToken(accessToken);
 				authRequest.setDetails(authenticationDetailsSource.buildDetails(request));
 				Authentication authResult = authenticationManager.authenticate(authRequest);
 
@@ -144,6 +167,31 @@ public class TokenBearerAuthenticationFilter extends GenericFilterBean {
 		this.credentialsCharset = credentialsCharset;
 	}
 
+	/**
+	 * @param tokenLength The length of the access tokens, 0 to accept access tokens of any 
+	 * length. Defaults to {@link IOAuthToken#TOKEN_LENGTH}.
+	 */
+	public void setTokenLength(int tokenLength) {
+		Assert.isTrue(tokenLength >= 0, "tokenLength cannot be negative");
+		this.tokenLength = tokenLength;
+	}
+
+	/**
+	 * @param signedTokenCodec Codec verifying the access tokens, when only signed access 
+	 * tokens are issued (optional). The token length is then the one of the signed tokens.
+	 */
+	public void setSignedTokenCodec(SignedTokenCodec signedTokenCodec) {
+		this.signedTokenCodec = signedTokenCodec;
+	}
+
+	/**
+	 * @param revocationRegistry Registry of the revoked tokens, checked before any lookup 
+	 * when signed access tokens are used (optional)
+	 */
+	public void setRevocationRegistry(OAuthRevocationRegistry revocationRegistry) {
+		this.revocationRegistry = revocationRegistry;
+	}
+
 	protected String getCredentialsCharset(HttpServletRequest httpRequest) {
 		return credentialsCharset;
 	}
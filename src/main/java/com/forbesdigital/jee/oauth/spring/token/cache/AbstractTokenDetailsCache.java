@@ -0,0 +1,84 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class of the caches of token details: maximum time to live of the entries, clock
+ * and lookup counters.
+ *
+ * <p>An entry never outlives the token it describes: it expires at the earliest of the end
+ * of the maximum time to live and of the token expiration date.
+ *
+ * @see OAuthTokenDetailsCache
+ * @see IndexedTokenDetailsBuilder
+ * @see OffHeapTokenDetailsBuilder
+ */
+public abstract class AbstractTokenDetailsCache {
+
+	/**
+	 * Default maximum time to live of an entry, in milliseconds (5 minutes)
+	 */
+	public static final long DEFAULT_MAX_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+	private volatile long maxTimeToLive = DEFAULT_MAX_TIME_TO_LIVE;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public long getMaxTimeToLive() {
+		return maxTimeToLive;
+	}
+
+	/**
+	 * @param maxTimeToLive The maximum time to live of an entry, in milliseconds
+	 */
+	public void setMaxTimeToLive(long maxTimeToLive) {
+		if (maxTimeToLive <= 0) {
+			throw new IllegalArgumentException("The maximum time to live must be strictly positive.");
+		}
+		this.maxTimeToLive = maxTimeToLive;
+	}
+
+	/**
+	 * @return The number of lookups served by the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The number of lookups which did not find valid token details in the cache
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return The current time in milliseconds, overridable for tests
+	 */
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @param details The token details of an entry
+	 * @param now The time at which the entry is created
+	 * @return The time at which the entry expires
+	 */
+	final long expirationOf(OAuthTokenDetails details, long now) {
+		long expiresAt = now + maxTimeToLive;
+		if (details.getExpirationDate() != null) {
+			expiresAt = Math.min(expiresAt, details.getExpirationDate().getTime());
+		}
+		return expiresAt;
+	}
+
+	final void recordHit() {
+		hitCount.incrementAndGet();
+	}
+
+	final void recordMiss() {
+		missCount.incrementAndGet();
+	}
+}
@@ -0,0 +1,102 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token details builder which coalesces the concurrent lookups of a same access token.
+ *
+ * <p>The first thread looking up an access token builds its details through the delegate
+ * builder. The threads looking up the same access token in the meantime do not call the
+ * delegate: they wait for the lookup in flight and all receive the same token details, or
+ * the same failure. Once the lookup is done, the next one for this access token goes to
+ * the delegate again, so that this builder can be used with or without a
+ * {@link OAuthTokenDetailsCache}.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService
+ */
+public class CoalescingTokenDetailsBuilder implements IOAuthTokenDetailsBuilder {
+
+	private final IOAuthTokenDetailsBuilder delegate;
+	private final ConcurrentMap<String, FutureTask<OAuthTokenDetails>> lookupsInFlight = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 */
+	public CoalescingTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public OAuthTokenDetails buildTokenDetails(final String accessToken) {
+
+		FutureTask<OAuthTokenDetails> lookup = new FutureTask<>(new Callable<OAuthTokenDetails>() {
+			@Override
+			public OAuthTokenDetails call() {
+				return delegate.buildTokenDetails(accessToken);
+			}
+		});
+
+		FutureTask<OAuthTokenDetails> lookupInFlight = lookupsInFlight.putIfAbsent(accessToken, lookup);
+		if (lookupInFlight != null) {
+			coalescedCount.incrementAndGet();
+			return waitFor(lookupInFlight);
+		}
+
+		try {
+			lookup.run();
+		} finally {
+			lookupsInFlight.remove(accessToken, lookup);
+		}
+		return waitFor(lookup);
+	}
+
+	/**
+	 * @return The number of lookups which were served by another lookup in flight
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Wait for a lookup to complete, without giving up on interruption since the lookup
+	 * itself cannot be interrupted.
+	 *
+	 * @param lookup The lookup
+	 * @return The result of the lookup
+	 */
+	private OAuthTokenDetails waitFor(FutureTask<OAuthTokenDetails> lookup) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return lookup.get();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				} catch (ExecutionException ee) {
+					Throwable cause = ee.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new UndeclaredThrowableException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+
+/**
+ * Token details builder which keeps the details built by its delegate in a compact index
+ * keyed by the packed value of the access token.
+ *
+ * <p>Access tokens have a fixed length of {@link IOAuthToken#TOKEN_LENGTH} characters taken
+ * from the 68 characters of {@link IOAuthToken#TOKEN_PATTERN}. Each access token is packed
+ * in a base 68 number held by two longs (10 characters each) and a short (the last two
+ * characters), which is lossless. The index is an open-addressing table made of parallel
+ * primitive arrays, split in segments guarded by their own lock: it does not allocate any
+ * key or entry object per token. Access tokens which do not have the fixed format are
+ * simply not indexed and always go to the delegate.
+ *
+ * <p>Like {@link OAuthTokenDetailsCache}, an entry never outlives the token it describes
+ * nor the configured maximum time to live. Once the index is full, the expired entries are
+ * purged and, if there is still no room, the new token details are not indexed.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService
+ */
+public class IndexedTokenDetailsBuilder extends AbstractTokenDetailsCache implements IOAuthTokenDetailsBuilder {
+
+	/**
+	 * Default maximum number of entries kept in the index
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final int SEGMENTS = 16;
+	private static final int RADIX = 68;
+	static final int CHARS_PER_LONG = 10;
+	private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~+/";
+	private static final byte[] DIGITS = new byte[128];
+
+	static {
+		for (int i = 0; i < DIGITS.length; i++) {
+			DIGITS[i] = -1;
+		}
+		for (int i = 0; i < ALPHABET.length(); i++) {
+			DIGITS[ALPHABET.charAt(i)] = (byte) i;
+		}
+	}
+
+	private final IOAuthTokenDetailsBuilder delegate;
+	private final Segment[] segments;
+	private final int maxSize;
+
+	/**
+	 * Constructor with the default maximum size
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 */
+	public IndexedTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 * @param maxSize The maximum number of entries kept in the index
+	 */
+	public IndexedTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate, int maxSize) {
+		if (maxSize <= 0 || maxSize > (1 << 29)) {
+			throw new IllegalArgumentException("The maximum size of the index must be between 1 and 2^29.");
+		}
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.segments = new Segment[SEGMENTS];
+		int segmentMaxSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentMaxSize);
+		}
+	}
+
+	@Override
+	public OAuthTokenDetails buildTokenDetails(String accessToken) {
+		if (!isIndexable(accessToken)) {
+			return delegate.buildTokenDetails(accessToken);
+		}
+
+		long high = pack(accessToken, 0, CHARS_PER_LONG);
+		long low = pack(accessToken, CHARS_PER_LONG, CHARS_PER_LONG);
+		short tail = (short) pack(accessToken, 2 * CHARS_PER_LONG, IOAuthToken.TOKEN_LENGTH - 2 * CHARS_PER_LONG);
+		Segment segment = segmentFor(high, low, tail);
+		long now = currentTimeMillis();
+
+		OAuthTokenDetails details;
+		synchronized (segment) {
+			details = segment.get(high, low, tail, now);
+		}
+		if (details != null) {
+			recordHit();
+			return details;
+		}
+		recordMiss();
+
+		details = delegate.buildTokenDetails(accessToken);
+		if (details != null) {
+			long expiresAt = expirationOf(details, now);
+			if (expiresAt > now) {
+				synchronized (segment) {
+					segment.put(high, low, tail, details, expiresAt, now);
+				}
+			}
+		}
+		return details;
+	}
+
+	/**
+	 * Remove the details of an access token from the index, typically because the token has
+	 * been revoked.
+	 *
+	 * @param accessToken An access token
+	 */
+	public void invalidate(String accessToken) {
+		if (!isIndexable(accessToken)) {
+			return;
+		}
+		long high = pack(accessToken, 0, CHARS_PER_LONG);
+		long low = pack(accessToken, CHARS_PER_LONG, CHARS_PER_LONG);
+		short tail = (short) pack(accessToken, 2 * CHARS_PER_LONG, IOAuthToken.TOKEN_LENGTH - 2 * CHARS_PER_LONG);
+		Segment segment = segmentFor(high, low, tail);
+		synchronized (segment) {
+			segment.remove(high, low, tail);
+		}
+	}
+
+	/**
+	 * Remove all the entries from the index.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of entries in the index, including the expired ones not purged yet
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param accessToken An access token
+	 * @return True if the access token has the fixed length and only uses the token alphabet
+	 */
+	static boolean isIndexable(String accessToken) {
+		if (accessToken == null || accessToken.length() != IOAuthToken.TOKEN_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < IOAuthToken.TOKEN_LENGTH; i++) {
+			char c = accessToken.charAt(i);
+			if (c >= DIGITS.length || DIGITS[c] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pack characters of an indexable access token in a base 68 number. Ten characters fit
+	 * in a long since 68^10 &lt; 2^63.
+	 */
+	static long pack(String accessToken, int offset, int length) {
+		long packed = 0;
+		for (int i = offset; i < offset + length; i++) {
+			packed = packed * RADIX + DIGITS[accessToken.charAt(i)];
+		}
+		return packed;
+	}
+
+	private Segment segmentFor(long high, long low, short tail) {
+		return segments[(hash(high, low, tail) >>> 28) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * Hash of a packed access token, spreading every character over all the bits since
+	 * both the segment and the slot are taken from it.
+	 */
+	static int hash(long high, long low, short tail) {
+		long h = (high * 0x9e3779b97f4a7c15L + low) * 0x9e3779b97f4a7c15L + tail;
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return (int) h;
+	}
+
+	/**
+	 * Open-addressing table with linear probing, stored in parallel arrays. A slot is empty
+	 * when its value is null.
+	 */
+	private static final class Segment {
+
+		private final int maxSize;
+		private final int mask;
+		private final long[] highs;
+		private final long[] lows;
+		private final short[] tails;
+		private final long[] expirations;
+		private final OAuthTokenDetails[] values;
+		private int size;
+
+		Segment(int maxSize) {
+			this.maxSize = maxSize;
+			// keep the load factor under one half so that the probe sequences stay short
+			int capacity = Integer.highestOneBit(maxSize) << 2;
+			this.mask = capacity - 1;
+			this.highs = new long[capacity];
+			this.lows = new long[capacity];
+			this.tails = new short[capacity];
+			this.expirations = new long[capacity];
+			this.values = new OAuthTokenDetails[capacity];
+		}
+
+		OAuthTokenDetails get(long high, long low, short tail, long now) {
+			int slot = find(high, low, tail);
+			if (slot < 0) {
+				return null;
+			}
+			if (expirations[slot] <= now) {
+				delete(slot);
+				return null;
+			}
+			return values[slot];
+		}
+
+		void put(long high, long low, short tail, OAuthTokenDetails details, long expiresAt, long now) {
+			int slot = find(high, low, tail);
+			if (slot >= 0) {
+				values[slot] = details;
+				expirations[slot] = expiresAt;
+				return;
+			}
+			if (size >= maxSize) {
+				purge(now);
+				if (size >= maxSize) {
+					return;
+				}
+			}
+			slot = hash(high, low, tail) & mask;
+			while (values[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			highs[slot] = high;
+			lows[slot] = low;
+			tails[slot] = tail;
+			expirations[slot] = expiresAt;
+			values[slot] = details;
+			size++;
+		}
+
+		void remove(long high, long low, short tail) {
+			int slot = find(high, low, tail);
+			if (slot >= 0) {
+				delete(slot);
+			}
+		}
+
+		void clear() {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = null;
+			}
+			size = 0;
+		}
+
+		private int find(long high, long low, short tail) {
+			int slot = hash(high, low, tail) & mask;
+			while (values[slot] != null) {
+				if (highs[slot] == high && lows[slot] == low && tails[slot] == tail) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Empty a slot and shift back the following entries of its probe sequence, so that
+		 * no tombstone is needed.
+		 */
+		private void delete(int slot) {
+			int hole = slot;
+			int next = slot;
+			while (true) {
+				next = (next + 1) & mask;
+				if (values[next] == null) {
+					break;
+				}
+				int home = hash(highs[next], lows[next], tails[next]) & mask;
+				// the entry can fill the hole unless its home slot lies cyclically in (hole, next]
+				boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (!stays) {
+					highs[hole] = highs[next];
+					lows[hole] = lows[next];
+					tails[hole] = tails[next];
+					expirations[hole] = expirations[next];
+					values[hole] = values[next];
+					hole = next;
+				}
+			}
+			values[hole] = null;
+			size--;
+		}
+
+		private void purge(long now) {
+			int slot = 0;
+			while (slot < values.length) {
+				// a deletion may shift a later entry into this slot, check it again
+				if (values[slot] != null && expirations[slot] <= now) {
+					delete(slot);
+				} else {
+					slot++;
+				}
+			}
+		}
+	}
+}
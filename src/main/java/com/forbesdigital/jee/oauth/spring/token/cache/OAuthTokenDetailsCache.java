@@ -0,0 +1,430 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded in-memory cache of {@link OAuthTokenDetails} indexed by access token.
+ *
+ * <p>An entry never outlives the token it describes: its time to live is the smallest of
+ * the configured maximum time to live and the time left until the token expiration date.
+ * The cache is split in stripes, each of them being an access ordered {@link LinkedHashMap}
+ * guarded by its own lock, so that concurrent lookups of different tokens rarely contend
+ * and the least recently used entries are evicted first once the maximum size is reached.
+ *
+ * <p>Two optional mechanisms keep hot tokens from hitting the storage synchronously:
+ * <ul>
+ * <li>Refresh-ahead: once an entry has lived {@link #setRefreshAheadFactor(double) a given
+ *     fraction} of its time to live, the next lookup triggers an asynchronous reload
+ *     through the token details builder on the {@link #setRefreshExecutor(Executor)
+ *     refresh executor}, while the current details keep being served.</li>
+ * <li>Stale-if-error: an entry whose time to live has elapsed is kept for an additional
+ *     {@link #setStaleIfErrorWindow(long) window}, never past the token expiration date,
+ *     during which it can be served if the token details builder fails.</li>
+ * </ul>
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService
+ */
+public class OAuthTokenDetailsCache extends AbstractTokenDetailsCache {
+
+	/**
+	 * Default maximum number of entries kept in the cache
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final int STRIPES = 16;
+
+	private static final Log LOG = LogFactory.getLog(OAuthTokenDetailsCache.class);
+
+	private final Stripe[] stripes;
+	private final int maxSize;
+	private volatile double refreshAheadFactor;
+	private volatile Executor refreshExecutor;
+	private volatile long staleIfErrorWindow;
+
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong refreshCount = new AtomicLong();
+	private final AtomicLong staleHitCount = new AtomicLong();
+
+	/**
+	 * Constructor with the default maximum size
+	 */
+	public OAuthTokenDetailsCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize The maximum number of entries kept in the cache
+	 */
+	public OAuthTokenDetailsCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The maximum size of the cache must be strictly positive.");
+		}
+		this.maxSize = maxSize;
+		this.stripes = new Stripe[STRIPES];
+		int stripeSize = (maxSize + STRIPES - 1) / STRIPES;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(stripeSize);
+		}
+	}
+
+	/**
+	 * Retrieve the token details cached for an access token.
+	 *
+	 * @param accessToken An access token
+	 * @return The cached token details, null if not cached or no longer valid
+	 */
+	public OAuthTokenDetails get(String accessToken) {
+		return get(accessToken, null);
+	}
+
+	/**
+	 * Retrieve the token details cached for an access token. If refresh-ahead is enabled and 
+	 * the entry is due for a refresh, the token details are reloaded asynchronously through
+	 * the given builder.
+	 *
+	 * @param accessToken An access token
+	 * @param builder The builder used to refresh the token details, null to disable refresh
+	 * @return The cached token details, null if not cached or no longer valid
+	 */
+	public OAuthTokenDetails get(String accessToken, IOAuthTokenDetailsBuilder builder) {
+		long now = currentTimeMillis();
+		Stripe stripe = stripeFor(accessToken);
+		Entry entry;
+		synchronized (stripe) {
+			entry = stripe.get(accessToken);
+			if (entry != null && entry.staleUntil <= now) {
+				stripe.remove(accessToken);
+				entry = null;
+			}
+		}
+		if (entry == null || entry.freshUntil <= now) {
+			recordMiss();
+			return null;
+		}
+		recordHit();
+		if (builder != null && entry.refreshAt <= now) {
+			refresh(accessToken, entry, builder);
+		}
+		return entry.details;
+	}
+
+	/**
+	 * Retrieve the token details cached for an access token, even if their time to live has
+	 * elapsed, as long as they are within the stale-if-error window. This is meant to be
+	 * used only when the token details cannot be built.
+	 *
+	 * @param accessToken An access token
+	 * @return The cached token details, null if not cached or out of the stale-if-error window
+	 */
+	public OAuthTokenDetails getStale(String accessToken) {
+		long now = currentTimeMillis();
+		Stripe stripe = stripeFor(accessToken);
+		Entry entry;
+		synchronized (stripe) {
+			entry = stripe.get(accessToken);
+		}
+		if (entry == null || entry.staleUntil <= now) {
+			return null;
+		}
+		staleHitCount.incrementAndGet();
+		return entry.details;
+	}
+
+	/**
+	 * Store token details in the cache. Details of a token which is already expired are
+	 * ignored.
+	 *
+	 * @param details The token details to cache
+	 */
+	public void put(OAuthTokenDetails details) {
+		Entry entry = createEntry(details);
+		if (entry == null) {
+			return;
+		}
+		String accessToken = details.getUsername();
+		Stripe stripe = stripeFor(accessToken);
+		synchronized (stripe) {
+			stripe.put(accessToken, entry);
+		}
+	}
+
+	/**
+	 * Remove the token details cached for an access token, if any.
+	 *
+	 * @param accessToken An access token
+	 */
+	public void invalidate(String accessToken) {
+		Stripe stripe = stripeFor(accessToken);
+		synchronized (stripe) {
+			stripe.remove(accessToken);
+		}
+	}
+
+	/**
+	 * Remove all the entries from the cache. The statistics are kept.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of entries currently in the cache, expired ones included
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public double getRefreshAheadFactor() {
+		return refreshAheadFactor;
+	}
+
+	/**
+	 * @param refreshAheadFactor The fraction of the time to live of an entry after which it
+	 * is refreshed asynchronously, strictly between 0 and 1. 0 disables refresh-ahead.
+	 */
+	public void setRefreshAheadFactor(double refreshAheadFactor) {
+		if (refreshAheadFactor < 0 || refreshAheadFactor >= 1) {
+			throw new IllegalArgumentException("The refresh-ahead factor must be 0 or between 0 and 1.");
+		}
+		this.refreshAheadFactor = refreshAheadFactor;
+	}
+
+	/**
+	 * @param refreshExecutor The executor running the asynchronous refreshes, typically a
+	 * container managed executor service. Refresh-ahead is disabled without executor.
+	 */
+	public void setRefreshExecutor(Executor refreshExecutor) {
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	public long getStaleIfErrorWindow() {
+		return staleIfErrorWindow;
+	}
+
+	/**
+	 * @param staleIfErrorWindow The time during which an entry can still be served after its
+	 * time to live has elapsed if the token details cannot be built, in milliseconds
+	 */
+	public void setStaleIfErrorWindow(long staleIfErrorWindow) {
+		if (staleIfErrorWindow < 0) {
+			throw new IllegalArgumentException("The stale-if-error window cannot be negative.");
+		}
+		this.staleIfErrorWindow = staleIfErrorWindow;
+	}
+
+	/**
+	 * @return The number of entries removed to keep the cache under its maximum size
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return The number of asynchronous refreshes started
+	 */
+	public long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * @return The number of stale token details served because they could not be built
+	 */
+	public long getStaleHitCount() {
+		return staleHitCount.get();
+	}
+
+	/**
+	 * Reload the details of an entry asynchronously, unless a refresh is already running.
+	 * The reloaded details only replace the entry if it has not been replaced or removed in 
+	 * the meantime.
+	 */
+	private void refresh(final String accessToken, final Entry entry, final IOAuthTokenDetailsBuilder builder) {
+		Executor executor = refreshExecutor;
+		if (executor == null || !entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						OAuthTokenDetails details = builder.buildTokenDetails(accessToken);
+						Entry refreshed = details == null ? null : createEntry(details);
+						Stripe stripe = stripeFor(accessToken);
+						synchronized (stripe) {
+							if (stripe.get(accessToken) == entry) {
+								if (refreshed == null) {
+									stripe.remove(accessToken);
+								} else {
+									stripe.put(accessToken, refreshed);
+								}
+							}
+						}
+					} catch (RuntimeException re) {
+						LOG.warn("Unable to refresh the token details, the cached ones are kept.", re);
+						entry.refreshing.set(false);
+					}
+				}
+			});
+			refreshCount.incrementAndGet();
+		} catch (RejectedExecutionException ree) {
+			entry.refreshing.set(false);
+		}
+	}
+
+	/**
+	 * Collect the entries which are still valid, typically to save them.
+	 *
+	 * @param maxEntries The maximum number of entries to collect
+	 * @return The valid entries, most recently used last in each stripe
+	 */
+	List<Entry> validEntries(int maxEntries) {
+		long now = currentTimeMillis();
+		List<Entry> entries = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				for (Entry entry : stripe.values()) {
+					if (entries.size() >= maxEntries) {
+						return entries;
+					}
+					if (entry.freshUntil > now) {
+						entries.add(entry);
+					}
+				}
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Store token details which were previously cached, typically loaded from a snapshot.
+	 * They are given the time to live they had left, if any.
+	 *
+	 * @param details The token details to cache
+	 * @param freshUntil The time at which the previous entry stopped being valid
+	 */
+	void restore(OAuthTokenDetails details, long freshUntil) {
+		Entry entry = createEntry(details, freshUntil);
+		if (entry == null) {
+			return;
+		}
+		String accessToken = details.getUsername();
+		Stripe stripe = stripeFor(accessToken);
+		synchronized (stripe) {
+			stripe.put(accessToken, entry);
+		}
+	}
+
+	/**
+	 * @return A new entry for the token details, null if the token is already expired
+	 */
+	private Entry createEntry(OAuthTokenDetails details) {
+		return createEntry(details, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param freshUntilLimit A limit to the time at which the entry stops being valid
+	 * @return A new entry for the token details, null if the token is already expired
+	 */
+	private Entry createEntry(OAuthTokenDetails details, long freshUntilLimit) {
+		long now = currentTimeMillis();
+		long freshUntil = Math.min(expirationOf(details, now), freshUntilLimit);
+		long staleUntil = freshUntil + staleIfErrorWindow;
+		if (details.getExpirationDate() != null) {
+			staleUntil = Math.min(staleUntil, details.getExpirationDate().getTime());
+		}
+		if (freshUntil <= now) {
+			return null;
+		}
+		long refreshAt = Long.MAX_VALUE;
+		if (refreshAheadFactor > 0) {
+			refreshAt = now + (long) ((freshUntil - now) * refreshAheadFactor);
+		}
+		return new Entry(details, freshUntil, staleUntil, refreshAt);
+	}
+
+	private Stripe stripeFor(String accessToken) {
+		int hash = accessToken.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (STRIPES - 1)];
+	}
+
+	/**
+	 * Cached token details along with the times at which they must be refreshed, at which 
+	 * they stop being valid and at which they cannot even be served on error
+	 */
+	static final class Entry {
+
+		private final OAuthTokenDetails details;
+		private final long freshUntil;
+		private final long staleUntil;
+		private final long refreshAt;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry(OAuthTokenDetails details, long freshUntil, long staleUntil, long refreshAt) {
+			this.details = details;
+			this.freshUntil = freshUntil;
+			this.staleUntil = staleUntil;
+			this.refreshAt = refreshAt;
+		}
+
+		OAuthTokenDetails getDetails() {
+			return details;
+		}
+
+		long getFreshUntil() {
+			return freshUntil;
+		}
+	}
+
+	/**
+	 * Least recently used map holding a part of the cache entries
+	 */
+	private final class Stripe extends LinkedHashMap<String, Entry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if (size() > capacity) {
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Saves the valid entries of a {@link OAuthTokenDetailsCache} to a local file and loads
+ * them back, so that a restarted node does not have to build the details of all the active
+ * tokens again.
+ *
+ * <p>The file uses a compact binary format. Each entry is saved with the time at which it
+ * stops being valid, so that it is loaded with the time to live it had left; the entries
+ * which have expired in the meantime are skipped. An entry with a string longer than the
+ * format allows (64KB once encoded) is not saved, without preventing the others from being
+ * saved. Both operations are bounded by a maximum
+ * number of entries and a maximum duration. Since the file contains access tokens, it is
+ * only readable by its owner and it is deleted once loaded.
+ *
+ * <p>The granted authorities are saved by name and loaded as {@link OAuthGrantedAuthority}.
+ *
+ * @see com.forbesdigital.jee.oauth.configuration.AbstractOAuthConfigurationListener
+ */
+public class OAuthTokenDetailsSnapshot {
+
+	/**
+	 * Default maximum number of entries saved or loaded
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+	/**
+	 * Default maximum duration of a save or a load, in milliseconds (10 seconds)
+	 */
+	public static final long DEFAULT_MAX_DURATION = 10 * 1000L;
+
+	private static final int MAGIC = 0x4f415453;
+	private static final int VERSION = 2;
+
+	private final OAuthTokenDetailsCache cache;
+	private final File file;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxDuration = DEFAULT_MAX_DURATION;
+
+	/**
+	 * Constructor
+	 *
+	 * @param cache The cache to save and to load
+	 * @param file The snapshot file
+	 */
+	public OAuthTokenDetailsSnapshot(OAuthTokenDetailsCache cache, File file) {
+		this.cache = cache;
+		this.file = file;
+	}
+
+	/**
+	 * Save the valid entries of the cache, replacing the previous snapshot file if any.
+	 *
+	 * @return The number of entries saved
+	 * @throws IOException If the file cannot be written
+	 */
+	public int save() throws IOException {
+		long deadline = System.currentTimeMillis() + maxDuration;
+		List<OAuthTokenDetailsCache.Entry> entries = cache.validEntries(maxEntries);
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		restrictToOwner(tempFile);
+		int saved = 0;
+		// each entry is serialized in a buffer first, so that an entry which cannot be
+		// serialized is skipped without leaving a partial entry in the file
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+		DataOutputStream entryOut = new DataOutputStream(buffer);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (OAuthTokenDetailsCache.Entry entry : entries) {
+				if (System.currentTimeMillis() >= deadline) {
+					break;
+				}
+				OAuthTokenDetails details = entry.getDetails();
+				if (!details.isEnabled()) {
+					continue;
+				}
+				buffer.reset();
+				try {
+					entryOut.writeBoolean(true);
+					entryOut.writeLong(entry.getFreshUntil());
+					writeDetails(entryOut, details);
+				} catch (UTFDataFormatException udfe) {
+					continue;
+				}
+				buffer.writeTo(out);
+				saved++;
+			}
+			out.writeBoolean(false);
+		} catch (IOException ioe) {
+			Files.deleteIfExists(tempFile.toPath());
+			throw ioe;
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return saved;
+	}
+
+	/**
+	 * Load the entries of the snapshot file in the cache, skipping the expired ones, then
+	 * delete the file. Nothing is done if there is no snapshot file.
+	 *
+	 * @return The number of entries loaded
+	 * @throws IOException If the file cannot be read or is not a snapshot
+	 */
+	public int load() throws IOException {
+		if (!file.exists()) {
+			return 0;
+		}
+		long deadline = System.currentTimeMillis() + maxDuration;
+		int loaded = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("The file " + file + " is not a token details snapshot.");
+			}
+			int read = 0;
+			while (read < maxEntries && System.currentTimeMillis() < deadline && in.readBoolean()) {
+				long freshUntil = in.readLong();
+				OAuthTokenDetails details = readDetails(in);
+				read++;
+				if (freshUntil > System.currentTimeMillis()) {
+					cache.restore(details, freshUntil);
+					loaded++;
+				}
+			}
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+		return loaded;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param maxEntries The maximum number of entries saved or loaded
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @param maxDuration The maximum duration of a save or a load, in milliseconds
+	 */
+	public void setMaxDuration(long maxDuration) {
+		this.maxDuration = maxDuration;
+	}
+
+	private void writeDetails(DataOutputStream out, OAuthTokenDetails details) throws IOException {
+		out.writeBoolean(details.getId() != null);
+		if (details.getId() != null) {
+			out.writeLong(details.getId());
+		}
+		out.writeUTF(details.getUsername());
+		out.writeBoolean(details.getExpirationDate() != null);
+		if (details.getExpirationDate() != null) {
+			out.writeLong(details.getExpirationDate().getTime());
+		}
+		writeNullableString(out, details.getClientKey());
+		writeNullableString(out, details.getUserKey());
+		writeNullableString(out, details.getClientRole());
+		out.writeInt(details.getClientEpoch());
+		out.writeInt(details.getUserEpoch());
+
+		Collection<GrantedAuthority> authorities = details.getAuthorities();
+		out.writeInt(authorities == null ? -1 : authorities.size());
+		if (authorities != null) {
+			for (GrantedAuthority authority : authorities) {
+				out.writeUTF(authority.getAuthority());
+			}
+		}
+
+		Map<String, String> properties = details.getProperties();
+		out.writeInt(properties == null ? -1 : properties.size());
+		if (properties != null) {
+			for (Map.Entry<String, String> property : properties.entrySet()) {
+				out.writeUTF(property.getKey());
+				writeNullableString(out, property.getValue());
+			}
+		}
+	}
+
+	private OAuthTokenDetails readDetails(DataInputStream in) throws IOException {
+		Long id = in.readBoolean() ? in.readLong() : null;
+		String accessToken = in.readUTF();
+		Date expirationDate = in.readBoolean() ? new Date(in.readLong()) : null;
+		String clientKey = readNullableString(in);
+		String userKey = readNullableString(in);
+		String clientRole = readNullableString(in);
+		int clientEpoch = in.readInt();
+		int userEpoch = in.readInt();
+
+		Collection<GrantedAuthority> authorities = null;
+		int authoritiesCount = in.readInt();
+		if (authoritiesCount >= 0) {
+			authorities = new ArrayList<>(authoritiesCount);
+			for (int i = 0; i < authoritiesCount; i++) {
+				authorities.add(new OAuthGrantedAuthority(in.readUTF()));
+			}
+		}
+
+		Map<String, String> properties = null;
+		int propertiesCount = in.readInt();
+		if (propertiesCount >= 0) {
+			properties = new HashMap<>();
+			for (int i = 0; i < propertiesCount; i++) {
+				properties.put(in.readUTF(), readNullableString(in));
+			}
+		}
+
+		return new OAuthTokenDetails(id, accessToken, expirationDate, clientKey, userKey, authorities, clientRole, properties, clientEpoch, userEpoch);
+	}
+
+	private void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Create the file if needed and make it readable and writable by its owner only.
+	 */
+	private void restrictToOwner(File file) throws IOException {
+		file.delete();
+		if (!file.createNewFile()) {
+			throw new IOException("Unable to create the file " + file + ".");
+		}
+		file.setReadable(false, false);
+		file.setWritable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(true, true);
+	}
+}
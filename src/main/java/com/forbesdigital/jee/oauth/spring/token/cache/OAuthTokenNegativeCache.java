@@ -0,0 +1,165 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Short-lived memory of the access tokens which were recently proven not to exist.
+ *
+ * <p>The cache is a fixed size, direct-mapped table: each access token can only be
+ * stored in the slot designated by its hash, and a newer token simply replaces an older
+ * one colliding on the same slot. Its memory footprint is therefore bounded by the number
+ * of slots, whatever the number of distinct unknown tokens a misbehaving client sends,
+ * and forgetting a token only costs one more lookup through the token details builder.
+ * Contrary to a Bloom filter, the table never reports a token it has not seen, and an
+ * entry can be removed when a token with the same value is created.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService
+ */
+public class OAuthTokenNegativeCache {
+
+	/**
+	 * Default number of slots of the table
+	 */
+	public static final int DEFAULT_MAX_SIZE = 4096;
+
+	/**
+	 * Default time to live of an entry, in milliseconds (10 seconds)
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 10 * 1000L;
+
+	private final AtomicReferenceArray<Slot> slots;
+	private final int mask;
+	private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * Constructor with the default maximum size
+	 */
+	public OAuthTokenNegativeCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize The maximum number of unknown access tokens remembered, rounded up to
+	 * the next power of two
+	 */
+	public OAuthTokenNegativeCache(int maxSize) {
+		if (maxSize <= 0 || maxSize > (1 << 30)) {
+			throw new IllegalArgumentException("The maximum size of the cache must be between 1 and 2^30.");
+		}
+		int size = Integer.highestOneBit(maxSize);
+		if (size < maxSize) {
+			size <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Check whether an access token was recently proven not to exist.
+	 *
+	 * @param accessToken An access token
+	 * @return True if the access token is known to be absent
+	 */
+	public boolean contains(String accessToken) {
+		int index = indexFor(accessToken);
+		Slot slot = slots.get(index);
+		if (slot == null || !slot.accessToken.equals(accessToken)) {
+			return false;
+		}
+		if (slot.expiresAt <= currentTimeMillis()) {
+			slots.compareAndSet(index, slot, null);
+			return false;
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Remember that an access token does not exist.
+	 *
+	 * @param accessToken An access token
+	 */
+	public void add(String accessToken) {
+		slots.set(indexFor(accessToken), new Slot(accessToken, currentTimeMillis() + timeToLive));
+	}
+
+	/**
+	 * Forget an access token, typically because a token with this value has just been created.
+	 *
+	 * @param accessToken An access token
+	 */
+	public void remove(String accessToken) {
+		int index = indexFor(accessToken);
+		Slot slot = slots.get(index);
+		if (slot != null && slot.accessToken.equals(accessToken)) {
+			slots.compareAndSet(index, slot, null);
+		}
+	}
+
+	/**
+	 * Forget all the access tokens.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, null);
+		}
+	}
+
+	public int getMaxSize() {
+		return slots.length();
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * @param timeToLive The time during which an access token is known to be absent, in
+	 * milliseconds
+	 */
+	public void setTimeToLive(long timeToLive) {
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("The time to live must be strictly positive.");
+		}
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @return The number of lookups rejected without using the token details builder
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The current time in milliseconds, overridable for tests
+	 */
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private int indexFor(String accessToken) {
+		int hash = accessToken.hashCode();
+		hash ^= (hash >>> 16);
+		return hash & mask;
+	}
+
+	/**
+	 * An unknown access token along with the time at which it must be forgotten
+	 */
+	private static final class Slot {
+
+		private final String accessToken;
+		private final long expiresAt;
+
+		Slot(String accessToken, long expiresAt) {
+			this.accessToken = accessToken;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,637 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Token details builder which keeps the details built by its delegate outside of the Java
+ * heap, in direct {@link ByteBuffer}s.
+ *
+ * <p>The store is split in segments guarded by their own lock. Each segment is made of an
+ * open-addressing table of fixed size slots, keyed by the access token packed as in
+ * {@link IndexedTokenDetailsBuilder}, and of a data area where the token details are
+ * appended in a compact serialized form: id, expiration as epoch millis, client key, user
+ * key, client role, revocation epochs, scope ids and properties. The scopes are interned in
+ * a dictionary shared by all the tokens, which stays small since the scopes are defined by
+ * the configuration. The token details are materialized on each read, so the heap usage
+ * does not depend on the number of tokens stored.
+ *
+ * <p>Expired and replaced token details leave dead records in the data area. They are
+ * reclaimed by {@link #compact()}, which runs periodically once a
+ * {@link #setCompactionScheduler(ScheduledExecutorService) compaction scheduler} is set,
+ * and whenever a segment runs out of room. Token details which still do not fit, or whose
+ * granted authorities have no name, are not stored, and are counted by
+ * {@link #getRejectionCount()}. The granted authorities are stored by name, whatever their
+ * class, and are read back as {@link OAuthGrantedAuthority OAuthGrantedAuthorities}.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService
+ */
+public class OffHeapTokenDetailsBuilder extends AbstractTokenDetailsCache implements IOAuthTokenDetailsBuilder {
+
+	/**
+	 * Default maximum number of token details stored
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	/**
+	 * Default number of bytes reserved for the serialized form of each token details
+	 */
+	public static final int DEFAULT_BYTES_PER_ENTRY = 256;
+
+	/**
+	 * Default interval between two compactions, in milliseconds (1 minute)
+	 */
+	public static final long DEFAULT_COMPACTION_INTERVAL = 60 * 1000L;
+
+	private static final int SEGMENTS = 16;
+	private static final int MAX_SCOPES = 0xffff;
+
+	/**
+	 * Layout of a slot: packed access token, expiration time, offset of the record in the
+	 * data area and used flag
+	 */
+	private static final int SLOT_HIGH = 0;
+	private static final int SLOT_LOW = 8;
+	private static final int SLOT_EXPIRES_AT = 16;
+	private static final int SLOT_OFFSET = 24;
+	private static final int SLOT_TAIL = 28;
+	private static final int SLOT_USED = 30;
+	private static final int SLOT_SIZE = 32;
+
+	private static final Log LOG = LogFactory.getLog(OffHeapTokenDetailsBuilder.class);
+
+	private final IOAuthTokenDetailsBuilder delegate;
+	private final Segment[] segments;
+	private final int maxSize;
+	private volatile long compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+	private ScheduledFuture<?> compaction;
+
+	private final Map<String, Integer> scopeIds = new HashMap<>();
+	private volatile String[] scopeNames = new String[0];
+
+	private final AtomicLong rejectionCount = new AtomicLong();
+
+	/**
+	 * Constructor with the default maximum size
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 */
+	public OffHeapTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructor with the default number of bytes per entry
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 * @param maxSize The maximum number of token details stored
+	 */
+	public OffHeapTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate, int maxSize) {
+		this(delegate, maxSize, DEFAULT_BYTES_PER_ENTRY);
+	}
+
+	/**
+	 * Constructor. Each segment allocates two data areas so that the live records can be
+	 * copied from one to the other when compacting: the off-heap memory used is about
+	 * {@code maxSize * (2 * bytesPerEntry + 128)} bytes.
+	 *
+	 * @param delegate The builder actually looking up the token details
+	 * @param maxSize The maximum number of token details stored
+	 * @param bytesPerEntry The number of bytes reserved for the serialized form of each token details
+	 */
+	public OffHeapTokenDetailsBuilder(IOAuthTokenDetailsBuilder delegate, int maxSize, int bytesPerEntry) {
+		if (maxSize <= 0 || maxSize > (1 << 24)) {
+			throw new IllegalArgumentException("The maximum size of the store must be between 1 and 2^24.");
+		}
+		if (bytesPerEntry <= 0 || bytesPerEntry > (1 << 16)) {
+			throw new IllegalArgumentException("The number of bytes per entry must be between 1 and 2^16.");
+		}
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.segments = new Segment[SEGMENTS];
+		int segmentMaxSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+		if ((long) segmentMaxSize * bytesPerEntry > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The data area of a segment cannot exceed 2GB, reduce the maximum size or the number of bytes per entry.");
+		}
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentMaxSize, segmentMaxSize * bytesPerEntry);
+		}
+	}
+
+	@Override
+	public OAuthTokenDetails buildTokenDetails(String accessToken) {
+		if (!IndexedTokenDetailsBuilder.isIndexable(accessToken)) {
+			return delegate.buildTokenDetails(accessToken);
+		}
+
+		long high = packHigh(accessToken);
+		long low = packLow(accessToken);
+		short tail = packTail(accessToken);
+		Segment segment = segmentFor(high, low, tail);
+		long now = currentTimeMillis();
+
+		byte[] record;
+		synchronized (segment) {
+			record = segment.get(high, low, tail, now);
+		}
+		if (record != null) {
+			recordHit();
+			return deserialize(accessToken, record);
+		}
+		recordMiss();
+
+		OAuthTokenDetails details = delegate.buildTokenDetails(accessToken);
+		if (details != null && details.isEnabled()) {
+			long expiresAt = expirationOf(details, now);
+			record = expiresAt > now ? serialize(details) : null;
+			boolean stored = false;
+			if (record != null) {
+				synchronized (segment) {
+					stored = segment.put(high, low, tail, record, expiresAt, now);
+				}
+			}
+			if (!stored && expiresAt > now) {
+				rejectionCount.incrementAndGet();
+			}
+		}
+		return details;
+	}
+
+	/**
+	 * Remove the details of an access token from the store, typically because the token has
+	 * been revoked.
+	 *
+	 * @param accessToken An access token
+	 */
+	public void invalidate(String accessToken) {
+		if (!IndexedTokenDetailsBuilder.isIndexable(accessToken)) {
+			return;
+		}
+		long high = packHigh(accessToken);
+		long low = packLow(accessToken);
+		short tail = packTail(accessToken);
+		Segment segment = segmentFor(high, low, tail);
+		synchronized (segment) {
+			segment.remove(high, low, tail);
+		}
+	}
+
+	/**
+	 * Remove all the token details from the store.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Reclaim the slots of the expired token details and the space of the dead records,
+	 * one segment at a time.
+	 */
+	public void compact() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.compact(currentTimeMillis());
+			}
+		}
+	}
+
+	/**
+	 * @return The number of token details stored, including the expired ones not reclaimed yet
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return The number of bytes used by the records, including the dead ones
+	 */
+	public long getUsedBytes() {
+		long usedBytes = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				usedBytes += segment.dataEnd;
+			}
+		}
+		return usedBytes;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getCompactionInterval() {
+		return compactionInterval;
+	}
+
+	/**
+	 * @param compactionInterval The interval between two compactions, in milliseconds. Must be
+	 * set before the compaction scheduler.
+	 */
+	public void setCompactionInterval(long compactionInterval) {
+		if (compactionInterval <= 0) {
+			throw new IllegalArgumentException("The compaction interval must be strictly positive.");
+		}
+		this.compactionInterval = compactionInterval;
+	}
+
+	/**
+	 * @param compactionScheduler The scheduler on which the store is compacted in the
+	 * background, typically a {@code ManagedScheduledExecutorService}
+	 */
+	public synchronized void setCompactionScheduler(ScheduledExecutorService compactionScheduler) {
+		if (compaction != null) {
+			compaction.cancel(false);
+		}
+		compaction = compactionScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (RuntimeException re) {
+					// a failed compaction must not cancel the next ones
+					LOG.warn("Unable to compact the token details store.", re);
+				}
+			}
+		}, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background compaction, if any.
+	 */
+	public synchronized void destroy() {
+		if (compaction != null) {
+			compaction.cancel(false);
+			compaction = null;
+		}
+	}
+
+	/**
+	 * @return The number of token details which could not be stored, because they did not 
+	 * fit or because one of their granted authorities had no name, and which are therefore 
+	 * built by the delegate on each lookup
+	 */
+	public long getRejectionCount() {
+		return rejectionCount.get();
+	}
+
+	private Segment segmentFor(long high, long low, short tail) {
+		return segments[(IndexedTokenDetailsBuilder.hash(high, low, tail) >>> 28) & (SEGMENTS - 1)];
+	}
+
+	private static long packHigh(String accessToken) {
+		return IndexedTokenDetailsBuilder.pack(accessToken, 0, IndexedTokenDetailsBuilder.CHARS_PER_LONG);
+	}
+
+	private static long packLow(String accessToken) {
+		return IndexedTokenDetailsBuilder.pack(accessToken, IndexedTokenDetailsBuilder.CHARS_PER_LONG, IndexedTokenDetailsBuilder.CHARS_PER_LONG);
+	}
+
+	private static short packTail(String accessToken) {
+		int offset = 2 * IndexedTokenDetailsBuilder.CHARS_PER_LONG;
+		return (short) IndexedTokenDetailsBuilder.pack(accessToken, offset, IOAuthToken.TOKEN_LENGTH - offset);
+	}
+
+	/**
+	 * @return The id of a scope, -1 if the dictionary is full
+	 */
+	private int scopeId(String scope) {
+		synchronized (scopeIds) {
+			Integer id = scopeIds.get(scope);
+			if (id == null) {
+				if (scopeNames.length >= MAX_SCOPES) {
+					return -1;
+				}
+				id = scopeNames.length;
+				String[] names = Arrays.copyOf(scopeNames, id + 1);
+				names[id] = scope;
+				scopeNames = names;
+				scopeIds.put(scope, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @return The serialized form of the token details, null if they cannot be stored
+	 */
+	private byte[] serialize(OAuthTokenDetails details) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeBoolean(details.getId() != null);
+			if (details.getId() != null) {
+				out.writeLong(details.getId());
+			}
+			out.writeBoolean(details.getExpirationDate() != null);
+			if (details.getExpirationDate() != null) {
+				out.writeLong(details.getExpirationDate().getTime());
+			}
+			writeNullableString(out, details.getClientKey());
+			writeNullableString(out, details.getUserKey());
+			writeNullableString(out, details.getClientRole());
+			out.writeInt(details.getClientEpoch());
+			out.writeInt(details.getUserEpoch());
+
+			Collection<GrantedAuthority> authorities = details.getAuthorities();
+			out.writeInt(authorities == null ? -1 : authorities.size());
+			if (authorities != null) {
+				for (GrantedAuthority authority : authorities) {
+					// an authority without name, or a full dictionary, makes the token details un-storable
+					int id = authority.getAuthority() != null ? scopeId(authority.getAuthority()) : -1;
+					if (id < 0) {
+						return null;
+					}
+					out.writeChar(id);
+				}
+			}
+
+			Map<String, String> properties = details.getProperties();
+			out.writeInt(properties == null ? -1 : properties.size());
+			if (properties != null) {
+				for (Map.Entry<String, String> property : properties.entrySet()) {
+					out.writeUTF(property.getKey());
+					writeNullableString(out, property.getValue());
+				}
+			}
+		} catch (IOException ioe) {
+			// strings longer than 64KB cannot be stored
+			return null;
+		}
+		return bytes.toByteArray();
+	}
+
+	private OAuthTokenDetails deserialize(String accessToken, byte[] record) {
+		String[] names = scopeNames;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+			Long id = in.readBoolean() ? in.readLong() : null;
+			Date expirationDate = in.readBoolean() ? new Date(in.readLong()) : null;
+			String clientKey = readNullableString(in);
+			String userKey = readNullableString(in);
+			String clientRole = readNullableString(in);
+			int clientEpoch = in.readInt();
+			int userEpoch = in.readInt();
+
+			Collection<GrantedAuthority> authorities = null;
+			int authoritiesCount = in.readInt();
+			if (authoritiesCount >= 0) {
+				authorities = new ArrayList<>(authoritiesCount);
+				for (int i = 0; i < authoritiesCount; i++) {
+					authorities.add(new OAuthGrantedAuthority(names[in.readChar()]));
+				}
+			}
+
+			Map<String, String> properties = null;
+			int propertiesCount = in.readInt();
+			if (propertiesCount >= 0) {
+				properties = new HashMap<>();
+				for (int i = 0; i < propertiesCount; i++) {
+					properties.put(in.readUTF(), readNullableString(in));
+				}
+			}
+
+			return new OAuthTokenDetails(id, accessToken, expirationDate, clientKey, userKey, authorities, clientRole, properties, clientEpoch, userEpoch);
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Corrupted token details record.", ioe);
+		}
+	}
+
+	private void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Open-addressing table with linear probing, and data area where the records are
+	 * appended, both allocated off-heap. A record is stored as its length followed by its
+	 * bytes.
+	 */
+	private static final class Segment {
+
+		private final int maxSize;
+		private final int mask;
+		private final ByteBuffer table;
+		private ByteBuffer data;
+		private ByteBuffer spare;
+		private int dataEnd;
+		private int deadBytes;
+		private int size;
+
+		Segment(int maxSize, int dataCapacity) {
+			this.maxSize = maxSize;
+			// keep the load factor under one half so that the probe sequences stay short
+			int capacity = Integer.highestOneBit(maxSize) << 2;
+			this.mask = capacity - 1;
+			this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+			this.data = ByteBuffer.allocateDirect(dataCapacity);
+			this.spare = ByteBuffer.allocateDirect(dataCapacity);
+		}
+
+		byte[] get(long high, long low, short tail, long now) {
+			int slot = find(high, low, tail);
+			if (slot < 0) {
+				return null;
+			}
+			if (table.getLong(slot * SLOT_SIZE + SLOT_EXPIRES_AT) <= now) {
+				delete(slot);
+				return null;
+			}
+			return read(table.getInt(slot * SLOT_SIZE + SLOT_OFFSET));
+		}
+
+		boolean put(long high, long low, short tail, byte[] record, long expiresAt, long now) {
+			int slot = find(high, low, tail);
+			if (slot < 0 && size >= maxSize) {
+				compact(now);
+				if (size >= maxSize) {
+					return false;
+				}
+			}
+			if (dataEnd + 4 + record.length > data.capacity()) {
+				compact(now);
+				slot = find(high, low, tail);
+				if (dataEnd + 4 + record.length > data.capacity()) {
+					if (slot >= 0) {
+						delete(slot);
+					}
+					return false;
+				}
+			}
+
+			if (slot >= 0) {
+				deadBytes += recordSize(table.getInt(slot * SLOT_SIZE + SLOT_OFFSET));
+			} else {
+				slot = IndexedTokenDetailsBuilder.hash(high, low, tail) & mask;
+				while (isUsed(slot)) {
+					slot = (slot + 1) & mask;
+				}
+				int base = slot * SLOT_SIZE;
+				table.putLong(base + SLOT_HIGH, high);
+				table.putLong(base + SLOT_LOW, low);
+				table.putShort(base + SLOT_TAIL, tail);
+				table.putShort(base + SLOT_USED, (short) 1);
+				size++;
+			}
+			table.putLong(slot * SLOT_SIZE + SLOT_EXPIRES_AT, expiresAt);
+			table.putInt(slot * SLOT_SIZE + SLOT_OFFSET, write(record));
+			return true;
+		}
+
+		void remove(long high, long low, short tail) {
+			int slot = find(high, low, tail);
+			if (slot >= 0) {
+				delete(slot);
+			}
+		}
+
+		void clear() {
+			for (int slot = 0; slot <= mask; slot++) {
+				table.putShort(slot * SLOT_SIZE + SLOT_USED, (short) 0);
+			}
+			size = 0;
+			dataEnd = 0;
+			deadBytes = 0;
+		}
+
+		/**
+		 * Delete the expired slots, then copy the live records to the spare data area and
+		 * swap both areas.
+		 */
+		void compact(long now) {
+			int slot = 0;
+			while (slot <= mask) {
+				// a deletion may shift a later slot into this one, check it again
+				if (isUsed(slot) && table.getLong(slot * SLOT_SIZE + SLOT_EXPIRES_AT) <= now) {
+					delete(slot);
+				} else {
+					slot++;
+				}
+			}
+			if (deadBytes == 0) {
+				return;
+			}
+
+			int end = 0;
+			for (slot = 0; slot <= mask; slot++) {
+				if (isUsed(slot)) {
+					int offset = table.getInt(slot * SLOT_SIZE + SLOT_OFFSET);
+					int length = recordSize(offset);
+					ByteBuffer record = data.duplicate();
+					// through Buffer, since ByteBuffer only overrides these methods from Java 9
+					((Buffer) record).limit(offset + length).position(offset);
+					ByteBuffer target = spare.duplicate();
+					((Buffer) target).position(end);
+					target.put(record);
+					table.putInt(slot * SLOT_SIZE + SLOT_OFFSET, end);
+					end += length;
+				}
+			}
+			ByteBuffer compacted = spare;
+			spare = data;
+			data = compacted;
+			dataEnd = end;
+			deadBytes = 0;
+		}
+
+		private boolean isUsed(int slot) {
+			return table.getShort(slot * SLOT_SIZE + SLOT_USED) != 0;
+		}
+
+		private int find(long high, long low, short tail) {
+			int slot = IndexedTokenDetailsBuilder.hash(high, low, tail) & mask;
+			while (isUsed(slot)) {
+				int base = slot * SLOT_SIZE;
+				if (table.getLong(base + SLOT_HIGH) == high && table.getLong(base + SLOT_LOW) == low && table.getShort(base + SLOT_TAIL) == tail) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Empty a slot and shift back the following slots of its probe sequence, so that no
+		 * tombstone is needed.
+		 */
+		private void delete(int slot) {
+			deadBytes += recordSize(table.getInt(slot * SLOT_SIZE + SLOT_OFFSET));
+			int hole = slot;
+			int next = slot;
+			while (true) {
+				next = (next + 1) & mask;
+				if (!isUsed(next)) {
+					break;
+				}
+				int base = next * SLOT_SIZE;
+				int home = IndexedTokenDetailsBuilder.hash(table.getLong(base + SLOT_HIGH), table.getLong(base + SLOT_LOW), table.getShort(base + SLOT_TAIL)) & mask;
+				// the slot can fill the hole unless its home slot lies cyclically in (hole, next]
+				boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (!stays) {
+					for (int i = 0; i < SLOT_SIZE; i += 8) {
+						table.putLong(hole * SLOT_SIZE + i, table.getLong(base + i));
+					}
+					hole = next;
+				}
+			}
+			table.putShort(hole * SLOT_SIZE + SLOT_USED, (short) 0);
+			size--;
+		}
+
+		private int recordSize(int offset) {
+			return 4 + data.getInt(offset);
+		}
+
+		private int write(byte[] record) {
+			int offset = dataEnd;
+			ByteBuffer target = data.duplicate();
+			((Buffer) target).position(offset);
+			target.putInt(record.length).put(record);
+			dataEnd += 4 + record.length;
+			return offset;
+		}
+
+		private byte[] read(int offset) {
+			byte[] record = new byte[data.getInt(offset)];
+			ByteBuffer source = data.duplicate();
+			((Buffer) source).position(offset + 4);
+			source.get(record);
+			return record;
+		}
+	}
+}
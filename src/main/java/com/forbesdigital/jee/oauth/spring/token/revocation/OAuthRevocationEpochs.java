@@ -0,0 +1,127 @@
+package com.forbesdigital.jee.oauth.spring.token.revocation;
+
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Revocation epochs of the clients and of the users, to revoke all their tokens at once.
+ *
+ * <p>Each client and each user has an epoch, 0 until its tokens are revoked for the first
+ * time. A token records the epochs of its client and of its user when it is generated
+ * ({@link OAuthTokenDetails#getClientEpoch()} and {@link OAuthTokenDetails#getUserEpoch()}),
+ * and is revoked as soon as one of these epochs is bumped. Revoking all the tokens of a
+ * client or of a user is therefore a single increment, which applies to the tokens served
+ * from a cache and to the stateless tokens as well, without touching any of them.
+ *
+ * <p>Only the clients and users which were revoked at least once take room in the table.
+ * The epochs are kept in memory: in a cluster, persist them along with the clients and the
+ * users, and apply the bumps of the other nodes with {@link #setClientEpoch(String, int)} and
+ * {@link #setUserEpoch(String, int)}.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.BearerTokenAuthenticationProvider
+ */
+public class OAuthRevocationEpochs {
+
+	private final ConcurrentMap<String, Integer> clientEpochs = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Integer> userEpochs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param clientKey The key of a client
+	 * @return The current epoch of the client, to record in its new tokens
+	 */
+	public int getClientEpoch(String clientKey) {
+		return getEpoch(clientEpochs, clientKey);
+	}
+
+	/**
+	 * @param userKey The key of a user, null if none
+	 * @return The current epoch of the user, to record in its new tokens
+	 */
+	public int getUserEpoch(String userKey) {
+		return getEpoch(userEpochs, userKey);
+	}
+
+	/**
+	 * Revoke all the tokens generated so far for a client.
+	 *
+	 * @param clientKey The key of the client
+	 * @return The new epoch of the client
+	 */
+	public int revokeClient(String clientKey) {
+		return bump(clientEpochs, clientKey);
+	}
+
+	/**
+	 * Revoke all the tokens generated so far for a user.
+	 *
+	 * @param userKey The key of the user
+	 * @return The new epoch of the user
+	 */
+	public int revokeUser(String userKey) {
+		return bump(userEpochs, userKey);
+	}
+
+	/**
+	 * Raise the epoch of a client, typically to the epoch persisted or bumped by another node.
+	 * Lower epochs are ignored.
+	 *
+	 * @param clientKey The key of the client
+	 * @param epoch The epoch of the client
+	 */
+	public void setClientEpoch(String clientKey, int epoch) {
+		raise(clientEpochs, clientKey, epoch);
+	}
+
+	/**
+	 * Raise the epoch of a user, typically to the epoch persisted or bumped by another node.
+	 * Lower epochs are ignored.
+	 *
+	 * @param userKey The key of the user
+	 * @param epoch The epoch of the user
+	 */
+	public void setUserEpoch(String userKey, int epoch) {
+		raise(userEpochs, userKey, epoch);
+	}
+
+	/**
+	 * @param tokenDetails The details of a token
+	 * @return True if the token was generated before the last revocation of its client or of its user
+	 */
+	public boolean isRevoked(OAuthTokenDetails tokenDetails) {
+		return tokenDetails.getClientEpoch() < getEpoch(clientEpochs, tokenDetails.getClientKey())
+			|| tokenDetails.getUserEpoch() < getEpoch(userEpochs, tokenDetails.getUserKey());
+	}
+
+	private static int getEpoch(ConcurrentMap<String, Integer> epochs, String key) {
+		if (key == null) {
+			return 0;
+		}
+		Integer epoch = epochs.get(key);
+		return epoch != null ? epoch : 0;
+	}
+
+	private static int bump(ConcurrentMap<String, Integer> epochs, String key) {
+		while (true) {
+			Integer epoch = epochs.putIfAbsent(key, 1);
+			if (epoch == null) {
+				return 1;
+			}
+			if (epochs.replace(key, epoch, epoch + 1)) {
+				return epoch + 1;
+			}
+		}
+	}
+
+	private static void raise(ConcurrentMap<String, Integer> epochs, String key, int newEpoch) {
+		if (newEpoch <= 0) {
+			return;
+		}
+		while (true) {
+			Integer epoch = epochs.putIfAbsent(key, newEpoch);
+			if (epoch == null || epoch >= newEpoch || epochs.replace(key, epoch, newEpoch)) {
+				return;
+			}
+		}
+	}
+}
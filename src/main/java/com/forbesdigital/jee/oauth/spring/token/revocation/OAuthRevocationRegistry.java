@@ -0,0 +1,248 @@
+package com.forbesdigital.jee.oauth.spring.token.revocation;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of the revoked tokens, by token id, shared by the cached and the signed tokens
+ * which never go back to the storage.
+ *
+ * <p>A revoked token id is kept until the expiration date of the token, after which the
+ * token is rejected anyway. Since almost all the checked tokens are not revoked, the ids are
+ * first looked up in a Bloom filter which answers "not revoked" with a few memory reads and
+ * without any allocation. Only the ids matched by the filter, the revoked ones and a small
+ * fraction of false positives, are looked up in the exact set.
+ *
+ * <p>A Bloom filter cannot forget an id: the expired ids are removed from the exact set and
+ * the filter is rebuilt from the remaining ones by {@link #prune()}, which runs in the
+ * background when a {@link #setPruningScheduler(ScheduledExecutorService) pruning scheduler}
+ * is set, and whenever the registry holds more ids than the filter was sized for.
+ *
+ * @see com.forbesdigital.jee.oauth.spring.token.BearerTokenAuthenticationProvider
+ * @see com.forbesdigital.jee.oauth.spring.token.TokenBearerAuthenticationFilter
+ */
+public class OAuthRevocationRegistry {
+
+	private static final Log LOG = LogFactory.getLog(OAuthRevocationRegistry.class);
+
+	/**
+	 * Default number of revoked tokens the Bloom filter is sized for
+	 */
+	public static final int DEFAULT_EXPECTED_REVOCATIONS = 10000;
+
+	/**
+	 * Default interval between two prunings, in milliseconds
+	 */
+	public static final long DEFAULT_PRUNING_INTERVAL = 10 * 60 * 1000L;
+
+	/**
+	 * Bits of the Bloom filter per expected revocation, and number of bits set per id, for a
+	 * false positive rate around 1%
+	 */
+	private static final int BITS_PER_REVOCATION = 10;
+	private static final int HASH_COUNT = 5;
+
+	private final int expectedRevocations;
+	private final ConcurrentMap<Long, Long> revocations = new ConcurrentHashMap<>();
+	private volatile BloomFilter filter;
+
+	private long pruningInterval = DEFAULT_PRUNING_INTERVAL;
+	private ScheduledFuture<?> pruning;
+
+	/**
+	 * Constructor with a filter sized for {@link #DEFAULT_EXPECTED_REVOCATIONS} revoked tokens
+	 */
+	public OAuthRevocationRegistry() {
+		this(DEFAULT_EXPECTED_REVOCATIONS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedRevocations The number of revoked and not yet expired tokens the Bloom
+	 * filter is sized for. The filter grows when this number is exceeded.
+	 */
+	public OAuthRevocationRegistry(int expectedRevocations) {
+		if (expectedRevocations <= 0) {
+			throw new IllegalArgumentException("The expected number of revocations must be strictly positive.");
+		}
+		this.expectedRevocations = expectedRevocations;
+		this.filter = new BloomFilter(expectedRevocations);
+	}
+
+	/**
+	 * Revoke a token until its expiration date.
+	 *
+	 * @param tokenId The id of the token
+	 * @param expirationDate The expiration date of the token
+	 */
+	public synchronized void revoke(long tokenId, Date expirationDate) {
+		if (expirationDate.getTime() <= currentTimeMillis()) {
+			return;
+		}
+		revocations.put(tokenId, expirationDate.getTime());
+		if (revocations.size() > filter.capacity) {
+			prune();
+		} else {
+			filter.add(tokenId);
+		}
+	}
+
+	/**
+	 * @param tokenId The id of a token, null if the token has no id
+	 * @return True if the token is revoked
+	 */
+	public boolean isRevoked(Long tokenId) {
+		return tokenId != null && isRevoked(tokenId.longValue());
+	}
+
+	/**
+	 * @param tokenId The id of a token
+	 * @return True if the token is revoked
+	 */
+	public boolean isRevoked(long tokenId) {
+		return filter.mightContain(tokenId) && revocations.containsKey(tokenId);
+	}
+
+	/**
+	 * Remove the ids of the expired tokens and rebuild the Bloom filter from the remaining ones.
+	 */
+	public synchronized void prune() {
+		long now = currentTimeMillis();
+		for (Iterator<Map.Entry<Long, Long>> it = revocations.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue() <= now) {
+				it.remove();
+			}
+		}
+
+		// the new filter is complete before being published, so no revoked id is ever missed
+		BloomFilter newFilter = new BloomFilter(Math.max(expectedRevocations, revocations.size() * 2));
+		for (Long tokenId : revocations.keySet()) {
+			newFilter.add(tokenId);
+		}
+		filter = newFilter;
+	}
+
+	/**
+	 * @return The number of revoked tokens kept, including the ones expired since the last pruning
+	 */
+	public int size() {
+		return revocations.size();
+	}
+
+	public long getPruningInterval() {
+		return pruningInterval;
+	}
+
+	/**
+	 * @param pruningInterval The interval between two prunings, in milliseconds. Must be set
+	 * before the pruning scheduler.
+	 */
+	public void setPruningInterval(long pruningInterval) {
+		if (pruningInterval <= 0) {
+			throw new IllegalArgumentException("The pruning interval must be strictly positive.");
+		}
+		this.pruningInterval = pruningInterval;
+	}
+
+	/**
+	 * @param pruningScheduler The scheduler on which the registry is pruned in the background,
+	 * typically a {@code ManagedScheduledExecutorService}
+	 */
+	public synchronized void setPruningScheduler(ScheduledExecutorService pruningScheduler) {
+		if (pruning != null) {
+			pruning.cancel(false);
+		}
+		pruning = pruningScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					prune();
+				} catch (RuntimeException re) {
+					// a failed pruning must not cancel the next ones
+					LOG.warn("Unable to prune the revocation registry.", re);
+				}
+			}
+		}, pruningInterval, pruningInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background pruning, if any.
+	 */
+	public synchronized void destroy() {
+		if (pruning != null) {
+			pruning.cancel(false);
+			pruning = null;
+		}
+	}
+
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Bloom filter of token ids, whose number of bits is a power of two. The bits are
+	 * read and written atomically, so that an added id is seen by all the threads.
+	 */
+	private static final class BloomFilter {
+
+		private final int capacity;
+		private final AtomicLongArray bits;
+		private final int mask;
+
+		BloomFilter(int capacity) {
+			this.capacity = capacity;
+			int bitCount = Integer.highestOneBit(Math.max(64, capacity * BITS_PER_REVOCATION - 1)) << 1;
+			this.bits = new AtomicLongArray(bitCount / 64);
+			this.mask = bitCount - 1;
+		}
+
+		void add(long tokenId) {
+			long hash = mix(tokenId);
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32) | 1;
+			for (int i = 0; i < HASH_COUNT; i++) {
+				int bit = (h1 + i * h2) & mask;
+				long word;
+				do {
+					word = bits.get(bit >>> 6);
+				} while (!bits.compareAndSet(bit >>> 6, word, word | (1L << bit)));
+			}
+		}
+
+		boolean mightContain(long tokenId) {
+			long hash = mix(tokenId);
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32) | 1;
+			for (int i = 0; i < HASH_COUNT; i++) {
+				int bit = (h1 + i * h2) & mask;
+				if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Finalizer of MurmurHash3, spreading sequential ids over all the bits
+		 */
+		private static long mix(long value) {
+			long hash = value;
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb9fe1a85ec53L;
+			hash ^= hash >>> 33;
+			return hash;
+		}
+	}
+}
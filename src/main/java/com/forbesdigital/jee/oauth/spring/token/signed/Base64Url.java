@@ -0,0 +1,84 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+/**
+ * Base64 encoding with the URL and filename safe alphabet and without padding (RFC 4648 
+ * section 5), whose characters all belong to the access token alphabet.
+ */
+final class Base64Url {
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		for (int i = 0; i < VALUES.length; i++) {
+			VALUES[i] = -1;
+		}
+		for (int i = 0; i < ALPHABET.length; i++) {
+			VALUES[ALPHABET[i]] = (byte) i;
+		}
+	}
+
+	private Base64Url() {}
+
+	/**
+	 * @param length A number of bytes
+	 * @return The number of characters of the encoded bytes
+	 */
+	static int encodedLength(int length) {
+		return (length * 4 + 2) / 3;
+	}
+
+	static String encode(byte[] bytes) {
+		StringBuilder encoded = new StringBuilder(encodedLength(bytes.length));
+		int i = 0;
+		for (; i + 2 < bytes.length; i += 3) {
+			int chunk = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			encoded.append(ALPHABET[chunk >>> 18]).append(ALPHABET[(chunk >>> 12) & 0x3f])
+				.append(ALPHABET[(chunk >>> 6) & 0x3f]).append(ALPHABET[chunk & 0x3f]);
+		}
+		int remaining = bytes.length - i;
+		if (remaining == 1) {
+			int chunk = (bytes[i] & 0xff) << 16;
+			encoded.append(ALPHABET[chunk >>> 18]).append(ALPHABET[(chunk >>> 12) & 0x3f]);
+		} else if (remaining == 2) {
+			int chunk = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+			encoded.append(ALPHABET[chunk >>> 18]).append(ALPHABET[(chunk >>> 12) & 0x3f]).append(ALPHABET[(chunk >>> 6) & 0x3f]);
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * @param encoded Characters to decode
+	 * @param offset The index of the first character to decode
+	 * @param length The number of characters to decode
+	 * @return The decoded bytes, null if the characters are not valid
+	 */
+	static byte[] decode(CharSequence encoded, int offset, int length) {
+		if (length % 4 == 1) {
+			return null;
+		}
+		byte[] bytes = new byte[length * 3 / 4];
+		int chunk = 0;
+		int bits = 0;
+		int index = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char c = encoded.charAt(i);
+			int value = c < VALUES.length ? VALUES[c] : -1;
+			if (value < 0) {
+				return null;
+			}
+			chunk = chunk << 6 | value;
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				bytes[index++] = (byte) (chunk >>> bits);
+			}
+		}
+		// the unused bits of the last character must be zero, so that each byte sequence 
+		// has a single encoding
+		if ((chunk & ((1 << bits) - 1)) != 0) {
+			return null;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,21 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+
+/**
+ * Interface for building the token details of a signed access token from its content, 
+ * typically by looking up the token by its id instead of its access token.
+ * 
+ * @see SignedTokenDetailsBuilder
+ */
+public interface IOAuthSignedTokenDetailsBuilder {
+
+	/**
+	 * Build the token details of a signed access token whose signature has been verified.
+	 * 
+	 * @param accessToken The access token
+	 * @param signedToken The content of the access token
+	 * @return The token details, null if the token does not exist (anymore)
+	 */
+	OAuthTokenDetails buildTokenDetails(String accessToken, SignedToken signedToken);
+}
@@ -0,0 +1,277 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Keys signing and verifying the JWT access tokens, identified by their key id ("kid").
+ *
+ * <p>The keys are either HMAC secrets (HS256), shared by the authorization server and the
+ * resource servers, or RSA key pairs (RS256), whose private key is only needed to sign
+ * tokens. The keys are parsed once, when added to the ring, and each of them keeps a MAC
+ * or a signature verifier per thread along with the JOSE header of the tokens it signs,
+ * so that verifying a token only costs the signature check.
+ *
+ * <p>Several keys can be active at the same time. To rotate the keys, add the new key to
+ * all the nodes, make it the signing key, then remove the old key once the tokens it
+ * signed have expired.
+ *
+ * @see JwtTokenCodec
+ */
+public class JwtKeyRing {
+
+	private static final int MIN_SECRET_LENGTH = 32;
+
+	private volatile Map<String, Key> keysByHeader = Collections.emptyMap();
+	private volatile Map<String, Key> keys = Collections.emptyMap();
+	private volatile Key signingKey;
+
+	/**
+	 * Add a HMAC-SHA256 key, or replace the key with the same id.
+	 *
+	 * @param keyId The id of the key
+	 * @param secret The secret of the key, 32 bytes at least
+	 */
+	public void addHmacKey(String keyId, byte[] secret) {
+		if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+			throw new IllegalArgumentException("The key secret must have " + MIN_SECRET_LENGTH + " bytes at least.");
+		}
+		addKey(new HmacKey(keyId, new SecretKeySpec(secret, HmacKey.ALGORITHM)));
+	}
+
+	/**
+	 * Add a RSA-SHA256 key, or replace the key with the same id.
+	 *
+	 * @param keyId The id of the key
+	 * @param publicKey The public key verifying the tokens
+	 * @param privateKey The private key signing the tokens, null on the nodes which only verify tokens
+	 */
+	public void addRsaKey(String keyId, PublicKey publicKey, PrivateKey privateKey) {
+		addKey(new RsaKey(keyId, publicKey, privateKey));
+	}
+
+	/**
+	 * Remove a key. The tokens signed with this key are not valid anymore.
+	 *
+	 * @param keyId The id of the key
+	 * @throws IllegalStateException If the key is the signing key
+	 */
+	public synchronized void removeKey(String keyId) {
+		if (signingKey != null && signingKey.id.equals(keyId)) {
+			throw new IllegalStateException("The signing key cannot be removed.");
+		}
+		Key key = keys.get(keyId);
+		if (key != null) {
+			Map<String, Key> newKeys = new HashMap<>(keys);
+			newKeys.remove(keyId);
+			Map<String, Key> newKeysByHeader = new HashMap<>(keysByHeader);
+			newKeysByHeader.remove(key.header);
+			keys = Collections.unmodifiableMap(newKeys);
+			keysByHeader = Collections.unmodifiableMap(newKeysByHeader);
+		}
+	}
+
+	/**
+	 * @param hmacKeys HMAC secrets encoded in base64, by key id
+	 */
+	public void setHmacKeys(Map<String, String> hmacKeys) {
+		for (Map.Entry<String, String> key : hmacKeys.entrySet()) {
+			addHmacKey(key.getKey(), DatatypeConverter.parseBase64Binary(key.getValue()));
+		}
+	}
+
+	/**
+	 * @param rsaKeys RSA key pairs by key id, each of them being the X.509 public key encoded
+	 * in base64, optionally followed by a colon and the PKCS#8 private key encoded in base64
+	 */
+	public void setRsaKeys(Map<String, String> rsaKeys) {
+		try {
+			KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+			for (Map.Entry<String, String> key : rsaKeys.entrySet()) {
+				String[] encodedKeys = key.getValue().split(":");
+				PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(DatatypeConverter.parseBase64Binary(encodedKeys[0])));
+				PrivateKey privateKey = encodedKeys.length > 1 ? keyFactory.generatePrivate(new PKCS8EncodedKeySpec(DatatypeConverter.parseBase64Binary(encodedKeys[1]))) : null;
+				addRsaKey(key.getKey(), publicKey, privateKey);
+			}
+		} catch (GeneralSecurityException gse) {
+			throw new IllegalArgumentException("Invalid RSA key.", gse);
+		}
+	}
+
+	/**
+	 * @param signingKeyId The id of the key signing the new tokens, which must have been added
+	 */
+	public synchronized void setSigningKeyId(String signingKeyId) {
+		Key key = keys.get(signingKeyId);
+		if (key == null) {
+			throw new IllegalArgumentException("The key " + signingKeyId + " is unknown.");
+		}
+		if (!key.canSign()) {
+			throw new IllegalArgumentException("The key " + signingKeyId + " has no private key.");
+		}
+		signingKey = key;
+	}
+
+	/**
+	 * @return The key signing the new tokens, null if there is none
+	 */
+	Key getSigningKey() {
+		return signingKey;
+	}
+
+	/**
+	 * @param header The encoded JOSE header of a token
+	 * @return The key which signed the tokens with this header, null if there is none
+	 */
+	Key getKeyByHeader(String header) {
+		return keysByHeader.get(header);
+	}
+
+	private synchronized void addKey(Key key) {
+		Map<String, Key> newKeys = new HashMap<>(keys);
+		Key oldKey = newKeys.put(key.id, key);
+		Map<String, Key> newKeysByHeader = new HashMap<>(keysByHeader);
+		if (oldKey != null) {
+			newKeysByHeader.remove(oldKey.header);
+		}
+		newKeysByHeader.put(key.header, key);
+		keys = Collections.unmodifiableMap(newKeys);
+		keysByHeader = Collections.unmodifiableMap(newKeysByHeader);
+		if (signingKey != null && signingKey.id.equals(key.id)) {
+			signingKey = key.canSign() ? key : null;
+		}
+	}
+
+	/**
+	 * Key along with the encoded JOSE header of the tokens it signs
+	 */
+	abstract static class Key {
+
+		private final String id;
+		private final String header;
+
+		Key(String id, String algorithm) {
+			if (id == null || id.isEmpty() || !id.matches("[A-Za-z0-9._-]+")) {
+				throw new IllegalArgumentException("The key id must only contain letters, digits, '.', '_' and '-'.");
+			}
+			this.id = id;
+			this.header = Base64Url.encode(("{\"alg\":\"" + algorithm + "\",\"typ\":\"JWT\",\"kid\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8));
+		}
+
+		String getHeader() {
+			return header;
+		}
+
+		abstract boolean canSign();
+
+		abstract byte[] sign(byte[] content);
+
+		abstract boolean verify(byte[] content, byte[] signature);
+	}
+
+	private static final class HmacKey extends Key {
+
+		private static final String ALGORITHM = "HmacSHA256";
+
+		private final ThreadLocal<Mac> macs;
+
+		HmacKey(String id, final SecretKeySpec secret) {
+			super(id, "HS256");
+			this.macs = new ThreadLocal<Mac>() {
+				@Override
+				protected Mac initialValue() {
+					try {
+						Mac mac = Mac.getInstance(ALGORITHM);
+						mac.init(secret);
+						return mac;
+					} catch (GeneralSecurityException gse) {
+						throw new IllegalStateException("Unable to initialize " + ALGORITHM + ".", gse);
+					}
+				}
+			};
+			// fail fast on an invalid key
+			macs.get();
+		}
+
+		@Override
+		boolean canSign() {
+			return true;
+		}
+
+		@Override
+		byte[] sign(byte[] content) {
+			return macs.get().doFinal(content);
+		}
+
+		@Override
+		boolean verify(byte[] content, byte[] signature) {
+			return MessageDigest.isEqual(sign(content), signature);
+		}
+	}
+
+	private static final class RsaKey extends Key {
+
+		private static final String ALGORITHM = "SHA256withRSA";
+
+		private final PublicKey publicKey;
+		private final PrivateKey privateKey;
+		private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+			@Override
+			protected Signature initialValue() {
+				try {
+					return Signature.getInstance(ALGORITHM);
+				} catch (GeneralSecurityException gse) {
+					throw new IllegalStateException("Unable to initialize " + ALGORITHM + ".", gse);
+				}
+			}
+		};
+
+		RsaKey(String id, PublicKey publicKey, PrivateKey privateKey) {
+			super(id, "RS256");
+			this.publicKey = publicKey;
+			this.privateKey = privateKey;
+		}
+
+		@Override
+		boolean canSign() {
+			return privateKey != null;
+		}
+
+		@Override
+		byte[] sign(byte[] content) {
+			try {
+				Signature signature = signatures.get();
+				signature.initSign(privateKey);
+				signature.update(content);
+				return signature.sign();
+			} catch (GeneralSecurityException gse) {
+				throw new IllegalStateException("Unable to sign the token.", gse);
+			}
+		}
+
+		@Override
+		boolean verify(byte[] content, byte[] signature) {
+			try {
+				Signature verifier = signatures.get();
+				verifier.initVerify(publicKey);
+				verifier.update(content);
+				return verifier.verify(signature);
+			} catch (GeneralSecurityException gse) {
+				return false;
+			}
+		}
+	}
+}
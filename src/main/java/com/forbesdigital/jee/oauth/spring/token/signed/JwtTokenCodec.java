@@ -0,0 +1,197 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Creates and verifies stateless access tokens in the JSON Web Token format (RFC 7519).
+ *
+ * <p>A JWT access token carries all the token details as claims: the id of the token
+ * ("jti"), its expiration date ("exp"), the client and user keys, the client role and the
+ * granted scopes. The resource servers therefore authenticate the requests without any
+ * lookup, only by verifying the signature of the token with the keys of a
+ * {@link JwtKeyRing}.
+ *
+ * <p>The header of a token is only accepted if it is byte for byte the header of one of the
+ * keys of the ring, which fixes the algorithm of each key and rules out the "none"
+ * algorithm and the algorithm substitution attacks.
+ *
+ * <p>As nothing is stored, a JWT access token cannot be revoked before its expiration date
+ * other than by removing the key which signed it, or by revoking all the tokens of its
+ * client or of its user with {@link OAuthRevocationEpochs}, whose current epochs are then
+ * recorded in the tokens ("client_epoch" and "user_epoch"). Keep the token lifetimes short.
+ *
+ * @see JwtTokenDetailsBuilder
+ */
+public class JwtTokenCodec {
+
+	private static final String SCOPE_SEPARATOR = " ";
+
+	private final JwtKeyRing keyRing;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private String issuer;
+	private OAuthRevocationEpochs revocationEpochs;
+
+	/**
+	 * Constructor
+	 *
+	 * @param keyRing The keys signing and verifying the tokens
+	 */
+	public JwtTokenCodec(JwtKeyRing keyRing) {
+		this.keyRing = keyRing;
+	}
+
+	/**
+	 * Create a JWT access token signed with the signing key of the ring.
+	 *
+	 * @param id The id of the token
+	 * @param expirationDate The expiration date of the token, truncated to the second
+	 * @param clientKey The key of the client for which the token is generated
+	 * @param userKey The key of the user for which the token is generated, null if none
+	 * @param clientRole The role of the client
+	 * @param grantedScopes The scopes granted to the token
+	 * @return The access token
+	 * @throws IllegalStateException If the ring has no signing key
+	 */
+	public String encode(Long id, Date expirationDate, String clientKey, String userKey, String clientRole, Set<String> grantedScopes) {
+		JwtKeyRing.Key key = keyRing.getSigningKey();
+		if (key == null) {
+			throw new IllegalStateException("No signing key is configured.");
+		}
+
+		Map<String, Object> claims = new LinkedHashMap<>();
+		if (issuer != null) {
+			claims.put("iss", issuer);
+		}
+		if (id != null) {
+			claims.put("jti", id.toString());
+		}
+		claims.put("iat", currentTimeMillis() / 1000);
+		claims.put("exp", expirationDate.getTime() / 1000);
+		claims.put("client_key", clientKey);
+		if (userKey != null) {
+			claims.put("user_key", userKey);
+		}
+		claims.put("client_role", clientRole);
+		if (revocationEpochs != null) {
+			int clientEpoch = revocationEpochs.getClientEpoch(clientKey);
+			if (clientEpoch > 0) {
+				claims.put("client_epoch", clientEpoch);
+			}
+			int userEpoch = revocationEpochs.getUserEpoch(userKey);
+			if (userEpoch > 0) {
+				claims.put("user_epoch", userEpoch);
+			}
+		}
+		StringBuilder scope = new StringBuilder();
+		for (String grantedScope : grantedScopes) {
+			if (scope.length() > 0) {
+				scope.append(SCOPE_SEPARATOR);
+			}
+			scope.append(grantedScope);
+		}
+		claims.put("scope", scope.toString());
+
+		try {
+			String content = key.getHeader() + "." + Base64Url.encode(mapper.writeValueAsBytes(claims));
+			return content + "." + Base64Url.encode(key.sign(content.getBytes(StandardCharsets.US_ASCII)));
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to write the token claims.", ioe);
+		}
+	}
+
+	/**
+	 * Verify a JWT access token and read its details. The details of an expired token are
+	 * returned, so that the caller can tell an expired token from an invalid one.
+	 *
+	 * @param accessToken The access token
+	 * @return The token details, null if the token is not a valid JWT signed by a key of the ring
+	 */
+	public OAuthTokenDetails decode(String accessToken) {
+		if (accessToken == null) {
+			return null;
+		}
+		int headerEnd = accessToken.indexOf('.');
+		int payloadEnd = headerEnd < 0 ? -1 : accessToken.indexOf('.', headerEnd + 1);
+		if (payloadEnd < 0 || accessToken.indexOf('.', payloadEnd + 1) >= 0) {
+			return null;
+		}
+
+		JwtKeyRing.Key key = keyRing.getKeyByHeader(accessToken.substring(0, headerEnd));
+		if (key == null) {
+			return null;
+		}
+
+		byte[] signature = Base64Url.decode(accessToken, payloadEnd + 1, accessToken.length() - payloadEnd - 1);
+		if (signature == null || !key.verify(accessToken.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII), signature)) {
+			return null;
+		}
+
+		byte[] payload = Base64Url.decode(accessToken, headerEnd + 1, payloadEnd - headerEnd - 1);
+		if (payload == null) {
+			return null;
+		}
+
+		try {
+			JsonNode claims = mapper.readTree(new String(payload, StandardCharsets.UTF_8));
+			if (claims == null || !claims.isObject() || !claims.path("exp").isIntegralNumber()
+					|| (issuer != null && !issuer.equals(claims.path("iss").getTextValue()))) {
+				return null;
+			}
+
+			Collection<GrantedAuthority> authorities = new ArrayList<>();
+			String scope = claims.path("scope").getTextValue();
+			if (scope != null && !scope.isEmpty()) {
+				for (String grantedScope : scope.split(SCOPE_SEPARATOR)) {
+					authorities.add(new OAuthGrantedAuthority(grantedScope));
+				}
+			}
+
+			String jti = claims.path("jti").getTextValue();
+			return new OAuthTokenDetails(
+				jti != null ? Long.valueOf(jti) : null,
+				accessToken,
+				new Date(claims.get("exp").getLongValue() * 1000),
+				claims.path("client_key").getTextValue(),
+				claims.path("user_key").getTextValue(),
+				authorities,
+				claims.path("client_role").getTextValue(),
+				null,
+				claims.path("client_epoch").getIntValue(),
+				claims.path("user_epoch").getIntValue());
+		} catch (IOException | NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param issuer The issuer ("iss") written in the tokens, and required in the verified
+	 * tokens when set
+	 */
+	public void setIssuer(String issuer) {
+		this.issuer = issuer;
+	}
+
+	/**
+	 * @param revocationEpochs Epochs of the clients and of the users to record in the tokens
+	 */
+	public void setRevocationEpochs(OAuthRevocationEpochs revocationEpochs) {
+		this.revocationEpochs = revocationEpochs;
+	}
+
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
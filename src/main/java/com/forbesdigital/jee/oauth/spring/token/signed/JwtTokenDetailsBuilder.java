@@ -0,0 +1,30 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+
+/**
+ * Token details builder for stateless JWT access tokens. The token details are read from
+ * the claims of the access token once its signature is verified, without any lookup.
+ * Forged and tampered access tokens are considered as not found.
+ *
+ * @see JwtTokenCodec
+ */
+public class JwtTokenDetailsBuilder implements IOAuthTokenDetailsBuilder {
+
+	private final JwtTokenCodec codec;
+
+	/**
+	 * Constructor
+	 *
+	 * @param codec The codec verifying and reading the access tokens
+	 */
+	public JwtTokenDetailsBuilder(JwtTokenCodec codec) {
+		this.codec = codec;
+	}
+
+	@Override
+	public OAuthTokenDetails buildTokenDetails(String accessToken) {
+		return codec.decode(accessToken);
+	}
+}
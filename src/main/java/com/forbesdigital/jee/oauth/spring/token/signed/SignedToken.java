@@ -0,0 +1,59 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Content of a signed access token whose signature has been verified.
+ * 
+ * @see SignedTokenCodec
+ */
+public class SignedToken {
+
+	private final int keyId;
+	private final long id;
+	private final Date expirationDate;
+	private final Set<String> scopes;
+
+	public SignedToken(int keyId, long id, Date expirationDate, Set<String> scopes) {
+		this.keyId = keyId;
+		this.id = id;
+		this.expirationDate = expirationDate;
+		this.scopes = scopes;
+	}
+
+	/**
+	 * @return The id of the key which signed the token
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * @return The id of the token, as given when the token was created
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The expiration date of the token, to the second
+	 */
+	public Date getExpirationDate() {
+		return expirationDate;
+	}
+
+	/**
+	 * @return The scopes granted to the token
+	 */
+	public Set<String> getScopes() {
+		return scopes;
+	}
+
+	/**
+	 * @return True if the token is expired
+	 */
+	public boolean isExpired() {
+		return expirationDate.getTime() <= System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,238 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Creates and verifies self-validating access tokens.
+ *
+ * <p>A signed access token embeds the id of the token, its expiration date (to the second)
+ * and its scopes as a bitmask, followed by an HMAC-SHA256 of this content truncated to 128
+ * bits. The whole is encoded in base64url, so the access tokens have
+ * {@link #TOKEN_LENGTH} characters, all of them from the access token alphabet. Forged,
+ * tampered and expired access tokens can therefore be rejected without any lookup, and the
+ * valid ones can be looked up by id.
+ *
+ * <p>The bits of the scope mask are given by the position of the scopes in the list given
+ * to the constructor, which can hold up to 64 scopes. New scopes must be appended to this
+ * list so that the tokens already issued keep the same scopes.
+ *
+ * <p>Several keys can be active at the same time, identified by an id between 0 and 255
+ * which is embedded in the token. The tokens are signed with the signing key and verified
+ * with the key they were signed with. To rotate the keys, add the new key, make it the
+ * signing key once it is known by all the nodes, then remove the old key once the tokens
+ * it signed have expired.
+ *
+ * @see SignedTokenDetailsBuilder
+ * @see com.forbesdigital.jee.oauth.spring.token.TokenBearerAuthenticationFilter
+ */
+public class SignedTokenCodec {
+
+	private static final int VERSION = 1;
+	private static final int CONTENT_LENGTH = 1 + 1 + 8 + 4 + 8;
+	private static final int SIGNATURE_LENGTH = 16;
+	private static final int MIN_SECRET_LENGTH = 32;
+	private static final String ALGORITHM = "HmacSHA256";
+
+	/**
+	 * Length of a signed access token
+	 */
+	public static final int TOKEN_LENGTH = Base64Url.encodedLength(CONTENT_LENGTH + SIGNATURE_LENGTH);
+
+	private final List<String> scopes;
+	private final Map<String, Integer> scopeBits = new HashMap<>();
+	private volatile Map<Integer, Key> keys = Collections.emptyMap();
+	private volatile Key signingKey;
+
+	/**
+	 * Constructor
+	 *
+	 * @param scopes All the scopes which can be granted, in a stable order (64 at most)
+	 */
+	public SignedTokenCodec(List<String> scopes) {
+		if (scopes.size() > 64) {
+			throw new IllegalArgumentException("A signed token cannot hold more than 64 scopes.");
+		}
+		this.scopes = new ArrayList<>(scopes);
+		for (int i = 0; i < scopes.size(); i++) {
+			scopeBits.put(scopes.get(i), i);
+		}
+	}
+
+	/**
+	 * Create a signed access token with the signing key.
+	 *
+	 * @param id The id of the token, typically its primary key
+	 * @param expirationDate The expiration date of the token, truncated to the second
+	 * @param grantedScopes The scopes granted to the token
+	 * @return The access token
+	 * @throws IllegalStateException If there is no signing key
+	 * @throws IllegalArgumentException If a scope is unknown
+	 */
+	public String encode(long id, Date expirationDate, Set<String> grantedScopes) {
+		Key key = signingKey;
+		if (key == null) {
+			throw new IllegalStateException("No signing key is defined.");
+		}
+
+		long scopeMask = 0;
+		for (String scope : grantedScopes) {
+			Integer bit = scopeBits.get(scope);
+			if (bit == null) {
+				throw new IllegalArgumentException("The scope " + scope + " cannot be held by a signed token.");
+			}
+			scopeMask |= 1L << bit;
+		}
+
+		ByteBuffer token = ByteBuffer.allocate(CONTENT_LENGTH + SIGNATURE_LENGTH);
+		token.put((byte) VERSION);
+		token.put((byte) key.id);
+		token.putLong(id);
+		token.putInt((int) (expirationDate.getTime() / 1000));
+		token.putLong(scopeMask);
+		token.put(key.sign(token.array(), CONTENT_LENGTH), 0, SIGNATURE_LENGTH);
+		return Base64Url.encode(token.array());
+	}
+
+	/**
+	 * Verify a signed access token and extract its content. The expiration date is not
+	 * checked.
+	 *
+	 * @param accessToken The access token
+	 * @return The content of the access token, null if the access token is not a signed
+	 * token, is signed with an unknown key or has been tampered with
+	 */
+	public SignedToken decode(String accessToken) {
+		if (accessToken == null || accessToken.length() != TOKEN_LENGTH) {
+			return null;
+		}
+		byte[] bytes = Base64Url.decode(accessToken, 0, TOKEN_LENGTH);
+		if (bytes == null || bytes[0] != VERSION) {
+			return null;
+		}
+		Key key = keys.get(bytes[1] & 0xff);
+		if (key == null) {
+			return null;
+		}
+
+		byte[] signature = key.sign(bytes, CONTENT_LENGTH);
+		if (!MessageDigest.isEqual(Arrays.copyOf(signature, SIGNATURE_LENGTH), Arrays.copyOfRange(bytes, CONTENT_LENGTH, bytes.length))) {
+			return null;
+		}
+
+		ByteBuffer content = ByteBuffer.wrap(bytes, 2, CONTENT_LENGTH - 2);
+		long id = content.getLong();
+		Date expirationDate = new Date((content.getInt() & 0xffffffffL) * 1000);
+		long scopeMask = content.getLong();
+		Set<String> grantedScopes = new HashSet<>();
+		for (int bit = 0; bit < scopes.size(); bit++) {
+			if ((scopeMask & (1L << bit)) != 0) {
+				grantedScopes.add(scopes.get(bit));
+			}
+		}
+		return new SignedToken(key.id, id, expirationDate, grantedScopes);
+	}
+
+	/**
+	 * Add a key verifying the tokens, or replace the key with the same id.
+	 *
+	 * @param keyId The id of the key, between 0 and 255
+	 * @param secret The secret of the key, 32 bytes at least
+	 */
+	public synchronized void addKey(int keyId, byte[] secret) {
+		if (keyId < 0 || keyId > 255) {
+			throw new IllegalArgumentException("The key id must be between 0 and 255.");
+		}
+		if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+			throw new IllegalArgumentException("The key secret must have " + MIN_SECRET_LENGTH + " bytes at least.");
+		}
+		Map<Integer, Key> newKeys = new HashMap<>(keys);
+		Key key = new Key(keyId, new SecretKeySpec(secret, ALGORITHM));
+		newKeys.put(keyId, key);
+		keys = Collections.unmodifiableMap(newKeys);
+		if (signingKey != null && signingKey.id == keyId) {
+			signingKey = key;
+		}
+	}
+
+	/**
+	 * Remove a key. The tokens signed with this key are not valid anymore.
+	 *
+	 * @param keyId The id of the key
+	 * @throws IllegalStateException If the key is the signing key
+	 */
+	public synchronized void removeKey(int keyId) {
+		if (signingKey != null && signingKey.id == keyId) {
+			throw new IllegalStateException("The signing key cannot be removed.");
+		}
+		Map<Integer, Key> newKeys = new HashMap<>(keys);
+		newKeys.remove(keyId);
+		keys = Collections.unmodifiableMap(newKeys);
+	}
+
+	/**
+	 * @param keys The keys verifying the tokens, by id, with their secrets encoded in base64
+	 */
+	public synchronized void setKeys(Map<Integer, String> keys) {
+		for (Map.Entry<Integer, String> key : keys.entrySet()) {
+			addKey(key.getKey(), DatatypeConverter.parseBase64Binary(key.getValue()));
+		}
+	}
+
+	/**
+	 * @param signingKeyId The id of the key signing the new tokens, which must have been added
+	 */
+	public synchronized void setSigningKeyId(int signingKeyId) {
+		Key key = keys.get(signingKeyId);
+		if (key == null) {
+			throw new IllegalArgumentException("The key " + signingKeyId + " is unknown.");
+		}
+		signingKey = key;
+	}
+
+	/**
+	 * HMAC key along with its id and a MAC per thread, since MAC instances are not thread safe
+	 */
+	private static final class Key {
+
+		private final int id;
+		private final ThreadLocal<Mac> macs;
+
+		Key(int id, final SecretKeySpec secret) {
+			this.id = id;
+			this.macs = new ThreadLocal<Mac>() {
+				@Override
+				protected Mac initialValue() {
+					try {
+						Mac mac = Mac.getInstance(ALGORITHM);
+						mac.init(secret);
+						return mac;
+					} catch (GeneralSecurityException gse) {
+						throw new IllegalStateException("Unable to initialize " + ALGORITHM + ".", gse);
+					}
+				}
+			};
+			// fail fast on an invalid key
+			macs.get();
+		}
+
+		byte[] sign(byte[] content, int length) {
+			Mac mac = macs.get();
+			mac.update(content, 0, length);
+			return mac.doFinal();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+
+/**
+ * Token details builder for signed access tokens. The signature of the access token is 
+ * verified first, and only the valid tokens are looked up, by id, through the delegate 
+ * builder. Forged and tampered access tokens are considered as not found.
+ * 
+ * @see SignedTokenCodec
+ */
+public class SignedTokenDetailsBuilder implements IOAuthTokenDetailsBuilder {
+
+	private final SignedTokenCodec codec;
+	private final IOAuthSignedTokenDetailsBuilder delegate;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param codec The codec verifying the signature of the access tokens
+	 * @param delegate The builder actually looking up the token details
+	 */
+	public SignedTokenDetailsBuilder(SignedTokenCodec codec, IOAuthSignedTokenDetailsBuilder delegate) {
+		this.codec = codec;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public OAuthTokenDetails buildTokenDetails(String accessToken) {
+		SignedToken signedToken = codec.decode(accessToken);
+		if (signedToken == null) {
+			return null;
+		}
+		return delegate.buildTokenDetails(accessToken, signedToken);
+	}
+}
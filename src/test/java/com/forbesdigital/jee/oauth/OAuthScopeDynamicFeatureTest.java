@@ -0,0 +1,303 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.configuration.OAuthConfigurationException;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthScopeDynamicFeature
+ */
+@RoxableTestClass(tags = {"oAuthScopeDynamicFeature"})
+public class OAuthScopeDynamicFeatureTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private ResourceInfo resourceInfo;
+	@Mock
+	private FeatureContext context;
+	//</editor-fold>
+
+	private OAuthScopeDynamicFeature feature;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		feature = new OAuthScopeDynamicFeature();
+	}
+
+	@Test
+	@RoxableTest(key = "31db61b233d5")
+	public void methodsWithTheSameScopesShouldShareTheirFilter() throws Exception {
+		List<OAuthScopeFilter> filters = configure("read", "readAgain", "write", "unannotated", "unannotatedAgain");
+
+		assertSame(filters.get(0), filters.get(1));
+		assertNotSame(filters.get(0), filters.get(2));
+		assertSame(filters.get(3), filters.get(4));
+		assertEquals(3, feature.getFilterCount());
+	}
+
+	@Test
+	@RoxableTest(key = "e3233e570a93")
+	public void equivalentExpressionsShouldShareTheirFilter() throws Exception {
+		List<OAuthScopeFilter> filters = configure("expression", "equivalentExpression");
+
+		assertSame(filters.get(0), filters.get(1));
+	}
+
+	@Test(expected = OAuthConfigurationException.class)
+	@RoxableTest(key = "ef2b8747315b")
+	public void malformedExpressionsShouldBeRejected() throws Exception {
+		configure("malformedExpression");
+	}
+
+	@Test(expected = OAuthConfigurationException.class)
+	@RoxableTest(key = "e889215d667b")
+	public void expressionsCombinedWithOtherScopesShouldBeRejected() throws Exception {
+		configure("combinedExpression");
+	}
+
+	@Test
+	@RoxableTest(key = "d257bb87d3ad")
+	public void classAndInterfaceAnnotationsShouldBeInheritedAndMerged() throws Exception {
+		OAuthScopeFilter all = configure(Resource.class, "read");
+		OAuthScopeFilter one = configure(Resource.class, "write");
+		OAuthScopeFilter any = configure(Resource.class, "any");
+
+		assertSame(one, configure(SecuredResource.class, "inherited"));
+		assertSame(all, configure(SecuredResource.class, "merged"));
+		assertSame(any, configure(SecuredResource.class, "overridden"));
+		assertSame(all, configure(SecuredSubResource.class, "merged"));
+	}
+
+	@Test
+	@RoxableTest(key = "9553e4d1d071")
+	public void publicMethodsShouldGetNoFilter() throws Exception {
+		OAuthScopeFilter one = configure(Resource.class, "write");
+
+		assertNull(configure(Resource.class, "health"));
+		assertNull(configure(PublicResource.class, "open"));
+		assertSame(one, configure(PublicResource.class, "secured"));
+		assertNotSame(one, configure(Resource.class, "unannotated"));
+	}
+
+	@Test(expected = OAuthConfigurationException.class)
+	@RoxableTest(key = "83706dab20ad")
+	public void publicMethodsWithOtherScopesShouldBeRejected() throws Exception {
+		configure(Resource.class, "conflicting");
+	}
+
+	@Test
+	@RoxableTest(key = "d6455a658d68")
+	public void indexEntriesOfMethodsWhichLostTheirAnnotationsShouldBeIgnored() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(Resource.class.getName() + "#health()" + OAuthScopeIndex.ALL_SUFFIX, "scope1");
+		properties.setProperty(Resource.class.getName() + "#unannotated()" + OAuthScopeIndex.ANY_SUFFIX, "scope1");
+		properties.setProperty(Resource.class.getName() + "#write()" + OAuthScopeIndex.ALL_SUFFIX, "scope1");
+		feature = new OAuthScopeDynamicFeature(loadIndex(properties));
+
+		assertNull(configure(Resource.class, "health"));
+		assertNotSame(configure(Resource.class, "any"), configure(Resource.class, "unannotated"));
+		assertSame(configure(Resource.class, "write"), configure(Resource.class, "write"));
+	}
+
+	@Test
+	@RoxableTest(key = "dcd729e544b2")
+	public void methodsAndClassesMissingFromTheIndexShouldBeReflected() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(PublicResource.class.getName() + OAuthScopeIndex.NONE_SUFFIX, "");
+		properties.setProperty(Resource.class.getName() + "#write()" + OAuthScopeIndex.ALL_SUFFIX, "scope1");
+		feature = new OAuthScopeDynamicFeature(loadIndex(properties));
+
+		OAuthScopeFilter one = configure(Resource.class, "write");
+
+		assertSame(one, configure(PublicResource.class, "secured"));
+		assertSame(one, configure(SecuredResource.class, "inherited"));
+		assertNotSame(configure(Resource.class, "unannotated"), configure(Resource.class, "read"));
+	}
+
+	@Test
+	@RoxableTest(key = "5c4911199578")
+	public void staleIndexEntriesShouldNotRelaxTheScopes() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(Resource.class.getName() + "#read()" + OAuthScopeIndex.ALL_SUFFIX, "scope1");
+		properties.setProperty(Resource.class.getName() + "#expression()" + OAuthScopeIndex.EXPRESSION_SUFFIX, "admin");
+		properties.setProperty(SecuredApi.class.getName() + OAuthScopeIndex.NONE_SUFFIX, "");
+		feature = new OAuthScopeDynamicFeature(loadIndex(properties));
+
+		assertSame(configure(Resource.class, "readAgain"), configure(Resource.class, "read"));
+		assertNotSame(configure(Resource.class, "write"), configure(Resource.class, "read"));
+		assertSame(configure(Resource.class, "equivalentExpression"), configure(Resource.class, "expression"));
+		assertSame(configure(Resource.class, "write"), configure(SecuredResource.class, "inherited"));
+	}
+
+	@Test(expected = OAuthConfigurationException.class)
+	@RoxableTest(key = "e80f57d075ed")
+	public void indexEntriesShouldNotHideAnAddedScopeAnnotation() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(Resource.class.getName() + "#conflicting()" + OAuthScopeIndex.NONE_SUFFIX, "");
+		feature = new OAuthScopeDynamicFeature(loadIndex(properties));
+
+		configure(Resource.class, "conflicting");
+	}
+
+	/**
+	 * @return The index made of these entries
+	 */
+	private OAuthScopeIndex loadIndex(Properties properties) throws IOException {
+		final Path file = Files.createTempFile("scope-index", ".properties");
+		file.toFile().deleteOnExit();
+		try (OutputStream out = Files.newOutputStream(file)) {
+			properties.store(out, null);
+		}
+		return OAuthScopeIndex.load(new ClassLoader(null) {
+			@Override
+			public Enumeration<URL> getResources(String name) throws IOException {
+				return Collections.enumeration(OAuthScopeIndex.INDEX_RESOURCE.equals(name) 
+					? Collections.singletonList(file.toUri().toURL()) : Collections.<URL>emptyList());
+			}
+		});
+	}
+
+	/**
+	 * @return The filter registered for the method, null if there is none
+	 */
+	private OAuthScopeFilter configure(Class<?> resourceClass, String methodName) throws Exception {
+		FeatureContext methodContext = mock(FeatureContext.class);
+		when(resourceInfo.getResourceClass()).thenReturn((Class) resourceClass);
+		when(resourceInfo.getResourceMethod()).thenReturn(resourceClass.getMethod(methodName));
+		feature.configure(resourceInfo, methodContext);
+
+		ArgumentCaptor<OAuthScopeFilter> filter = ArgumentCaptor.forClass(OAuthScopeFilter.class);
+		verify(methodContext, atMost(1)).register(filter.capture());
+		return filter.getAllValues().isEmpty() ? null : filter.getValue();
+	}
+
+	private List<OAuthScopeFilter> configure(String... methodNames) throws Exception {
+		for (String methodName : methodNames) {
+			Method method = Resource.class.getMethod(methodName);
+			when(resourceInfo.getResourceMethod()).thenReturn(method);
+			feature.configure(resourceInfo, context);
+		}
+		ArgumentCaptor<OAuthScopeFilter> filters = ArgumentCaptor.forClass(OAuthScopeFilter.class);
+		verify(context, times(methodNames.length)).register(filters.capture());
+		return filters.getAllValues();
+	}
+
+	/**
+	 * Resource whose methods are configured by the feature
+	 */
+	public static class Resource {
+
+		@AllOAuthScopes({"scope1", "scope2"})
+		public void read() {}
+
+		@AllOAuthScopes({"scope2", "scope1"})
+		public void readAgain() {}
+
+		@AllOAuthScopes({"scope1"})
+		public void write() {}
+
+		public void unannotated() {}
+
+		public void unannotatedAgain() {}
+
+		@OAuthScopes("(scope1 & scope2) | admin")
+		public void expression() {}
+
+		@OAuthScopes("admin | scope2 & (scope1 | admin)")
+		public void equivalentExpression() {}
+
+		@OAuthScopes("(scope1 & scope2")
+		public void malformedExpression() {}
+
+		@OAuthScopes("scope1") @AllOAuthScopes({"scope2"})
+		public void combinedExpression() {}
+
+		@AnyOAuthScopes({"scope1"})
+		public void any() {}
+
+		@NoOAuthScopesRequired
+		public void health() {}
+
+		@NoOAuthScopesRequired @AllOAuthScopes({})
+		public void conflicting() {}
+	}
+
+	/**
+	 * Interface whose annotations are inherited by its implementations
+	 */
+	@AllOAuthScopes({"scope1"})
+	public interface SecuredApi {
+
+		@AllOAuthScopes({"scope2"})
+		void merged();
+
+		void inherited();
+
+		@AnyOAuthScopes({"scope1"})
+		void overridden();
+	}
+
+	/**
+	 * Resource inheriting the annotations of its interface
+	 */
+	public static class SecuredResource implements SecuredApi {
+
+		@Override
+		public void merged() {}
+
+		@Override
+		public void inherited() {}
+
+		@Override
+		public void overridden() {}
+	}
+
+	/**
+	 * Resource inheriting the annotations of its superclass
+	 */
+	public static class SecuredSubResource extends SecuredResource {
+
+		@Override
+		public void merged() {}
+	}
+
+	/**
+	 * Resource whose methods do not require scopes by default
+	 */
+	@NoOAuthScopesRequired
+	public static class PublicResource {
+
+		public void open() {}
+
+		@AllOAuthScopes({"scope1"})
+		public void secured() {}
+	}
+}
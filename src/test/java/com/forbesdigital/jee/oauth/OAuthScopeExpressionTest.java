@@ -0,0 +1,55 @@
+package com.forbesdigital.jee.oauth;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @see OAuthScopeExpression
+ */
+@RoxableTestClass(tags = {"oAuthScopeExpression"})
+public class OAuthScopeExpressionTest {
+
+	@Test
+	@RoxableTest(key = "5aa100b51acf")
+	public void expressionsShouldBeParsedIntoTheirAlternativeTerms() {
+		assertEquals(terms(set("admin"), set("orders:read", "orders:write")),
+			OAuthScopeExpression.parse("(orders:read & orders:write) | admin").getTerms());
+		assertEquals(terms(set("a", "b"), set("a", "c")), OAuthScopeExpression.parse("a & (b | c)").getTerms());
+		assertEquals(terms(set("a")), OAuthScopeExpression.parse("a | a & b | (a)").getTerms());
+		assertEquals(OAuthScopeExpression.parse("b&a|c"), OAuthScopeExpression.parse("c | (a & b)"));
+	}
+
+	@Test
+	@RoxableTest(key = "f8f2e81f86b3")
+	public void malformedExpressionsShouldBeRejected() {
+		for (String expression : Arrays.asList("", "  ", "a &", "| a", "(a | b", "a b", "a & & b", "a)")) {
+			try {
+				OAuthScopeExpression.parse(expression);
+				fail("The expression '" + expression + "' should have been rejected.");
+			} catch (IllegalArgumentException iae) {
+			}
+		}
+		try {
+			OAuthScopeExpression.parse("(a | b) & (c | d) & (e | f) & (g | h) & (i | j) & (k | l) & (m | n)");
+			fail("The expression should have been rejected.");
+		} catch (IllegalArgumentException iae) {
+		}
+	}
+
+	private static List<Set<String>> terms(Set<String>... terms) {
+		return new ArrayList<>(Arrays.asList(terms));
+	}
+
+	private static Set<String> set(String... scopes) {
+		return new TreeSet<>(Arrays.asList(scopes));
+	}
+}
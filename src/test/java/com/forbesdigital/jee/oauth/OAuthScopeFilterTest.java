@@ -219,4 +219,44 @@ public class OAuthScopeFilterTest {
 		}
 	}
 
+	@Test
+	@RoxableTest(key = "fa336788ad38")
+	public void filterWhereExpressionMatchesOneAlternative() {
+		authorities.add(basicGrantedAuthoriry);
+		authorities.add(trustedGrantedAuthoriry);
+
+		oAuthScopefilter = new OAuthScopeFilter(OAuthScopeExpression.parse(
+			"(" + BASIC_CLIENT_SCOPE + " & " + ADVANCED_CLIENT_SCOPE + ") | (" + BASIC_CLIENT_SCOPE + " & " + TRUSTED_CLIENT_SCOPE + ")"));
+
+		when(basicGrantedAuthoriry.getAuthority()).thenReturn(BASIC_CLIENT_SCOPE);
+		when(trustedGrantedAuthoriry.getAuthority()).thenReturn(TRUSTED_CLIENT_SCOPE);
+		when(authentication.getAuthorities()).thenReturn((Collection) authorities);
+
+		try {
+			oAuthScopefilter.filter(null);
+		} catch (IOException ex) {
+			fail("No exception should have been thrown.");
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "5406a65cb3eb")
+	public void filterWhereExpressionDoesNotMatch() {
+		authorities.add(basicGrantedAuthoriry);
+		authorities.add(trustedGrantedAuthoriry);
+
+		oAuthScopefilter = new OAuthScopeFilter(OAuthScopeExpression.parse(
+			BASIC_CLIENT_SCOPE + " & (" + ADVANCED_CLIENT_SCOPE + " | " + SUPER_ADVANCED_CLIENT_SCOPE + ")"));
+
+		when(basicGrantedAuthoriry.getAuthority()).thenReturn(BASIC_CLIENT_SCOPE);
+		when(trustedGrantedAuthoriry.getAuthority()).thenReturn(TRUSTED_CLIENT_SCOPE);
+		when(authentication.getAuthorities()).thenReturn((Collection) authorities);
+
+		try {
+			oAuthScopefilter.filter(null);
+			fail("Exception should have been thrown.");
+		} catch (IOException ex) {
+
+		}
+	}
 }
@@ -0,0 +1,80 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthScopeHierarchy
+ */
+@RoxableTestClass(tags = {"oAuthScopeHierarchy"})
+public class OAuthScopeHierarchyTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final List<String> SCOPES = Arrays.asList("orders", "orders:*", "orders:read", "orders:read:history",
+		"orders:write", "ordersArchive", "users:read");
+	//</editor-fold>
+
+	private final OAuthScopeHierarchy hierarchy = new OAuthScopeHierarchy(SCOPES, ":");
+
+	@Test
+	@RoxableTest(key = "aeea3e073648")
+	public void scopesShouldImplyTheScopesBelowThem() {
+		assertEquals(set("orders", "orders:*", "orders:read", "orders:read:history", "orders:write"), hierarchy.getImpliedScopes("orders"));
+		assertEquals(set("orders:*", "orders:read", "orders:read:history", "orders:write"), hierarchy.getImpliedScopes("orders:*"));
+		assertEquals(set("orders:read", "orders:read:history"), hierarchy.getImpliedScopes("orders:read"));
+		assertEquals(set("ordersArchive"), hierarchy.getImpliedScopes("ordersArchive"));
+		assertEquals(set("users", "users:read"), hierarchy.getImpliedScopes("users"));
+		assertEquals(set("unknown"), hierarchy.getImpliedScopes("unknown"));
+		Set<String> all = new HashSet<>(SCOPES);
+		all.add("*");
+		assertEquals(all, hierarchy.getImpliedScopes("*"));
+	}
+
+	@Test
+	@RoxableTest(key = "4134c10a75f6")
+	public void scopesShouldBeImpliedByTheirAncestors() {
+		assertTrue(hierarchy.implies(set("orders"), "orders:read:history"));
+		assertTrue(hierarchy.implies(set("orders:read:*"), "orders:read:history"));
+		assertTrue(hierarchy.implies(set("*"), "users:read"));
+		assertTrue(hierarchy.implies(set("users:read"), "users:read"));
+		assertFalse(hierarchy.implies(set("orders:read"), "orders"));
+		assertFalse(hierarchy.implies(set("orders:*"), "orders"));
+		assertFalse(hierarchy.implies(set("orders"), "ordersArchive"));
+	}
+
+	@Test
+	@RoxableTest(key = "5987c3e457b5")
+	public void grantedScopeSetsShouldBeExpandedToTheScopesTheyImply() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(SCOPES, hierarchy);
+
+		OAuthScopeSet granted = registry.toAuthoritiesScopeSet(Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("orders:*")));
+
+		assertTrue(granted.containsAll(registry.toScopeSet(Arrays.asList("orders:read:history", "orders:write"))));
+		assertFalse(granted.containsAny(registry.toScopeSet(Arrays.asList("orders", "ordersArchive"))));
+	}
+
+	@Test
+	@RoxableTest(key = "8d11a0015cae")
+	public void grantedScopeSetsShouldNotBeExpandedWithoutHierarchy() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(SCOPES);
+
+		OAuthScopeSet granted = registry.toAuthoritiesScopeSet(Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("orders")));
+
+		assertFalse(granted.containsAny(registry.toScopeSet(Arrays.asList("orders:read", "orders:*"))));
+	}
+
+	private static Set<String> set(String... scopes) {
+		return new HashSet<>(Arrays.asList(scopes));
+	}
+}
@@ -0,0 +1,107 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthScopeRegistry
+ * @see OAuthScopeSet
+ */
+@RoxableTestClass(tags = {"oAuthScopeRegistry"})
+public class OAuthScopeRegistryTest {
+
+	@Test
+	@RoxableTest(key = "15ac7c569dae")
+	public void configuredScopesShouldGetTheFirstIdsInTheirNaturalOrder() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(Arrays.asList("b", "c", "a"));
+
+		assertEquals(0, registry.getId("a"));
+		assertEquals(2, registry.getId("c"));
+		assertEquals(3, registry.getId("unknown"));
+		assertEquals(3, registry.getId("unknown"));
+		assertEquals("unknown", registry.getScope(3));
+		assertEquals(4, registry.size());
+	}
+
+	@Test
+	@RoxableTest(key = "6ae568f21898")
+	public void scopeSetsShouldBeComparedBeyondSixtyFourScopes() {
+		List<String> scopes = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			scopes.add(String.format("scope%03d", i));
+		}
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(scopes);
+
+		OAuthScopeSet granted = registry.toScopeSet(Arrays.asList("scope001", "scope150", "scope199"));
+
+		assertTrue(granted.containsAll(registry.toScopeSet(Arrays.asList("scope150", "scope001"))));
+		assertFalse(granted.containsAll(registry.toScopeSet(Arrays.asList("scope150", "scope002"))));
+		assertTrue(granted.containsAny(registry.toScopeSet(Arrays.asList("scope100", "scope199"))));
+		assertFalse(granted.containsAny(registry.toScopeSet(Arrays.asList("scope100", "scope002"))));
+		assertTrue(granted.containsAll(registry.toScopeSet(Collections.<String>emptyList())));
+		assertFalse(registry.toScopeSet(Arrays.asList("scope001")).containsAll(granted));
+		assertTrue(granted.contains(registry.getId("scope150")));
+	}
+
+	@Test
+	@RoxableTest(key = "0197917b2a48")
+	public void equalScopeSetsShouldBeEqualWhateverTheirLength() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(Arrays.asList("a", "b"));
+		OAuthScopeSet first = registry.toScopeSet(Arrays.asList("a", "b"));
+		OAuthScopeSet second = new OAuthScopeSet(registry, new long[] {3L, 0L});
+
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertNotEquals(first, new OAuthScopeRegistry(Arrays.asList("a", "b")).toScopeSet(Arrays.asList("a", "b")));
+	}
+
+	@Test
+	@RoxableTest(key = "b61fe58a1a44")
+	public void tokenDetailsShouldKeepTheirScopeSetForTheSameRegistry() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(Arrays.asList("a", "b"));
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, "accessToken", new Date(), "clientKey", null,
+			Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("b")), "clientRole", null);
+
+		OAuthScopeSet scopeSet = tokenDetails.getScopeSet(registry);
+
+		assertSame(scopeSet, tokenDetails.getScopeSet(registry));
+		assertTrue(scopeSet.contains(registry.getId("b")));
+		assertFalse(scopeSet.contains(registry.getId("a")));
+	}
+
+	@Test
+	@RoxableTest(key = "48182372abb2")
+	public void tokenDetailsShouldKeepTheirScopeSetForEachTenantRegistry() {
+		OAuthScopeRegistry firstRegistry = new OAuthScopeRegistry(Arrays.asList("a", "b"));
+		OAuthScopeRegistry secondRegistry = new OAuthScopeRegistry(Arrays.asList("b", "c"));
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, "accessToken", new Date(), "clientKey", null,
+			Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("b")), "clientRole", null);
+
+		OAuthScopeSet firstScopeSet = tokenDetails.getScopeSet(firstRegistry);
+		OAuthScopeSet secondScopeSet = tokenDetails.getScopeSet(secondRegistry);
+
+		assertSame(firstScopeSet, tokenDetails.getScopeSet(firstRegistry));
+		assertSame(secondScopeSet, tokenDetails.getScopeSet(secondRegistry));
+
+		// a reloaded registry takes over the slot of the registry it replaces
+		OAuthScopeRegistry reloadedRegistry = new OAuthScopeRegistry(Arrays.asList("a", "b", "d"), null, firstRegistry);
+		assertEquals(firstRegistry.getOrdinal(), reloadedRegistry.getOrdinal());
+		assertNotEquals(firstScopeSet, tokenDetails.getScopeSet(reloadedRegistry));
+		assertSame(secondScopeSet, tokenDetails.getScopeSet(secondRegistry));
+	}
+}
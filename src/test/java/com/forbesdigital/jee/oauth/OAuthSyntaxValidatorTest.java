@@ -0,0 +1,54 @@
+package com.forbesdigital.jee.oauth;
+
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthSyntaxValidator
+ */
+@RoxableTestClass(tags = {"oAuthSyntaxValidator"})
+public class OAuthSyntaxValidatorTest {
+
+	@Test
+	@RoxableTest(key = "2555463a87ab")
+	public void accessTokenCharactersShouldMatchTheTokenPattern() {
+		for (char c = 0; c < 256; c++) {
+			String accessToken = String.valueOf(c);
+			assertEquals("Character " + (int) c, accessToken.matches(IOAuthToken.TOKEN_PATTERN), OAuthSyntaxValidator.isValidAccessToken(accessToken, 0));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "9ba020858403")
+	public void accessTokenLengthShouldBeEnforcedWhenExpected() {
+		assertTrue(OAuthSyntaxValidator.isValidAccessToken("aZ09-._~+/bcdefghijklm", IOAuthToken.TOKEN_LENGTH));
+		assertFalse(OAuthSyntaxValidator.isValidAccessToken("aZ09-._~+/bcdefghijkl", IOAuthToken.TOKEN_LENGTH));
+		assertFalse(OAuthSyntaxValidator.isValidAccessToken("aZ09-._~+/bcdefghijklmn", IOAuthToken.TOKEN_LENGTH));
+		assertTrue(OAuthSyntaxValidator.isValidAccessToken("aZ09", 0));
+		assertFalse(OAuthSyntaxValidator.isValidAccessToken(null, 0));
+	}
+
+	@Test
+	@RoxableTest(key = "03b52a5f3496")
+	public void scopeCharactersShouldMatchTheScopePattern() {
+		for (char c = 0; c < 256; c++) {
+			String scope = String.valueOf(c);
+			assertEquals("Character " + (int) c, scope.matches(IOAuthToken.SCOPE_PATTERN), OAuthSyntaxValidator.isValidScope(scope));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "c80c5f3ded06")
+	public void scopesSeparatedBySpacesShouldBeValid() {
+		assertTrue(OAuthSyntaxValidator.isValidScope("scope:read scope:write"));
+		assertTrue(OAuthSyntaxValidator.isValidScope(""));
+		assertFalse(OAuthSyntaxValidator.isValidScope("scope:read \"scope:write\""));
+		assertFalse(OAuthSyntaxValidator.isValidScope(null));
+	}
+}
@@ -0,0 +1,121 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthConfigurationFilePoller
+ */
+@RoxableTestClass(tags = {"oAuthConfigurationFilePoller"})
+public class OAuthConfigurationFilePollerTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthConfiguration configuration;
+	@Mock
+	private IOAuthConfiguration reloadedConfiguration;
+	@Mock
+	private IOAuthClientRole clientRole;
+	@Mock
+	private IOAuthConfigurationLoader loader;
+	//</editor-fold>
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+
+		when(reloadedConfiguration.getAllScopes()).thenReturn(Collections.singleton("read"));
+		when(reloadedConfiguration.getAllGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(reloadedConfiguration.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS)).thenReturn(Collections.singleton("read"));
+		when(reloadedConfiguration.getClientRoleNames()).thenReturn(Collections.singleton("role"));
+		when(reloadedConfiguration.getClientRole("role")).thenReturn(clientRole);
+		when(clientRole.getAllowedScopes()).thenReturn(Collections.singleton("read"));
+		when(clientRole.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(clientRole.getTokenLifetime()).thenReturn(3600);
+
+		file = File.createTempFile("oauth-configuration", ".properties").toPath();
+		OAuthContext.registerConfiguration(configuration);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		OAuthContext.unregisterConfiguration();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	@RoxableTest(key = "4b67048d9ce1")
+	public void configurationShouldBeReloadedOnlyWhenTheFileChanges() throws IOException {
+		OAuthConfigurationFilePoller poller = new OAuthConfigurationFilePoller(file, loader);
+		when(loader.load(file)).thenReturn(reloadedConfiguration);
+
+		assertFalse(poller.poll());
+		verify(loader, never()).load(any(Path.class));
+
+		Files.write(file, "scopes=read".getBytes(StandardCharsets.UTF_8));
+		assertTrue(poller.poll());
+		assertFalse(poller.poll());
+
+		assertSame(reloadedConfiguration, OAuthContext.getConfig());
+		verify(loader, times(1)).load(file);
+	}
+
+	@Test
+	@RoxableTest(key = "02c9659080f7")
+	public void invalidFileShouldBeReportedOnceAndTheConfigurationKept() throws IOException {
+		OAuthConfigurationFilePoller poller = new OAuthConfigurationFilePoller(file, loader);
+		when(loader.load(file)).thenReturn(reloadedConfiguration);
+		when(clientRole.getTokenLifetime()).thenReturn(null);
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+		try {
+			poller.poll();
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+		}
+
+		assertFalse(poller.poll());
+		assertSame(configuration, OAuthContext.getConfig());
+	}
+
+	@Test
+	@RoxableTest(key = "810d9f2ea0dc")
+	public void missingFileShouldBeIgnoredUntilItExists() throws IOException {
+		Files.delete(file);
+		OAuthConfigurationFilePoller poller = new OAuthConfigurationFilePoller(file, loader);
+		when(loader.load(file)).thenReturn(reloadedConfiguration);
+
+		assertFalse(poller.poll());
+		assertFalse(poller.poll());
+		verify(loader, never()).load(any(Path.class));
+
+		Files.write(file, "scopes=read".getBytes(StandardCharsets.UTF_8));
+		assertTrue(poller.poll());
+		assertSame(reloadedConfiguration, OAuthContext.getConfig());
+	}
+}
@@ -0,0 +1,116 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.forbesdigital.jee.oauth.OAuthScopeHierarchy;
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthConfigurationSnapshot
+ */
+@RoxableTestClass(tags = {"oAuthConfigurationSnapshot"})
+public class OAuthConfigurationSnapshotTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final Set<String> ALL_SCOPES = new HashSet<>(Arrays.asList("orders", "orders:read", "orders:write", "users"));
+	private static final String TRUSTED_ROLE = "trusted";
+	private static final String BASIC_ROLE = "basic";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthConfiguration configuration;
+	@Mock
+	private IOAuthClientRole trustedRole;
+	@Mock
+	private IOAuthClientRole basicRole;
+	//</editor-fold>
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+
+		when(configuration.getAllScopes()).thenReturn(ALL_SCOPES);
+		when(configuration.getAllGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(configuration.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS)).thenReturn(new HashSet<>(Arrays.asList("orders:read", "users")));
+		when(configuration.getAllowedScopes(EOAuthGrantType.RESOURCE_OWNER_PASSWORD_CREDENTIALS)).thenReturn(ALL_SCOPES);
+		when(configuration.getClientRoleNames()).thenReturn(Collections.singleton(TRUSTED_ROLE));
+		when(configuration.getClientRole(TRUSTED_ROLE)).thenReturn(trustedRole);
+		when(configuration.getClientRole(BASIC_ROLE)).thenReturn(basicRole);
+
+		when(trustedRole.getName()).thenReturn(TRUSTED_ROLE);
+		when(trustedRole.getTokenLifetime()).thenReturn(3600);
+		when(trustedRole.getAllowedScopes()).thenReturn(new HashSet<>(Arrays.asList("orders", "users")));
+		when(trustedRole.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.allOf(EOAuthGrantType.class));
+		when(basicRole.getName()).thenReturn(BASIC_ROLE);
+		when(basicRole.getAllowedScopes()).thenReturn(Collections.singleton("orders:read"));
+		when(basicRole.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+	}
+
+	@Test
+	@RoxableTest(key = "f00a07edff99")
+	public void grantTypesAndScopesShouldBeCompiledPerRole() {
+		OAuthConfigurationSnapshot snapshot = new OAuthConfigurationSnapshot(configuration, new OAuthScopeRegistry(ALL_SCOPES));
+
+		assertTrue(snapshot.isGrantTypeSupported(EOAuthGrantType.CLIENT_CREDENTIALS));
+		assertFalse(snapshot.isGrantTypeSupported(EOAuthGrantType.RESOURCE_OWNER_PASSWORD_CREDENTIALS));
+		assertFalse(snapshot.isGrantTypeSupported(null));
+		assertTrue(snapshot.isValidScope(snapshot.getScopeId("users")));
+		assertFalse(snapshot.isValidScope(snapshot.getScopeId("unknown")));
+
+		OAuthConfigurationSnapshot.Role role = snapshot.getRole(TRUSTED_ROLE);
+		assertEquals(Integer.valueOf(3600), role.getTokenLifetime());
+		assertTrue(role.isGrantTypeAllowed(EOAuthGrantType.RESOURCE_OWNER_PASSWORD_CREDENTIALS));
+		assertTrue(role.getAllowedScopes().contains(snapshot.getScopeId("orders")));
+		assertFalse(role.getAllowedScopes().contains(snapshot.getScopeId("orders:read")));
+		assertTrue(role.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS).contains(snapshot.getScopeId("users")));
+		assertFalse(role.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS).contains(snapshot.getScopeId("orders")));
+		assertTrue(role.getAllowedScopes(null).isEmpty());
+	}
+
+	@Test
+	@RoxableTest(key = "adbfb0a3d87a")
+	public void rolesShouldBeCompiledOnceWhenFirstUsed() {
+		OAuthConfigurationSnapshot snapshot = new OAuthConfigurationSnapshot(configuration, new OAuthScopeRegistry(ALL_SCOPES));
+
+		OAuthConfigurationSnapshot.Role role = snapshot.getRole(BASIC_ROLE);
+
+		assertSame(role, snapshot.getRole(BASIC_ROLE));
+		assertTrue(role.isGrantTypeAllowed(EOAuthGrantType.CLIENT_CREDENTIALS));
+		assertFalse(role.isGrantTypeAllowed(EOAuthGrantType.RESOURCE_OWNER_PASSWORD_CREDENTIALS));
+		assertNull(snapshot.getRole("unknown"));
+		verify(configuration, times(1)).getClientRole(BASIC_ROLE);
+		verify(configuration, times(1)).getClientRole(TRUSTED_ROLE);
+	}
+
+	@Test
+	@RoxableTest(key = "7638769f6f9f")
+	public void allowedScopesShouldIncludeTheScopesTheyImply() {
+		OAuthScopeRegistry registry = new OAuthScopeRegistry(ALL_SCOPES, new OAuthScopeHierarchy(ALL_SCOPES, ":"));
+		OAuthConfigurationSnapshot snapshot = new OAuthConfigurationSnapshot(configuration, registry);
+
+		OAuthConfigurationSnapshot.Role role = snapshot.getRole(TRUSTED_ROLE);
+
+		assertTrue(role.getAllowedScopes().contains(snapshot.getScopeId("orders:write")));
+		assertTrue(role.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS).contains(snapshot.getScopeId("orders:read")));
+		assertFalse(role.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS).contains(snapshot.getScopeId("orders:write")));
+	}
+}
@@ -2,13 +2,25 @@ package com.forbesdigital.jee.oauth.configuration;
 
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * @see OAuthContext
@@ -22,6 +34,12 @@ public class OAuthContextTest {
 	private IOAuthConfiguration configuration;
 	@Mock
 	private IOAuthConfiguration secondConfiguration;
+	@Mock
+	private IOAuthClientRole clientRole;
+	@Mock
+	private IOAuthClientRole secondClientRole;
+	@Mock
+	private IOAuthConfigurationReloadListener reloadListener;
 	//</editor-fold>
 
 	@Before
@@ -31,6 +49,7 @@ public class OAuthContextTest {
 	
 	@After
 	public void tearDown() {
+		OAuthContext.removeReloadListener(reloadListener);
 		OAuthContext.unregisterConfiguration();
 	}
 
@@ -76,4 +95,82 @@ public class OAuthContextTest {
 			
 		}
 	}
+
+	@Test
+	@RoxableTest(key = "3ac9486cb490")
+	public void reloadedConfigurationShouldBePublishedWithItsSnapshot() {
+		stubConfiguration(configuration, clientRole, 3600);
+		stubConfiguration(secondConfiguration, secondClientRole, 60);
+		OAuthContext.registerConfiguration(configuration);
+		OAuthConfigurationSnapshot snapshot = OAuthContext.getSnapshot();
+		OAuthContext.addReloadListener(reloadListener);
+
+		OAuthContext.reloadConfiguration(secondConfiguration);
+
+		OAuthConfigurationSnapshot reloadedSnapshot = OAuthContext.getSnapshot();
+		assertSame(secondConfiguration, OAuthContext.getConfig());
+		assertNotSame(snapshot, reloadedSnapshot);
+		assertEquals(Integer.valueOf(60), reloadedSnapshot.getRole("role").getTokenLifetime());
+		assertSame(snapshot.getScopeRegistry(), OAuthContext.getScopeRegistry());
+		verify(reloadListener).configurationReloaded(OAuthContext.getTenant(), configuration);
+		assertNull(OAuthContext.getTenant().getName());
+	}
+
+	@Test
+	@RoxableTest(key = "7ae6e1bdce2d")
+	public void invalidConfigurationShouldNotBeReloaded() {
+		stubConfiguration(configuration, clientRole, 3600);
+		stubConfiguration(secondConfiguration, secondClientRole, 60);
+		when(secondClientRole.getAllowedScopes()).thenReturn(Collections.singleton("unknown"));
+		OAuthContext.registerConfiguration(configuration);
+		OAuthContext.addReloadListener(reloadListener);
+
+		try {
+			OAuthContext.reloadConfiguration(secondConfiguration);
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+			assertTrue(exception.getMessage().contains("'unknown'"));
+		}
+
+		assertSame(configuration, OAuthContext.getConfig());
+		verifyZeroInteractions(reloadListener);
+	}
+
+	@Test
+	@RoxableTest(key = "951e49665789")
+	public void scopeRegistryShouldBeReplacedWhenTheScopesChange() {
+		stubConfiguration(configuration, clientRole, 3600);
+		stubConfiguration(secondConfiguration, secondClientRole, 60);
+		when(secondConfiguration.getAllScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
+		OAuthContext.registerConfiguration(configuration);
+		OAuthConfigurationSnapshot snapshot = OAuthContext.getSnapshot();
+
+		OAuthContext.reloadConfiguration(secondConfiguration);
+
+		assertNotSame(snapshot.getScopeRegistry(), OAuthContext.getScopeRegistry());
+		assertTrue(OAuthContext.getSnapshot().isValidScope(OAuthContext.getSnapshot().getScopeId("admin")));
+	}
+
+	@Test
+	@RoxableTest(key = "dd6d7baa8abe")
+	public void reloadConfigurationWhenNoConfigurationIsRegistered() {
+		stubConfiguration(secondConfiguration, secondClientRole, 60);
+		try {
+			OAuthContext.reloadConfiguration(secondConfiguration);
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+		}
+	}
+
+	private void stubConfiguration(IOAuthConfiguration config, IOAuthClientRole role, int tokenLifetime) {
+		when(config.getAllScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(config.getAllGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(config.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS)).thenReturn(Collections.singleton("read"));
+		when(config.getClientRoleNames()).thenReturn(Collections.singleton("role"));
+		when(config.getClientRole("role")).thenReturn(role);
+		when(role.getName()).thenReturn("role");
+		when(role.getAllowedScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(role.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(role.getTokenLifetime()).thenReturn(tokenLifetime);
+	}
 }
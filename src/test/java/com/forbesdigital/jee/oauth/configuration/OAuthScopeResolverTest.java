@@ -0,0 +1,107 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.forbesdigital.jee.oauth.OAuthScopeRegistry;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthScopeResolver
+ */
+@RoxableTestClass(tags = {"oAuthScopeResolver"})
+public class OAuthScopeResolverTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final Set<String> ALL_SCOPES = new HashSet<>(Arrays.asList("read", "write", "admin"));
+	private static final String ROLE = "role";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthConfiguration configuration;
+	@Mock
+	private IOAuthClientRole clientRole;
+	//</editor-fold>
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+
+		when(configuration.getAllScopes()).thenReturn(ALL_SCOPES);
+		when(configuration.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS)).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(configuration.getClientRole(ROLE)).thenReturn(clientRole);
+		when(clientRole.getAllowedScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write", "admin")));
+		when(clientRole.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+	}
+
+	@After
+	public void tearDown() {
+		OAuthContext.unregisterConfiguration();
+	}
+
+	@Test
+	@RoxableTest(key = "132961187a05")
+	public void resolutionsShouldBeRememberedPerRoleGrantTypeAndScope() {
+		OAuthConfigurationSnapshot snapshot = new OAuthConfigurationSnapshot(configuration, new OAuthScopeRegistry(ALL_SCOPES));
+		OAuthScopeResolver resolver = snapshot.getScopeResolver();
+		OAuthConfigurationSnapshot.Role role = snapshot.getRole(ROLE);
+
+		OAuthScopeResolver.Resolution resolution = resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "write  read");
+
+		assertEquals(Arrays.asList("read", "write"), Arrays.asList(resolution.getScopes().toArray()));
+		assertNull(resolution.getError());
+		assertSame(resolution, resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "write  read"));
+		assertNotSame(resolution, resolver.resolve(role, EOAuthGrantType.RESOURCE_OWNER_PASSWORD_CREDENTIALS, "write  read"));
+		assertEquals(2, resolver.size());
+	}
+
+	@Test
+	@RoxableTest(key = "c073779d0883")
+	public void refusedScopesShouldBeRememberedWithTheirReason() {
+		OAuthConfigurationSnapshot snapshot = new OAuthConfigurationSnapshot(configuration, new OAuthScopeRegistry(ALL_SCOPES));
+		OAuthScopeResolver resolver = snapshot.getScopeResolver();
+		OAuthConfigurationSnapshot.Role role = snapshot.getRole(ROLE);
+
+		assertEquals("The requested scope is malformed.", resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "read \"write\"").getError());
+		assertEquals("The requested scope is invalid.", resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "read unknown").getError());
+		assertEquals("The requested scope requires a different grant_type.", resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "admin").getError());
+		assertNull(resolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "admin").getScopes());
+
+		OAuthScopeResolver boundedResolver = new OAuthScopeResolver(snapshot, 1);
+		boundedResolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "read");
+		boundedResolver.resolve(role, EOAuthGrantType.CLIENT_CREDENTIALS, "write");
+		assertEquals(1, boundedResolver.size());
+	}
+
+	@Test
+	@RoxableTest(key = "9080cc3526f1")
+	public void resolutionsShouldBeForgottenWhenTheConfigurationChanges() {
+		OAuthContext.registerConfiguration(configuration);
+		OAuthScopeResolver resolver = OAuthContext.getSnapshot().getScopeResolver();
+		assertSame(resolver, OAuthContext.getSnapshot().getScopeResolver());
+
+		OAuthContext.unregisterConfiguration();
+		when(clientRole.getAllowedScopes()).thenReturn(Collections.singleton("read"));
+		OAuthContext.registerConfiguration(configuration);
+
+		OAuthConfigurationSnapshot snapshot = OAuthContext.getSnapshot();
+		assertNotSame(resolver, snapshot.getScopeResolver());
+		assertEquals("The requested scope exceeds the scope granted by the resource owner.",
+			snapshot.getScopeResolver().resolve(snapshot.getRole(ROLE), EOAuthGrantType.CLIENT_CREDENTIALS, "write").getError());
+	}
+}
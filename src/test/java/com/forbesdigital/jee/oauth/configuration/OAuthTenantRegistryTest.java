@@ -0,0 +1,168 @@
+package com.forbesdigital.jee.oauth.configuration;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthTenantRegistry
+ */
+@RoxableTestClass(tags = {"oAuthTenantRegistry"})
+public class OAuthTenantRegistryTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final String ACME = "acme";
+	private static final String GLOBEX = "globex";
+	private static final String ROLE = "role";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthConfiguration acmeConfiguration;
+	@Mock
+	private IOAuthConfiguration globexConfiguration;
+	@Mock
+	private IOAuthClientRole acmeRole;
+	@Mock
+	private IOAuthClientRole globexRole;
+	@Mock
+	private HttpServletRequest request;
+	@Mock
+	private IOAuthConfigurationReloadListener reloadListener;
+	//</editor-fold>
+
+	private OAuthTenantRegistry registry;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+
+		stubConfiguration(acmeConfiguration, acmeRole, 3600);
+		stubConfiguration(globexConfiguration, globexRole, 60);
+
+		registry = new OAuthTenantRegistry();
+		registry.register(ACME, acmeConfiguration, null);
+		registry.register(GLOBEX, globexConfiguration, null);
+		registry.mapHost("Auth.Acme.com", ACME);
+		registry.mapPathPrefix("/tenants/globex", GLOBEX);
+
+		when(request.getContextPath()).thenReturn("/app");
+	}
+
+	@After
+	public void tearDown() {
+		OAuthContext.bindTenant(null);
+		OAuthContext.removeReloadListener(reloadListener);
+	}
+
+	@Test
+	@RoxableTest(key = "f302fe1a112e")
+	public void tenantShouldBeResolvedFromTheHostThenFromThePath() {
+		when(request.getServerName()).thenReturn("auth.acme.com");
+		when(request.getRequestURI()).thenReturn("/app/tenants/globex/token");
+		assertSame(registry.getTenant(ACME), registry.resolve(request));
+
+		when(request.getServerName()).thenReturn("localhost");
+		assertSame(registry.getTenant(GLOBEX), registry.resolve(request));
+
+		when(request.getRequestURI()).thenReturn("/app/tenants/globex");
+		assertSame(registry.getTenant(GLOBEX), registry.resolve(request));
+
+		when(request.getRequestURI()).thenReturn("/app/tenants/globexcorp/token");
+		assertNull(registry.resolve(request));
+	}
+
+	@Test
+	@RoxableTest(key = "559b8d271758")
+	public void boundTenantShouldTakePrecedenceOverTheGlobalConfiguration() {
+		OAuthTenant acme = registry.getTenant(ACME);
+
+		assertNull(OAuthContext.bindTenant(acme));
+
+		assertSame(acmeConfiguration, OAuthContext.getConfig());
+		assertSame(acme.getSnapshot(), OAuthContext.getSnapshot());
+		assertSame(acme.getScopeRegistry(), OAuthContext.getScopeRegistry());
+		assertNotSame(acme.getScopeRegistry(), registry.getTenant(GLOBEX).getScopeRegistry());
+		assertSame(acme, OAuthContext.bindTenant(null));
+
+		try {
+			OAuthContext.getConfig();
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "572a098de950")
+	public void tenantShouldBeReloadedWithoutAffectingTheOtherTenants() {
+		OAuthTenant acme = registry.getTenant(ACME);
+		OAuthTenant globex = registry.getTenant(GLOBEX);
+		when(acmeRole.getAllowedScopes()).thenReturn(Collections.singleton("read"));
+		OAuthContext.addReloadListener(reloadListener);
+
+		OAuthTenant reloadedAcme = registry.reload(ACME, acmeConfiguration);
+
+		verify(reloadListener).configurationReloaded(reloadedAcme, acmeConfiguration);
+		assertEquals(ACME, reloadedAcme.getName());
+		assertSame(reloadedAcme, registry.getTenant(ACME));
+		assertSame(globex, registry.getTenant(GLOBEX));
+		assertSame(acme.getScopeRegistry(), reloadedAcme.getScopeRegistry());
+		assertTrue(acme.getSnapshot().getRole(ROLE).getAllowedScopes().contains(acme.getSnapshot().getScopeId("write")));
+		assertFalse(reloadedAcme.getSnapshot().getRole(ROLE).getAllowedScopes().contains(reloadedAcme.getSnapshot().getScopeId("write")));
+	}
+
+	@Test
+	@RoxableTest(key = "147e0604e6ea")
+	public void tenantsShouldBeRegisteredOnceWithAValidConfiguration() {
+		try {
+			registry.register(ACME, globexConfiguration, null);
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+		}
+
+		when(globexRole.getTokenLifetime()).thenReturn(0);
+		try {
+			registry.register("initech", globexConfiguration, null);
+			fail("Exception should have been thrown.");
+		} catch (OAuthConfigurationException exception) {
+			assertEquals("The token lifetime of the client role 'role' must be strictly positive.", exception.getMessage());
+		}
+
+		try {
+			registry.mapHost("auth.initech.com", "initech");
+			fail("Exception should have been thrown.");
+		} catch (IllegalArgumentException exception) {
+		}
+	}
+
+	private void stubConfiguration(IOAuthConfiguration config, IOAuthClientRole role, int tokenLifetime) {
+		when(config.getAllScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(config.getAllGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(config.getAllowedScopes(EOAuthGrantType.CLIENT_CREDENTIALS)).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(config.getClientRoleNames()).thenReturn(Collections.singleton(ROLE));
+		when(config.getClientRole(ROLE)).thenReturn(role);
+		when(role.getName()).thenReturn(ROLE);
+		when(role.getAllowedScopes()).thenReturn(new HashSet<>(Arrays.asList("read", "write")));
+		when(role.getAllowedOAuthGrantTypes()).thenReturn(EnumSet.of(EOAuthGrantType.CLIENT_CREDENTIALS));
+		when(role.getTokenLifetime()).thenReturn(tokenLifetime);
+	}
+}
@@ -0,0 +1,208 @@
+package com.forbesdigital.jee.oauth.processing;
+
+import com.forbesdigital.jee.oauth.AllOAuthScopes;
+import com.forbesdigital.jee.oauth.OAuthScopeExpression;
+import com.forbesdigital.jee.oauth.OAuthScopeIndex;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthScopeIndexProcessor
+ */
+@RoxableTestClass(tags = {"oAuthScopeIndexProcessor"})
+public class OAuthScopeIndexProcessorTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final String RESOURCE_SOURCE = ""
+		+ "package test;\n"
+		+ "import com.forbesdigital.jee.oauth.AllOAuthScopes;\n"
+		+ "import com.forbesdigital.jee.oauth.AnyOAuthScopes;\n"
+		+ "import com.forbesdigital.jee.oauth.OAuthScopes;\n"
+		+ "public class Resource {\n"
+		+ "  public static class Item {}\n"
+		+ "  @AllOAuthScopes({\"orders:read\", \"orders:write\"}) @AnyOAuthScopes({}) public void update(String id, Item[] items, int count) {}\n"
+		+ "  @AnyOAuthScopes({\"orders:read\", \"admin\"}) public <T extends Number> void list(java.util.List<T> filters) {}\n"
+		+ "  @OAuthScopes(\"orders:write & (orders:read | admin)\") public void delete(String id) {}\n"
+		+ "  public void unannotated() {}\n"
+		+ "}\n";
+
+	private static final String PUBLIC_RESOURCE_SOURCE = ""
+		+ "package test;\n"
+		+ "import com.forbesdigital.jee.oauth.AnyOAuthScopes;\n"
+		+ "import com.forbesdigital.jee.oauth.NoOAuthScopesRequired;\n"
+		+ "@NoOAuthScopesRequired public class Resource {\n"
+		+ "  @AnyOAuthScopes({\"admin\"}) public static class Admin {}\n"
+		+ "  @NoOAuthScopesRequired public void health() {}\n"
+		+ "  public void open() {}\n"
+		+ "}\n";
+
+	private static final String UNANNOTATED_RESOURCE_SOURCE = ""
+		+ "package test;\n"
+		+ "public class Resource {\n"
+		+ "  public void update(String id) {}\n"
+		+ "}\n";
+	//</editor-fold>
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("oauth-scope-index");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Test
+	@RoxableTest(key = "57a5b66041fa")
+	public void annotatedMethodsShouldBeIndexedWithTheSignatureUsedAtRuntime() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics, RESOURCE_SOURCE, "-Aoauth.scopes=orders:read,orders:write,admin"));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toUri().toURL()}, getClass().getClassLoader())) {
+			OAuthScopeIndex index = OAuthScopeIndex.load(classLoader);
+			Class<?> resource = classLoader.loadClass("test.Resource");
+			Class<?> itemArray = Array.newInstance(classLoader.loadClass("test.Resource$Item"), 0).getClass();
+
+			OAuthScopeIndex.Entry update = index.get(resource.getMethod("update", String.class, itemArray, int.class));
+			assertEquals(Arrays.asList("orders:read", "orders:write"), Arrays.asList(update.getAllScopes().toArray()));
+			assertTrue(update.getAnyScopes().isEmpty());
+
+			OAuthScopeIndex.Entry list = index.get(resource.getMethod("list", List.class));
+			assertNull(list.getAllScopes());
+			assertEquals(Arrays.asList("admin", "orders:read"), Arrays.asList(list.getAnyScopes().toArray()));
+
+			OAuthScopeIndex.Entry delete = index.get(resource.getMethod("delete", String.class));
+			assertEquals(OAuthScopeExpression.parse("orders:write & orders:read | orders:write & admin"), delete.getExpression());
+
+			assertNull(index.get(resource.getMethod("unannotated")));
+			assertEquals(3, index.size());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "b7014421e6fa")
+	public void primitiveParametersShouldBeIndexedWhateverTheDefaultLocale() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics, RESOURCE_SOURCE, "-Aoauth.scopes=orders:read,orders:write,admin"));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toUri().toURL()}, getClass().getClassLoader())) {
+			Class<?> resource = classLoader.loadClass("test.Resource");
+			Class<?> itemArray = Array.newInstance(classLoader.loadClass("test.Resource$Item"), 0).getClass();
+
+			assertNotNull(OAuthScopeIndex.load(classLoader).get(resource.getMethod("update", String.class, itemArray, int.class)));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "d62c9c1a234e")
+	public void scopesMissingFromTheConfigurationShouldFailTheBuild() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		assertFalse(compile(diagnostics, RESOURCE_SOURCE, "-Aoauth.scopes=orders:read admin"));
+
+		Diagnostic<? extends JavaFileObject> diagnostic = diagnostics.getDiagnostics().get(0);
+		assertEquals(Diagnostic.Kind.ERROR, diagnostic.getKind());
+		assertEquals("The scope 'orders:write' is not part of the OAuth configuration.", diagnostic.getMessage(Locale.ENGLISH));
+	}
+
+	@Test
+	@RoxableTest(key = "5b79e624000f")
+	public void indexShouldBeRewrittenWhenNoMethodIsAnnotatedAnymore() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics, RESOURCE_SOURCE, "-Aoauth.scopes=orders:read,orders:write,admin"));
+		assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics, UNANNOTATED_RESOURCE_SOURCE, "-Aoauth.scopes=orders:read"));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toUri().toURL()}, getClass().getClassLoader())) {
+			assertTrue(Files.exists(directory.resolve(OAuthScopeIndex.INDEX_RESOURCE)));
+			assertEquals(0, OAuthScopeIndex.load(classLoader).size());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "bb3f8ef32b78")
+	public void classAnnotationsAndPublicResourcesShouldBeIndexed() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics, PUBLIC_RESOURCE_SOURCE, "-Aoauth.scopes=admin"));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toUri().toURL()}, getClass().getClassLoader())) {
+			OAuthScopeIndex index = OAuthScopeIndex.load(classLoader);
+			Class<?> resource = classLoader.loadClass("test.Resource");
+			Class<?> admin = classLoader.loadClass("test.Resource$Admin");
+
+			assertTrue(index.get(resource).isNoScopesRequired());
+			assertEquals(Collections.singleton("admin"), index.get(admin).getAnyScopes());
+			assertTrue(index.get(resource.getMethod("health")).isNoScopesRequired());
+			assertNull(index.get(resource.getMethod("open")));
+		}
+	}
+
+	private boolean compile(DiagnosticCollector<JavaFileObject> diagnostics, String resourceSource, String option) throws IOException {
+		Path source = directory.resolve("Resource.java");
+		Files.write(source, resourceSource.getBytes(StandardCharsets.UTF_8));
+		String classPath = new File(AllOAuthScopes.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ENGLISH, StandardCharsets.UTF_8)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+				Arrays.asList(option, "-classpath", classPath, "-d", directory.toString()),
+				null, fileManager.getJavaFileObjects(source.toFile()));
+			task.setProcessors(Collections.singletonList(new OAuthScopeIndexProcessor()));
+			return task.call();
+		}
+	}
+}
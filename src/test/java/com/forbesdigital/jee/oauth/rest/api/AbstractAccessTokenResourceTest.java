@@ -9,6 +9,8 @@ import com.forbesdigital.jee.oauth.configuration.IOAuthConfiguration;
 import com.forbesdigital.jee.oauth.model.IOAuthClient;
 import com.forbesdigital.jee.oauth.model.IOAuthToken;
 import com.forbesdigital.jee.oauth.model.IOAuthUser;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetailsService;
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
 import java.util.Calendar;
@@ -25,6 +27,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -66,6 +69,8 @@ public class AbstractAccessTokenResourceTest {
 	private IOAuthClientRole role;
 	@Mock
 	private IOAuthConfiguration configuration;
+	@Mock
+	private OAuthTokenDetailsService tokenDetailsService;
 
 	@InjectMocks
 	private AbstractAccessTokenImpl abstractAccessTokenResource;
@@ -302,6 +307,33 @@ public class AbstractAccessTokenResourceTest {
 		assertEquals(response.getAdditionalInformation(), new HashMap<>());
 	}
 
+	@Test
+	@RoxableTest(key = "757aea212af9")
+	public void tokenRequestShouldNotifyTheTokenDetailsService() {
+		when(token.getAccessToken()).thenReturn(MOCK_ACCESS_TOKEN);
+		when(token.getExpirationDate()).thenReturn(expirationDate.getTime());
+		when(token.getScopes()).thenReturn(new HashSet<String>());
+
+		Response result = abstractAccessTokenResource.requestToken(GRANT_TYPE, CLIENT_SCOPE, USERNAME, PASSWORD, EXPIRES_IN);
+
+		assertEquals(result.getStatus(), 200);
+		verify(tokenDetailsService).tokenCreated(MOCK_ACCESS_TOKEN, null);
+	}
+
+	@Test
+	@RoxableTest(key = "143b9463cbb1")
+	public void tokenRequestShouldWriteTheTokenDetailsToTheTokenDetailsService() {
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, MOCK_ACCESS_TOKEN, expirationDate.getTime(), "clientKey", null, null, CLIENT_ROLE, null);
+		abstractAccessTokenResource.tokenDetails = tokenDetails;
+		when(token.getAccessToken()).thenReturn(MOCK_ACCESS_TOKEN);
+		when(token.getExpirationDate()).thenReturn(expirationDate.getTime());
+		when(token.getScopes()).thenReturn(new HashSet<String>());
+
+		abstractAccessTokenResource.requestToken(GRANT_TYPE, CLIENT_SCOPE, USERNAME, PASSWORD, EXPIRES_IN);
+
+		verify(tokenDetailsService).tokenCreated(MOCK_ACCESS_TOKEN, tokenDetails);
+	}
+
 	/**
 	 * Implementation of AbstractAccessTokenResource used to test the functionalities of this abstract class
 	 *
@@ -312,6 +344,8 @@ public class AbstractAccessTokenResourceTest {
 		private IOAuthClient client;
 		private IOAuthToken token;
 		private IOAuthUser user;
+		private OAuthTokenDetailsService tokenDetailsService;
+		private OAuthTokenDetails tokenDetails;
 
 		@Override
 		protected IOAuthClient getAuthenticatedClient() {
@@ -328,6 +362,16 @@ public class AbstractAccessTokenResourceTest {
 			return user;
 		}
 
+		@Override
+		protected OAuthTokenDetailsService getTokenDetailsService() {
+			return tokenDetailsService;
+		}
+
+		@Override
+		protected OAuthTokenDetails buildTokenDetails(IOAuthClient client, IOAuthToken token, IOAuthUser user) {
+			return tokenDetails;
+		}
+
 	}
 
 }
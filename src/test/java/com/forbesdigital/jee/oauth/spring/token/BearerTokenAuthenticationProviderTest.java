@@ -0,0 +1,118 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.exceptions.ExpiredBearerTokenException;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see BearerTokenAuthenticationProvider
+ */
+@RoxableTestClass(tags = {"bearerTokenAuthenticationProvider"})
+public class BearerTokenAuthenticationProviderTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final String ACCESS_TOKEN = "accessToken";
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private UserDetailsService tokenDetailsService;
+	//</editor-fold>
+
+	private BearerTokenAuthenticationProvider provider;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		provider = new BearerTokenAuthenticationProvider();
+		provider.setTokenDetailsService(tokenDetailsService);
+	}
+
+	@Test
+	@RoxableTest(key = "e6c2fa43731a")
+	public void authenticateShouldReturnTheTokenDetailsAsPrincipal() {
+		OAuthTokenDetails details = tokenDetails(new Date(System.currentTimeMillis() + ONE_HOUR));
+		when(tokenDetailsService.loadUserByUsername(ACCESS_TOKEN)).thenReturn(details);
+		BearerTokenAuthenticationToken request = new BearerTokenAuthenticationToken(ACCESS_TOKEN);
+		request.setDetails("requestDetails");
+
+		Authentication result = provider.authenticate(request);
+
+		assertTrue(result.isAuthenticated());
+		assertSame(details, result.getPrincipal());
+		assertEquals(ACCESS_TOKEN, result.getName());
+		assertEquals("requestDetails", result.getDetails());
+		assertEquals("scope", result.getAuthorities().iterator().next().getAuthority());
+	}
+
+	@Test(expected = BadCredentialsException.class)
+	@RoxableTest(key = "7f667a6e1f0a")
+	public void authenticateShouldRejectUnknownTokens() {
+		when(tokenDetailsService.loadUserByUsername(ACCESS_TOKEN)).thenThrow(new UsernameNotFoundException("Token not found."));
+
+		provider.authenticate(new BearerTokenAuthenticationToken(ACCESS_TOKEN));
+	}
+
+	@Test(expected = DisabledException.class)
+	@RoxableTest(key = "9aacb0876f5e")
+	public void authenticateShouldRejectRevokedTokens() {
+		OAuthTokenDetails details = tokenDetails(new Date(System.currentTimeMillis() + ONE_HOUR));
+		details.revoke();
+		when(tokenDetailsService.loadUserByUsername(ACCESS_TOKEN)).thenReturn(details);
+
+		provider.authenticate(new BearerTokenAuthenticationToken(ACCESS_TOKEN));
+	}
+
+	@Test(expected = DisabledException.class)
+	@RoxableTest(key = "82f9656b799d")
+	public void authenticateShouldRejectTokensGeneratedBeforeTheRevocationOfTheirClient() {
+		OAuthRevocationEpochs revocationEpochs = new OAuthRevocationEpochs();
+		revocationEpochs.revokeClient("clientKey");
+		provider.setRevocationEpochs(revocationEpochs);
+		when(tokenDetailsService.loadUserByUsername(ACCESS_TOKEN)).thenReturn(tokenDetails(new Date(System.currentTimeMillis() + ONE_HOUR)));
+
+		provider.authenticate(new BearerTokenAuthenticationToken(ACCESS_TOKEN));
+	}
+
+	@Test(expected = ExpiredBearerTokenException.class)
+	@RoxableTest(key = "82f817e6e8ef")
+	public void authenticateShouldRejectExpiredTokens() {
+		when(tokenDetailsService.loadUserByUsername(ACCESS_TOKEN)).thenReturn(tokenDetails(new Date(System.currentTimeMillis() - 1)));
+
+		provider.authenticate(new BearerTokenAuthenticationToken(ACCESS_TOKEN));
+	}
+
+	@Test
+	@RoxableTest(key = "757cfd61c29f")
+	public void providerShouldOnlySupportBearerTokenAuthenticationRequests() {
+		assertTrue(provider.supports(BearerTokenAuthenticationToken.class));
+		assertFalse(provider.supports(UsernamePasswordAuthenticationToken.class));
+	}
+
+	private OAuthTokenDetails tokenDetails(Date expirationDate) {
+		return new OAuthTokenDetails(123L, ACCESS_TOKEN, expirationDate, "clientKey", "userKey",
+			Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("scope")), "clientRole", null);
+	}
+}
@@ -0,0 +1,77 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
+import com.forbesdigital.jee.oauth.model.IOAuthToken;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import javax.xml.bind.DatatypeConverter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @see OAuthAccessTokenGenerator
+ */
+@RoxableTestClass(tags = {"oAuthAccessTokenGenerator"})
+public class OAuthAccessTokenGeneratorTest {
+
+	@Test
+	@RoxableTest(key = "501a7e4cdcef")
+	public void tokensShouldBeDistinctAndMatchTheTokenPattern() {
+		OAuthAccessTokenGenerator generator = new OAuthAccessTokenGenerator(OAuthAccessTokenGenerator.DEFAULT_ALGORITHM, 3, 4);
+		assertEquals(4, generator.getStripes());
+
+		Set<String> tokens = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			String token = generator.generate();
+			assertEquals(IOAuthToken.TOKEN_LENGTH, token.length());
+			assertTrue(token.matches(IOAuthToken.TOKEN_PATTERN));
+			assertTrue(OAuthSyntaxValidator.isValidAccessToken(token, IOAuthToken.TOKEN_LENGTH));
+			tokens.add(token);
+		}
+		assertEquals(1000, tokens.size());
+	}
+
+	@Test
+	@RoxableTest(key = "d745a9bcf30c")
+	public void tokensShouldBeTheBase64UrlEncodingOfTheRandomBytes() {
+		Random random = new Random(42);
+		char[] chars = new char[IOAuthToken.TOKEN_LENGTH];
+		for (int i = 0; i < 100; i++) {
+			byte[] bytes = new byte[OAuthAccessTokenGenerator.TOKEN_BYTES + 3];
+			random.nextBytes(bytes);
+
+			OAuthAccessTokenGenerator.encode(bytes, 3, chars);
+
+			byte[] tokenBytes = new byte[OAuthAccessTokenGenerator.TOKEN_BYTES];
+			System.arraycopy(bytes, 3, tokenBytes, 0, tokenBytes.length);
+			String expected = DatatypeConverter.printBase64Binary(tokenBytes).replace('+', '-').replace('/', '_').substring(0, IOAuthToken.TOKEN_LENGTH);
+			assertEquals(expected, new String(chars));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "633b976b885c")
+	public void generatorShouldRequireAnAvailableAlgorithmAndPositiveSizes() {
+		try {
+			new OAuthAccessTokenGenerator("unknown", 1, 1);
+			fail("Exception should have been thrown.");
+		} catch (IllegalArgumentException iae) {
+		}
+		try {
+			new OAuthAccessTokenGenerator(OAuthAccessTokenGenerator.DEFAULT_ALGORITHM, 0, 1);
+			fail("Exception should have been thrown.");
+		} catch (IllegalArgumentException iae) {
+		}
+		try {
+			new OAuthAccessTokenGenerator(OAuthAccessTokenGenerator.DEFAULT_ALGORITHM, 1, 0);
+			fail("Exception should have been thrown.");
+		} catch (IllegalArgumentException iae) {
+		}
+	}
+}
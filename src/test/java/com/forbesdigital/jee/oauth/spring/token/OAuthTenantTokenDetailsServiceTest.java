@@ -0,0 +1,96 @@
+package com.forbesdigital.jee.oauth.spring.token;
+
+import com.forbesdigital.jee.oauth.configuration.EOAuthGrantType;
+import com.forbesdigital.jee.oauth.configuration.IOAuthConfiguration;
+import com.forbesdigital.jee.oauth.configuration.OAuthContext;
+import com.forbesdigital.jee.oauth.configuration.OAuthTenantRegistry;
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenDetailsCache;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthTenantTokenDetailsService
+ */
+@RoxableTestClass(tags = {"oAuthToken"})
+public class OAuthTenantTokenDetailsServiceTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final String ACCESS_TOKEN = "accessToken";
+	private static final String ACME = "acme";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthTokenDetailsBuilder defaultBuilder;
+	@Mock
+	private IOAuthTokenDetailsBuilder acmeBuilder;
+	@Mock
+	private IOAuthConfiguration acmeConfiguration;
+	//</editor-fold>
+
+	private OAuthTenantRegistry tenantRegistry;
+	private OAuthTenantTokenDetailsService service;
+	private OAuthTokenDetails details;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+
+		when(acmeConfiguration.getAllScopes()).thenReturn(Collections.<String>emptySet());
+		when(acmeConfiguration.getAllGrantTypes()).thenReturn(Collections.<EOAuthGrantType>emptySet());
+		when(acmeConfiguration.getClientRoleNames()).thenReturn(Collections.<String>emptySet());
+		tenantRegistry = new OAuthTenantRegistry();
+		tenantRegistry.register(ACME, acmeConfiguration, null);
+
+		OAuthTokenDetailsService acmeService = new OAuthTokenDetailsService();
+		acmeService.setTokenDetailsBuilder(acmeBuilder);
+		acmeService.setTokenDetailsCache(new OAuthTokenDetailsCache());
+
+		service = new OAuthTenantTokenDetailsService();
+		service.setTokenDetailsBuilder(defaultBuilder);
+		service.setTenantServices(Collections.singletonMap(ACME, acmeService));
+
+		details = new OAuthTokenDetails(123L, ACCESS_TOKEN, new Date(System.currentTimeMillis() + 60000), "clientKey", null, null, "clientRole", null);
+		when(defaultBuilder.buildTokenDetails(ACCESS_TOKEN)).thenReturn(details);
+		when(acmeBuilder.buildTokenDetails(ACCESS_TOKEN)).thenReturn(details);
+	}
+
+	@After
+	public void tearDown() {
+		OAuthContext.bindTenant(null);
+	}
+
+	@Test
+	@RoxableTest(key = "742a9e3def44")
+	public void tokenDetailsShouldBeServedByTheServiceOfTheBoundTenant() {
+		OAuthContext.bindTenant(tenantRegistry.getTenant(ACME));
+
+		assertSame(details, service.loadUserByUsername(ACCESS_TOKEN));
+		assertSame(details, service.loadUserByUsername(ACCESS_TOKEN));
+
+		verify(acmeBuilder, times(1)).buildTokenDetails(ACCESS_TOKEN);
+		verifyZeroInteractions(defaultBuilder);
+	}
+
+	@Test
+	@RoxableTest(key = "086178398fb1")
+	public void requestsWithoutTenantShouldBeServedByTheDefaultService() {
+		assertSame(details, service.loadUserByUsername(ACCESS_TOKEN));
+
+		verify(defaultBuilder).buildTokenDetails(ACCESS_TOKEN);
+		verifyZeroInteractions(acmeBuilder);
+	}
+}
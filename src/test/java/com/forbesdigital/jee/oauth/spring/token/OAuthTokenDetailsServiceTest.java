@@ -1,5 +1,8 @@
 package com.forbesdigital.jee.oauth.spring.token;
 
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenDetailsCache;
+import com.forbesdigital.jee.oauth.spring.token.cache.OAuthTokenNegativeCache;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationEpochs;
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
 import java.util.Date;
@@ -11,9 +14,16 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -59,4 +69,120 @@ public class OAuthTokenDetailsServiceTest {
 		} catch (UsernameNotFoundException ex) {
 		}
 	}
+
+	@Test
+	@RoxableTest(key = "4f35e3c49e41")
+	public void shouldLoadTokenFromTheCacheWhenCached() {
+		String accessToken = "accessToken";
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + 60000), "clientKey", "userKey", null, "clientRole", null);
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		oAuthTokenDetailsService.setTokenDetailsCache(cache);
+
+		when(builder.buildTokenDetails(accessToken)).thenReturn(tokenDetails);
+
+		assertSame(tokenDetails, oAuthTokenDetailsService.loadUserByUsername(accessToken));
+		assertSame(tokenDetails, oAuthTokenDetailsService.loadUserByUsername(accessToken));
+		verify(builder, times(1)).buildTokenDetails(accessToken);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	@RoxableTest(key = "c507819e003d")
+	public void shouldNotUseTheBuilderForARecentlyUnknownAccessToken() {
+		String accessToken = "accessToken";
+		oAuthTokenDetailsService.setTokenNegativeCache(new OAuthTokenNegativeCache());
+		when(builder.buildTokenDetails(accessToken)).thenReturn(null);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				oAuthTokenDetailsService.loadUserByUsername(accessToken);
+				fail("Exception should have been thrown.");
+			} catch (UsernameNotFoundException ex) {
+			}
+		}
+		verify(builder, times(1)).buildTokenDetails(accessToken);
+	}
+
+	@Test
+	@RoxableTest(key = "b8632f61b48c")
+	public void shouldUseTheBuilderForACreatedAccessToken() {
+		String accessToken = "accessToken";
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + 60000), "clientKey", "userKey", null, "clientRole", null);
+		oAuthTokenDetailsService.setTokenNegativeCache(new OAuthTokenNegativeCache());
+		when(builder.buildTokenDetails(accessToken)).thenReturn(null, tokenDetails);
+
+		try {
+			oAuthTokenDetailsService.loadUserByUsername(accessToken);
+			fail("Exception should have been thrown.");
+		} catch (UsernameNotFoundException ex) {
+		}
+		oAuthTokenDetailsService.tokenCreated(accessToken, null);
+
+		assertSame(tokenDetails, oAuthTokenDetailsService.loadUserByUsername(accessToken));
+	}
+
+	@Test
+	@RoxableTest(key = "7f635970a033")
+	public void shouldServeStaleTokenDetailsWhenTheBuilderFails() throws Exception {
+		String accessToken = "accessToken";
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + 60000), "clientKey", "userKey", null, "clientRole", null);
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.setMaxTimeToLive(1);
+		cache.setStaleIfErrorWindow(60000);
+		oAuthTokenDetailsService.setTokenDetailsCache(cache);
+		when(builder.buildTokenDetails(accessToken)).thenReturn(tokenDetails).thenThrow(new IllegalStateException("Storage unavailable"));
+
+		oAuthTokenDetailsService.loadUserByUsername(accessToken);
+		Thread.sleep(5);
+
+		assertSame(tokenDetails, oAuthTokenDetailsService.loadUserByUsername(accessToken));
+		assertEquals(1, cache.getStaleHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "43e915430562")
+	public void shouldRethrowTheBuilderFailureWithoutStaleTokenDetails() {
+		IllegalStateException failure = new IllegalStateException("Storage unavailable");
+		oAuthTokenDetailsService.setTokenDetailsCache(new OAuthTokenDetailsCache());
+		when(builder.buildTokenDetails(anyString())).thenThrow(failure);
+
+		try {
+			oAuthTokenDetailsService.loadUserByUsername("accessToken");
+			fail("Exception should have been thrown.");
+		} catch (IllegalStateException ex) {
+			assertSame(failure, ex);
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "a0ae3c757de9")
+	public void shouldNotUseTheBuilderForATokenWrittenAtCreation() {
+		String accessToken = "accessToken";
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + 60000), "clientKey", "userKey", null, "clientRole", null);
+		oAuthTokenDetailsService.setTokenDetailsCache(new OAuthTokenDetailsCache());
+
+		oAuthTokenDetailsService.tokenCreated(accessToken, tokenDetails);
+
+		assertSame(tokenDetails, oAuthTokenDetailsService.loadUserByUsername(accessToken));
+		verify(builder, never()).buildTokenDetails(anyString());
+	}
+
+	@Test
+	@RoxableTest(key = "e818fa4a6f97")
+	public void shouldRevokeTheCachedTokensOfARevokedClient() {
+		String accessToken = "accessToken";
+		OAuthTokenDetails tokenDetails = new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + 60000), "clientKey", "userKey", null, "clientRole", null);
+		OAuthRevocationEpochs revocationEpochs = new OAuthRevocationEpochs();
+		oAuthTokenDetailsService.setTokenDetailsCache(new OAuthTokenDetailsCache());
+		oAuthTokenDetailsService.setRevocationEpochs(revocationEpochs);
+		oAuthTokenDetailsService.tokenCreated(accessToken, tokenDetails);
+
+		assertTrue(oAuthTokenDetailsService.loadUserByUsername(accessToken).isEnabled());
+
+		revocationEpochs.revokeClient("clientKey");
+
+		assertFalse(oAuthTokenDetailsService.loadUserByUsername(accessToken).isEnabled());
+		verify(builder, never()).buildTokenDetails(anyString());
+	}
 }
@@ -1,9 +1,14 @@
 package com.forbesdigital.jee.oauth.spring.token;
 
+import com.forbesdigital.jee.oauth.spring.token.exceptions.ExpiredBearerTokenException;
 import com.forbesdigital.jee.oauth.spring.token.exceptions.MalformedBearerTokenException;
 import com.forbesdigital.jee.oauth.spring.token.exceptions.MissingAuthorizationHeaderException;
+import com.forbesdigital.jee.oauth.spring.token.revocation.OAuthRevocationRegistry;
+import com.forbesdigital.jee.oauth.spring.token.signed.SignedTokenCodec;
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Collections;
+import java.util.Date;
 import javax.servlet.FilterChain;
 import javax.servlet.http.HttpServletRequest;
 import org.junit.Before;
@@ -13,6 +18,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContext;
@@ -20,6 +26,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -31,10 +40,11 @@ public class TokenBearerAuthenticationFilterTest {
 
 	//<editor-fold defaultstate="collapsed" desc="Constants">
 	private static final String AUTHORIZATION_HEADER = "Authorization";
-	private static final String VALID_AUTHORIZATION_HEADER = "Bearer 1234567890";
-	private static final String SECOND_VALID_AUTHORIZATION_HEADER = "Bearer 1,234567890";
+	private static final String VALID_AUTHORIZATION_HEADER = "Bearer 1234567890123456789012";
+	private static final String SECOND_VALID_AUTHORIZATION_HEADER = "Bearer 1234567890123456789012,34567890";
+	private static final String SHORT_AUTHORIZATION_HEADER = "Bearer 1234567890";
 	private static final String INVALID_AUTHORIZATION_HEADER = "INVALID 1234567890";
-	private static final String MALFORMED_AUTHORIZATION_HEADER = "Bearer 1%&*fsdf@sd";
+	private static final String MALFORMED_AUTHORIZATION_HEADER = "Bearer 1%&*fsdf@sd1234567890a";
 
 	//</editor-fold>
 	//<editor-fold defaultstate="collapsed" desc="Mocks">
@@ -119,6 +129,106 @@ public class TokenBearerAuthenticationFilterTest {
 		}
 	}
 	
+	@Test
+	@RoxableTest(key = "b532249249b5")
+	public void doFilterShouldAuthenticateWithABearerTokenAuthenticationRequest() throws Exception {
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(VALID_AUTHORIZATION_HEADER);
+
+		filter.doFilter(request, null, chain);
+
+		verify(authenticationManager).authenticate(isA(BearerTokenAuthenticationToken.class));
+	}
+	
+	@Test
+	@RoxableTest(key = "3bbeaca831b6")
+	public void doFilterWithTokenOfUnexpectedLength() throws Exception {
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(SHORT_AUTHORIZATION_HEADER);
+		try {
+			filter.doFilter(request, null, chain);
+			fail("The token should have not been valid.");
+		} catch (MalformedBearerTokenException ex) {
+			
+		}
+	}
+	
+	@Test
+	@RoxableTest(key = "dae0ae5057af")
+	public void doFilterWithTokenOfAnyLengthWhenLengthIsNotEnforced() throws Exception {
+		filter.setTokenLength(0);
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(SHORT_AUTHORIZATION_HEADER);
+
+		filter.doFilter(request, null, chain);
+
+		verify(authenticationManager).authenticate(isA(BearerTokenAuthenticationToken.class));
+	}
+	
+	@Test
+	@RoxableTest(key = "6da5815ae5c5")
+	public void doFilterWithForgedSignedToken() throws Exception {
+		filter.setSignedTokenCodec(signedTokenCodec());
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "AQ" + VALID_AUTHORIZATION_HEADER.substring(7) + "123456789012345678901234567");
+		try {
+			filter.doFilter(request, null, chain);
+			fail("The token should have not been valid.");
+		} catch (MalformedBearerTokenException ex) {
+			
+		}
+		verifyZeroInteractions(authenticationManager);
+	}
+	
+	@Test
+	@RoxableTest(key = "b70f7e9321ef")
+	public void doFilterWithExpiredSignedToken() throws Exception {
+		SignedTokenCodec codec = signedTokenCodec();
+		filter.setSignedTokenCodec(codec);
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + codec.encode(1L, new Date(System.currentTimeMillis() - 1000), Collections.<String>emptySet()));
+		try {
+			filter.doFilter(request, null, chain);
+			fail("The token should have been expired.");
+		} catch (ExpiredBearerTokenException ex) {
+			
+		}
+		verifyZeroInteractions(authenticationManager);
+	}
+	
+	@Test
+	@RoxableTest(key = "a175a3ce792b")
+	public void doFilterWithValidSignedToken() throws Exception {
+		SignedTokenCodec codec = signedTokenCodec();
+		filter.setSignedTokenCodec(codec);
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + codec.encode(1L, new Date(System.currentTimeMillis() + 60000), Collections.<String>emptySet()));
+
+		filter.doFilter(request, null, chain);
+
+		verify(authenticationManager).authenticate(isA(BearerTokenAuthenticationToken.class));
+	}
+	
+	@Test
+	@RoxableTest(key = "f7c6de00eac7")
+	public void doFilterWithRevokedSignedToken() throws Exception {
+		SignedTokenCodec codec = signedTokenCodec();
+		OAuthRevocationRegistry revocationRegistry = new OAuthRevocationRegistry();
+		Date expirationDate = new Date(System.currentTimeMillis() + 60000);
+		revocationRegistry.revoke(1L, expirationDate);
+		filter.setSignedTokenCodec(codec);
+		filter.setRevocationRegistry(revocationRegistry);
+		when(securityContext.getAuthentication()).thenReturn(anonymousAuthenticationToken);
+		when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + codec.encode(1L, expirationDate, Collections.<String>emptySet()));
+		try {
+			filter.doFilter(request, null, chain);
+			fail("The token should have been revoked.");
+		} catch (DisabledException ex) {
+			
+		}
+		verifyZeroInteractions(authenticationManager);
+	}
+	
 	@Test
 	@RoxableTest(key = "8f96f3062956")
 	public void doFilterWhereUserIsAlreadyAuthenticated() throws Exception {
@@ -135,4 +245,10 @@ public class TokenBearerAuthenticationFilterTest {
 		}
 	}
 
+	private SignedTokenCodec signedTokenCodec() {
+		SignedTokenCodec codec = new SignedTokenCodec(Collections.<String>emptyList());
+		codec.addKey(1, "0123456789abcdef0123456789abcdef".getBytes());
+		codec.setSigningKeyId(1);
+		return codec;
+	}
 }
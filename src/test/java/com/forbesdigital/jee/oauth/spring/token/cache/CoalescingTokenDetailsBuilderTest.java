@@ -0,0 +1,138 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @see CoalescingTokenDetailsBuilder
+ */
+@RoxableTestClass(tags = {"coalescingTokenDetailsBuilder"})
+public class CoalescingTokenDetailsBuilderTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final int THREADS = 10;
+	private static final String ACCESS_TOKEN = "accessToken";
+	//</editor-fold>
+
+	private ExecutorService executor;
+	private CountDownLatch release;
+	private AtomicInteger lookups;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+		release = new CountDownLatch(1);
+		lookups = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	@RoxableTest(key = "3dba6ed41a93")
+	public void concurrentLookupsShouldShareTheSameTokenDetails() throws Exception {
+		final OAuthTokenDetails details = new OAuthTokenDetails(123L, ACCESS_TOKEN, new Date(), "clientKey", "userKey", null, "clientRole", null);
+		CoalescingTokenDetailsBuilder builder = new CoalescingTokenDetailsBuilder(blockingBuilder(details, null));
+
+		List<Future<OAuthTokenDetails>> results = lookupConcurrently(builder);
+
+		for (Future<OAuthTokenDetails> result : results) {
+			assertSame(details, result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, lookups.get());
+		assertEquals(THREADS - 1, builder.getCoalescedCount());
+	}
+
+	@Test
+	@RoxableTest(key = "579d281cbd75")
+	public void concurrentLookupsShouldShareTheSameFailure() throws Exception {
+		IllegalStateException failure = new IllegalStateException("Storage unavailable");
+		CoalescingTokenDetailsBuilder builder = new CoalescingTokenDetailsBuilder(blockingBuilder(null, failure));
+
+		List<Future<OAuthTokenDetails>> results = lookupConcurrently(builder);
+
+		for (Future<OAuthTokenDetails> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+				fail("Exception should have been thrown.");
+			} catch (ExecutionException ee) {
+				assertSame(failure, ee.getCause());
+			}
+		}
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	@RoxableTest(key = "7ed676396762")
+	public void sequentialLookupsShouldNotBeCoalesced() {
+		release.countDown();
+		CoalescingTokenDetailsBuilder builder = new CoalescingTokenDetailsBuilder(blockingBuilder(null, null));
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+		builder.buildTokenDetails(ACCESS_TOKEN);
+
+		assertEquals(2, lookups.get());
+		assertEquals(0, builder.getCoalescedCount());
+	}
+
+	/**
+	 * Start a lookup per thread and release the builder once all of them are waiting.
+	 */
+	private List<Future<OAuthTokenDetails>> lookupConcurrently(final CoalescingTokenDetailsBuilder builder) throws InterruptedException {
+		List<Future<OAuthTokenDetails>> results = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(executor.submit(new Callable<OAuthTokenDetails>() {
+				@Override
+				public OAuthTokenDetails call() {
+					return builder.buildTokenDetails(ACCESS_TOKEN);
+				}
+			}));
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (builder.getCoalescedCount() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		return results;
+	}
+
+	private IOAuthTokenDetailsBuilder blockingBuilder(final OAuthTokenDetails details, final RuntimeException failure) {
+		return new IOAuthTokenDetailsBuilder() {
+			@Override
+			public OAuthTokenDetails buildTokenDetails(String accessToken) {
+				lookups.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				if (failure != null) {
+					throw failure;
+				}
+				return details;
+			}
+		};
+	}
+}
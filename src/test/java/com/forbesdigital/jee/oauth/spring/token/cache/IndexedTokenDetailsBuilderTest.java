@@ -0,0 +1,166 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see IndexedTokenDetailsBuilder
+ */
+@RoxableTestClass(tags = {"indexedTokenDetailsBuilder"})
+public class IndexedTokenDetailsBuilderTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	private static final long NOW = 1000000000000L;
+	private static final String ACCESS_TOKEN = "aZ09-._~+/bcdefghijklm";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthTokenDetailsBuilder delegate;
+	//</editor-fold>
+
+	private long now;
+	private IndexedTokenDetailsBuilder builder;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		now = NOW;
+		builder = new TestBuilder(delegate, 64);
+	}
+
+	@Test
+	@RoxableTest(key = "d5a9e6f7f8e6")
+	public void indexedTokenDetailsShouldBeServedWithoutTheDelegate() {
+		OAuthTokenDetails details = tokenDetails(ACCESS_TOKEN, NOW + ONE_HOUR);
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(details);
+
+		assertSame(details, builder.buildTokenDetails(ACCESS_TOKEN));
+		assertSame(details, builder.buildTokenDetails(ACCESS_TOKEN));
+
+		verify(delegate, times(1)).buildTokenDetails(ACCESS_TOKEN);
+		assertEquals(1, builder.getHitCount());
+		assertEquals(1, builder.getMissCount());
+	}
+
+	@Test
+	@RoxableTest(key = "242fe0ac8220")
+	public void tokensWithoutTheFixedFormatShouldNotBeIndexed() {
+		when(delegate.buildTokenDetails(anyString())).thenReturn(tokenDetails("short", NOW + ONE_HOUR));
+
+		builder.buildTokenDetails("short");
+		builder.buildTokenDetails("short");
+		builder.buildTokenDetails("aZ09-._~+/bcdefghijkl!");
+
+		verify(delegate, times(2)).buildTokenDetails("short");
+		assertEquals(0, builder.size());
+		assertFalse(IndexedTokenDetailsBuilder.isIndexable("aZ09-._~+/bcdefghijklé"));
+	}
+
+	@Test
+	@RoxableTest(key = "13f1480c1b8a")
+	public void packingShouldBeLossless() {
+		String other = "aZ09-._~+/bcdefghijkln";
+
+		assertTrue(IndexedTokenDetailsBuilder.isIndexable(ACCESS_TOKEN));
+		assertNotEquals(IndexedTokenDetailsBuilder.pack(ACCESS_TOKEN, 20, 2), IndexedTokenDetailsBuilder.pack(other, 20, 2));
+		assertEquals(67L, IndexedTokenDetailsBuilder.pack("//////////", 0, 1));
+		assertTrue(IndexedTokenDetailsBuilder.pack("//////////", 0, 10) > 0);
+	}
+
+	@Test
+	@RoxableTest(key = "425216a059c7")
+	public void entriesShouldNotOutliveTheTokenExpirationDate() {
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(tokenDetails(ACCESS_TOKEN, NOW + 1000));
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+		now = NOW + 1000;
+		builder.buildTokenDetails(ACCESS_TOKEN);
+
+		verify(delegate, times(2)).buildTokenDetails(ACCESS_TOKEN);
+	}
+
+	@Test
+	@RoxableTest(key = "0c528b9c5fde")
+	public void invalidateShouldRemoveTheEntryAndKeepTheOthersReachable() {
+		builder = new TestBuilder(delegate, 1024);
+		for (int i = 0; i < 64; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + ONE_HOUR));
+			builder.buildTokenDetails(accessToken);
+		}
+
+		for (int i = 0; i < 64; i += 2) {
+			builder.invalidate(token(i));
+		}
+
+		assertEquals(32, builder.size());
+		for (int i = 1; i < 64; i += 2) {
+			builder.buildTokenDetails(token(i));
+		}
+		assertEquals(32, builder.getHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "3fc0afdf6cc5")
+	public void fullIndexShouldPurgeExpiredEntriesBeforeIndexingNewOnes() {
+		for (int i = 0; i < 1000; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + 1000));
+			builder.buildTokenDetails(accessToken);
+		}
+		assertTrue(builder.size() <= 64);
+
+		now = NOW + 1000;
+		for (int i = 1000; i < 1010; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + ONE_HOUR));
+			builder.buildTokenDetails(accessToken);
+			builder.buildTokenDetails(accessToken);
+		}
+
+		assertEquals(10, builder.getHitCount());
+	}
+
+	private String token(int i) {
+		String suffix = Integer.toString(i);
+		return ACCESS_TOKEN.substring(0, ACCESS_TOKEN.length() - suffix.length()) + suffix;
+	}
+
+	private OAuthTokenDetails tokenDetails(String accessToken, long expirationDate) {
+		return new OAuthTokenDetails(123L, accessToken, new Date(expirationDate), "clientKey", "userKey", null, "clientRole", null);
+	}
+
+	/**
+	 * Builder whose clock is controlled by the test
+	 */
+	private class TestBuilder extends IndexedTokenDetailsBuilder {
+
+		TestBuilder(IOAuthTokenDetailsBuilder delegate, int maxSize) {
+			super(delegate, maxSize);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OAuthTokenDetailsCache
+ */
+@RoxableTestClass(tags = {"oAuthTokenDetailsCache"})
+public class OAuthTokenDetailsCacheTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	private static final long NOW = 1000000000000L;
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthTokenDetailsBuilder builder;
+	//</editor-fold>
+
+	private long now;
+	private OAuthTokenDetailsCache cache;
+	private final List<Runnable> refreshes = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		now = NOW;
+		refreshes.clear();
+		cache = new TestCache(64);
+		cache.setRefreshExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				refreshes.add(command);
+			}
+		});
+	}
+
+	@Test
+	@RoxableTest(key = "397ecfa59246")
+	public void getShouldReturnCachedTokenDetailsAndCountHitsAndMisses() {
+		OAuthTokenDetails details = tokenDetails("token1", NOW + ONE_HOUR);
+
+		assertNull(cache.get("token1"));
+		cache.put(details);
+
+		assertSame(details, cache.get("token1"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	@RoxableTest(key = "0403a4df1c14")
+	public void entriesShouldNotOutliveTheTokenExpirationDate() {
+		cache.put(tokenDetails("token1", NOW + 1000));
+
+		now = NOW + 999;
+		assertTrue(cache.get("token1") != null);
+		now = NOW + 1000;
+		assertNull(cache.get("token1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	@RoxableTest(key = "5c2f3c4e65c7")
+	public void entriesShouldNotOutliveTheMaximumTimeToLive() {
+		cache.setMaxTimeToLive(500);
+		cache.put(tokenDetails("token1", NOW + ONE_HOUR));
+
+		now = NOW + 499;
+		assertTrue(cache.get("token1") != null);
+		now = NOW + 500;
+		assertNull(cache.get("token1"));
+	}
+
+	@Test
+	@RoxableTest(key = "f95a4ff012ab")
+	public void expiredTokenDetailsShouldNotBeCached() {
+		cache.put(tokenDetails("token1", NOW - 1));
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	@RoxableTest(key = "0f2c2435c5b5")
+	public void cacheShouldEvictEntriesWhenFull() {
+		for (int i = 0; i < 1000; i++) {
+			cache.put(tokenDetails("token" + i, NOW + ONE_HOUR));
+		}
+
+		// Each one of the 16 stripes holds at most 4 entries
+		assertTrue(cache.size() <= 64);
+		assertEquals(1000 - cache.size(), cache.getEvictionCount());
+	}
+
+	@Test
+	@RoxableTest(key = "973e05448728")
+	public void invalidateShouldRemoveTheEntry() {
+		cache.put(tokenDetails("token1", NOW + ONE_HOUR));
+		cache.invalidate("token1");
+
+		assertNull(cache.get("token1"));
+	}
+
+	@Test
+	@RoxableTest(key = "1eb67d177d49")
+	public void entriesPastTheRefreshAheadFactorShouldBeRefreshedOnceAsynchronously() {
+		OAuthTokenDetails details = tokenDetails("token1", NOW + ONE_HOUR);
+		OAuthTokenDetails refreshedDetails = tokenDetails("token1", NOW + ONE_HOUR);
+		cache.setMaxTimeToLive(1000);
+		cache.setRefreshAheadFactor(0.5);
+		cache.put(details);
+		when(builder.buildTokenDetails("token1")).thenReturn(refreshedDetails);
+
+		assertSame(details, cache.get("token1", builder));
+		assertTrue(refreshes.isEmpty());
+
+		now = NOW + 500;
+		assertSame(details, cache.get("token1", builder));
+		assertSame(details, cache.get("token1", builder));
+		assertEquals(1, refreshes.size());
+		assertEquals(1, cache.getRefreshCount());
+
+		refreshes.get(0).run();
+		assertSame(refreshedDetails, cache.get("token1", builder));
+	}
+
+	@Test
+	@RoxableTest(key = "54e5c0369b1d")
+	public void refreshOfAnUnknownTokenShouldRemoveTheEntry() {
+		cache.setRefreshAheadFactor(0.5);
+		cache.setMaxTimeToLive(1000);
+		cache.put(tokenDetails("token1", NOW + ONE_HOUR));
+		when(builder.buildTokenDetails("token1")).thenReturn(null);
+
+		now = NOW + 500;
+		cache.get("token1", builder);
+		refreshes.get(0).run();
+
+		assertNull(cache.get("token1"));
+	}
+
+	@Test
+	@RoxableTest(key = "c27b441a1fad")
+	public void failedRefreshShouldKeepTheCurrentDetailsAndAllowAnotherRefresh() {
+		OAuthTokenDetails details = tokenDetails("token1", NOW + ONE_HOUR);
+		cache.setRefreshAheadFactor(0.5);
+		cache.setMaxTimeToLive(1000);
+		cache.put(details);
+		when(builder.buildTokenDetails("token1")).thenThrow(new IllegalStateException("Storage unavailable"));
+
+		now = NOW + 500;
+		cache.get("token1", builder);
+		refreshes.get(0).run();
+
+		assertSame(details, cache.get("token1", builder));
+		assertEquals(2, refreshes.size());
+	}
+
+	@Test
+	@RoxableTest(key = "94379eabf835")
+	public void staleEntriesShouldOnlyBeServedWithinTheStaleIfErrorWindow() {
+		OAuthTokenDetails details = tokenDetails("token1", NOW + ONE_HOUR);
+		cache.setMaxTimeToLive(1000);
+		cache.setStaleIfErrorWindow(1000);
+		cache.put(details);
+
+		now = NOW + 1000;
+		assertNull(cache.get("token1"));
+		assertSame(details, cache.getStale("token1"));
+		now = NOW + 2000;
+		assertNull(cache.getStale("token1"));
+		assertEquals(1, cache.getStaleHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "4eab76446dc0")
+	public void staleEntriesShouldNotOutliveTheTokenExpirationDate() {
+		cache.setMaxTimeToLive(1000);
+		cache.setStaleIfErrorWindow(ONE_HOUR);
+		cache.put(tokenDetails("token1", NOW + 1500));
+
+		now = NOW + 1500;
+		assertNull(cache.getStale("token1"));
+		verifyZeroInteractions(builder);
+	}
+
+	private OAuthTokenDetails tokenDetails(String accessToken, long expirationDate) {
+		return new OAuthTokenDetails(123L, accessToken, new Date(expirationDate), "clientKey", "userKey", null, "clientRole", null);
+	}
+
+	/**
+	 * Cache whose clock is controlled by the test
+	 */
+	private class TestCache extends OAuthTokenDetailsCache {
+
+		TestCache(int maxSize) {
+			super(maxSize);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+	}
+}
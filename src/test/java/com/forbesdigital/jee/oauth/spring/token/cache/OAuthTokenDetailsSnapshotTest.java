@@ -0,0 +1,143 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @see OAuthTokenDetailsSnapshot
+ */
+@RoxableTestClass(tags = {"oAuthTokenDetailsSnapshot"})
+public class OAuthTokenDetailsSnapshotTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	//</editor-fold>
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("oauth-token-details", ".snapshot");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	@RoxableTest(key = "7b3ac467fd9a")
+	public void savedTokenDetailsShouldBeLoadedInAnotherCache() throws IOException {
+		Collection<GrantedAuthority> authorities = Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("scope1"), new OAuthGrantedAuthority("scope2"));
+		OAuthTokenDetails details = new OAuthTokenDetails(123L, "token1", new Date(System.currentTimeMillis() + ONE_HOUR),
+			"clientKey", null, authorities, "clientRole", Collections.singletonMap("key", "value"));
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.put(details);
+
+		assertEquals(1, new OAuthTokenDetailsSnapshot(cache, file).save());
+
+		OAuthTokenDetailsCache restoredCache = new OAuthTokenDetailsCache();
+		assertEquals(1, new OAuthTokenDetailsSnapshot(restoredCache, file).load());
+
+		OAuthTokenDetails restoredDetails = restoredCache.get("token1");
+		assertNotNull(restoredDetails);
+		assertEquals(details.getId(), restoredDetails.getId());
+		assertEquals(details.getExpirationDate(), restoredDetails.getExpirationDate());
+		assertEquals("clientKey", restoredDetails.getClientKey());
+		assertNull(restoredDetails.getUserKey());
+		assertEquals("clientRole", restoredDetails.getClientRole());
+		assertEquals(2, restoredDetails.getAuthorities().size());
+		assertEquals("value", restoredDetails.getProperties().get("key"));
+	}
+
+	@Test
+	@RoxableTest(key = "46b015601328")
+	public void revokedTokenDetailsShouldNotBeSaved() throws IOException {
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.put(tokenDetails("token1"));
+		OAuthTokenDetails revokedDetails = tokenDetails("token2");
+		cache.put(revokedDetails);
+		revokedDetails.revoke();
+
+		assertEquals(1, new OAuthTokenDetailsSnapshot(cache, file).save());
+	}
+
+	@Test
+	@RoxableTest(key = "bf77514b8aac")
+	public void tokenDetailsWithTooLongStringsShouldBeSkipped() throws IOException {
+		char[] longValue = new char[70000];
+		Arrays.fill(longValue, 'a');
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.put(tokenDetails("token1"));
+		cache.put(new OAuthTokenDetails(456L, "token2", new Date(System.currentTimeMillis() + ONE_HOUR),
+			"clientKey", null, null, "clientRole", Collections.singletonMap("key", new String(longValue))));
+		cache.put(tokenDetails("token3"));
+
+		assertEquals(2, new OAuthTokenDetailsSnapshot(cache, file).save());
+
+		OAuthTokenDetailsCache restoredCache = new OAuthTokenDetailsCache();
+		assertEquals(2, new OAuthTokenDetailsSnapshot(restoredCache, file).load());
+		assertNotNull(restoredCache.get("token1"));
+		assertNull(restoredCache.get("token2"));
+		assertNotNull(restoredCache.get("token3"));
+	}
+
+	@Test
+	@RoxableTest(key = "c4075b08297b")
+	public void expiredEntriesShouldNotBeLoaded() throws IOException {
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.setMaxTimeToLive(1);
+		cache.put(tokenDetails("token1"));
+		new OAuthTokenDetailsSnapshot(cache, file).save();
+
+		// Let the entry saved with a 1 millisecond time to live expire
+		sleep(5);
+
+		OAuthTokenDetailsCache restoredCache = new OAuthTokenDetailsCache();
+		assertEquals(0, new OAuthTokenDetailsSnapshot(restoredCache, file).load());
+		assertEquals(0, restoredCache.size());
+	}
+
+	@Test
+	@RoxableTest(key = "8760886947d3")
+	public void snapshotFileShouldBeDeletedOnceLoaded() throws IOException {
+		OAuthTokenDetailsCache cache = new OAuthTokenDetailsCache();
+		cache.put(tokenDetails("token1"));
+		new OAuthTokenDetailsSnapshot(cache, file).save();
+
+		new OAuthTokenDetailsSnapshot(new OAuthTokenDetailsCache(), file).load();
+
+		assertFalse(file.exists());
+		assertEquals(0, new OAuthTokenDetailsSnapshot(new OAuthTokenDetailsCache(), file).load());
+	}
+
+	private OAuthTokenDetails tokenDetails(String accessToken) {
+		return new OAuthTokenDetails(123L, accessToken, new Date(System.currentTimeMillis() + ONE_HOUR), "clientKey", "userKey", null, "clientRole", null);
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
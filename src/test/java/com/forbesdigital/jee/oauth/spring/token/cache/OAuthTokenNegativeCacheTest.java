@@ -0,0 +1,74 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthTokenNegativeCache
+ */
+@RoxableTestClass(tags = {"oAuthTokenNegativeCache"})
+public class OAuthTokenNegativeCacheTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long NOW = 1000000000000L;
+	//</editor-fold>
+
+	private long now;
+	private OAuthTokenNegativeCache negativeCache;
+
+	@Before
+	public void setUp() {
+		now = NOW;
+		negativeCache = new OAuthTokenNegativeCache(100) {
+			@Override
+			long currentTimeMillis() {
+				return now;
+			}
+		};
+		negativeCache.setTimeToLive(1000);
+	}
+
+	@Test
+	@RoxableTest(key = "fbcf0e586d2e")
+	public void addedTokensShouldBeKnownUntilTheyExpire() {
+		negativeCache.add("token1");
+
+		assertTrue(negativeCache.contains("token1"));
+		assertFalse(negativeCache.contains("token2"));
+		now = NOW + 1000;
+		assertFalse(negativeCache.contains("token1"));
+		assertEquals(1, negativeCache.getHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "cd3f8f8289ea")
+	public void removedTokensShouldNotBeKnownAnymore() {
+		negativeCache.add("token1");
+		negativeCache.remove("token1");
+
+		assertFalse(negativeCache.contains("token1"));
+	}
+
+	@Test
+	@RoxableTest(key = "cf0958c2adc0")
+	public void sizeShouldBeBoundedByTheNumberOfSlots() {
+		for (int i = 0; i < 10000; i++) {
+			negativeCache.add("token" + i);
+		}
+
+		int known = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (negativeCache.contains("token" + i)) {
+				known++;
+			}
+		}
+		assertEquals(128, negativeCache.getMaxSize());
+		assertTrue(known <= 128);
+	}
+}
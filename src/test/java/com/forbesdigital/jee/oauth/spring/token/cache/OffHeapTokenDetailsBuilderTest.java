@@ -0,0 +1,208 @@
+package com.forbesdigital.jee.oauth.spring.token.cache;
+
+import com.forbesdigital.jee.oauth.spring.OAuthGrantedAuthority;
+import com.forbesdigital.jee.oauth.spring.token.IOAuthTokenDetailsBuilder;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see OffHeapTokenDetailsBuilder
+ */
+@RoxableTestClass(tags = {"offHeapTokenDetailsBuilder"})
+public class OffHeapTokenDetailsBuilderTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	private static final long NOW = 1000000000000L;
+	private static final String ACCESS_TOKEN = "aZ09-._~+/bcdefghijklm";
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthTokenDetailsBuilder delegate;
+	//</editor-fold>
+
+	private long now;
+	private OffHeapTokenDetailsBuilder builder;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		now = NOW;
+		builder = new TestBuilder(delegate, 1024, 128);
+	}
+
+	@Test
+	@RoxableTest(key = "f4f93857ca58")
+	public void storedTokenDetailsShouldBeMaterializedWithoutTheDelegate() {
+		OAuthTokenDetails details = new OAuthTokenDetails(123L, ACCESS_TOKEN, new Date(NOW + ONE_HOUR), "clientKey", null,
+			Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("scope1"), new OAuthGrantedAuthority("scope2")),
+			"clientRole", Collections.singletonMap("key", "value"));
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(details);
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+		OAuthTokenDetails storedDetails = builder.buildTokenDetails(ACCESS_TOKEN);
+
+		verify(delegate, times(1)).buildTokenDetails(ACCESS_TOKEN);
+		assertNotSame(details, storedDetails);
+		assertEquals(ACCESS_TOKEN, storedDetails.getUsername());
+		assertEquals(Long.valueOf(123L), storedDetails.getId());
+		assertEquals(details.getExpirationDate(), storedDetails.getExpirationDate());
+		assertEquals("clientKey", storedDetails.getClientKey());
+		assertNull(storedDetails.getUserKey());
+		assertEquals("clientRole", storedDetails.getClientRole());
+		assertEquals("scope2", storedDetails.getAuthorities().toArray(new GrantedAuthority[0])[1].getAuthority());
+		assertEquals("value", storedDetails.getProperties().get("key"));
+		assertEquals(1, builder.getHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "738b15a4dc73")
+	public void entriesShouldNotOutliveTheTokenExpirationDate() {
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(tokenDetails(ACCESS_TOKEN, NOW + 1000));
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+		now = NOW + 1000;
+		builder.buildTokenDetails(ACCESS_TOKEN);
+
+		verify(delegate, times(2)).buildTokenDetails(ACCESS_TOKEN);
+	}
+
+	@Test
+	@RoxableTest(key = "35b6eb5f884b")
+	public void tokenDetailsWithOtherAuthoritiesShouldBeStoredByName() {
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(new OAuthTokenDetails(123L, ACCESS_TOKEN, new Date(NOW + ONE_HOUR),
+			"clientKey", "userKey", Arrays.<GrantedAuthority>asList(new SimpleGrantedAuthority("ROLE_ADMIN")), "clientRole", null));
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+		OAuthTokenDetails materialized = builder.buildTokenDetails(ACCESS_TOKEN);
+
+		assertEquals(1, builder.size());
+		assertEquals(0, builder.getRejectionCount());
+		assertEquals("ROLE_ADMIN", materialized.getAuthorities().iterator().next().getAuthority());
+		verify(delegate, times(1)).buildTokenDetails(ACCESS_TOKEN);
+	}
+
+	@Test
+	@RoxableTest(key = "df985a88e3f5")
+	public void tokenDetailsWithUnnamedAuthoritiesShouldBeCountedAsRejected() {
+		GrantedAuthority unnamedAuthority = new GrantedAuthority() {
+			@Override
+			public String getAuthority() {
+				return null;
+			}
+		};
+		when(delegate.buildTokenDetails(ACCESS_TOKEN)).thenReturn(new OAuthTokenDetails(123L, ACCESS_TOKEN, new Date(NOW + ONE_HOUR),
+			"clientKey", "userKey", Arrays.asList(unnamedAuthority), "clientRole", null));
+
+		builder.buildTokenDetails(ACCESS_TOKEN);
+
+		assertEquals(0, builder.size());
+		assertEquals(1, builder.getRejectionCount());
+	}
+
+	@Test
+	@RoxableTest(key = "42f9b9077a96")
+	public void invalidateShouldRemoveTheEntryAndKeepTheOthersReachable() {
+		for (int i = 0; i < 64; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + ONE_HOUR));
+			builder.buildTokenDetails(accessToken);
+		}
+
+		for (int i = 0; i < 64; i += 2) {
+			builder.invalidate(token(i));
+		}
+
+		assertEquals(32, builder.size());
+		for (int i = 1; i < 64; i += 2) {
+			assertEquals(token(i), builder.buildTokenDetails(token(i)).getUsername());
+		}
+		assertEquals(32, builder.getHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "cec2d58a88a0")
+	public void compactionShouldReclaimExpiredAndDeadRecords() {
+		for (int i = 0; i < 64; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + (i % 2 == 0 ? 1000 : ONE_HOUR)));
+			builder.buildTokenDetails(accessToken);
+		}
+		long usedBytes = builder.getUsedBytes();
+
+		now = NOW + 1000;
+		builder.compact();
+
+		assertEquals(32, builder.size());
+		assertEquals(usedBytes / 2, builder.getUsedBytes());
+		for (int i = 1; i < 64; i += 2) {
+			assertEquals(token(i), builder.buildTokenDetails(token(i)).getUsername());
+		}
+		assertEquals(32, builder.getHitCount());
+	}
+
+	@Test
+	@RoxableTest(key = "e46803721c98")
+	public void fullSegmentsShouldBeCompactedBeforeRejectingNewEntries() {
+		builder = new TestBuilder(delegate, 16, 128);
+		for (int i = 0; i < 1000; i++) {
+			String accessToken = token(i);
+			when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + 1000));
+			builder.buildTokenDetails(accessToken);
+		}
+		assertTrue(builder.size() <= 16);
+		assertTrue(builder.getRejectionCount() > 0);
+
+		now = NOW + 1000;
+		String accessToken = token(1000);
+		when(delegate.buildTokenDetails(accessToken)).thenReturn(tokenDetails(accessToken, NOW + ONE_HOUR));
+		builder.buildTokenDetails(accessToken);
+		builder.buildTokenDetails(accessToken);
+
+		assertEquals(1, builder.getHitCount());
+	}
+
+	private String token(int i) {
+		String suffix = Integer.toString(i);
+		return ACCESS_TOKEN.substring(0, ACCESS_TOKEN.length() - suffix.length()) + suffix;
+	}
+
+	private OAuthTokenDetails tokenDetails(String accessToken, long expirationDate) {
+		return new OAuthTokenDetails(123L, accessToken, new Date(expirationDate), "clientKey", "userKey",
+			Arrays.<GrantedAuthority>asList(new OAuthGrantedAuthority("scope")), "clientRole", null);
+	}
+
+	/**
+	 * Builder whose clock is controlled by the test
+	 */
+	private class TestBuilder extends OffHeapTokenDetailsBuilder {
+
+		TestBuilder(IOAuthTokenDetailsBuilder delegate, int maxSize, int bytesPerEntry) {
+			super(delegate, maxSize, bytesPerEntry);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.forbesdigital.jee.oauth.spring.token.revocation;
+
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthRevocationEpochs
+ */
+@RoxableTestClass(tags = {"oAuthRevocationEpochs"})
+public class OAuthRevocationEpochsTest {
+
+	private OAuthRevocationEpochs epochs;
+
+	@Before
+	public void setUp() {
+		epochs = new OAuthRevocationEpochs();
+	}
+
+	@Test
+	@RoxableTest(key = "03b102352437")
+	public void revokingAClientShouldOnlyRevokeItsPreviousTokens() {
+		OAuthTokenDetails oldToken = tokenDetails("client1", "user1");
+		OAuthTokenDetails otherClientToken = tokenDetails("client2", "user1");
+
+		assertEquals(1, epochs.revokeClient("client1"));
+		OAuthTokenDetails newToken = tokenDetails("client1", "user1");
+
+		assertTrue(epochs.isRevoked(oldToken));
+		assertFalse(epochs.isRevoked(otherClientToken));
+		assertFalse(epochs.isRevoked(newToken));
+	}
+
+	@Test
+	@RoxableTest(key = "be9e35dc6311")
+	public void revokingAUserShouldRevokeItsTokensForAllTheClients() {
+		OAuthTokenDetails firstClientToken = tokenDetails("client1", "user1");
+		OAuthTokenDetails secondClientToken = tokenDetails("client2", "user1");
+		OAuthTokenDetails clientOnlyToken = tokenDetails("client1", null);
+
+		epochs.revokeUser("user1");
+
+		assertTrue(epochs.isRevoked(firstClientToken));
+		assertTrue(epochs.isRevoked(secondClientToken));
+		assertFalse(epochs.isRevoked(clientOnlyToken));
+	}
+
+	@Test
+	@RoxableTest(key = "a31edb25f0ac")
+	public void epochsShouldOnlyBeRaised() {
+		epochs.revokeClient("client1");
+		epochs.revokeClient("client1");
+
+		epochs.setClientEpoch("client1", 1);
+		assertEquals(2, epochs.getClientEpoch("client1"));
+
+		epochs.setClientEpoch("client1", 5);
+		epochs.setUserEpoch("user1", 3);
+		assertEquals(5, epochs.getClientEpoch("client1"));
+		assertEquals(3, epochs.getUserEpoch("user1"));
+		assertEquals(0, epochs.getUserEpoch(null));
+	}
+
+	private OAuthTokenDetails tokenDetails(String clientKey, String userKey) {
+		return new OAuthTokenDetails(123L, "accessToken", new Date(), clientKey, userKey, Collections.<GrantedAuthority>emptyList(),
+			"clientRole", null, epochs.getClientEpoch(clientKey), epochs.getUserEpoch(userKey));
+	}
+}
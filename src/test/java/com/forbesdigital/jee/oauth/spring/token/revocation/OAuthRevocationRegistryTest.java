@@ -0,0 +1,95 @@
+package com.forbesdigital.jee.oauth.spring.token.revocation;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see OAuthRevocationRegistry
+ */
+@RoxableTestClass(tags = {"oAuthRevocationRegistry"})
+public class OAuthRevocationRegistryTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long NOW = 1000000000000L;
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	//</editor-fold>
+
+	private long now;
+	private OAuthRevocationRegistry registry;
+
+	@Before
+	public void setUp() {
+		now = NOW;
+		registry = new TestRegistry(100);
+	}
+
+	@Test
+	@RoxableTest(key = "f6edca2ce650")
+	public void revokedTokensShouldBeRevokedAndTheOthersNot() {
+		for (long id = 0; id < 100; id += 2) {
+			registry.revoke(id, new Date(NOW + ONE_HOUR));
+		}
+
+		for (long id = 0; id < 100; id++) {
+			assertEquals(id % 2 == 0, registry.isRevoked(id));
+		}
+		assertFalse(registry.isRevoked((Long) null));
+	}
+
+	@Test
+	@RoxableTest(key = "428c82beea4c")
+	public void expiredTokensShouldBePrunedAndForgotten() {
+		registry.revoke(1L, new Date(NOW + 1000));
+		registry.revoke(2L, new Date(NOW + ONE_HOUR));
+		registry.revoke(3L, new Date(NOW));
+
+		now = NOW + 1000;
+		registry.prune();
+
+		assertEquals(1, registry.size());
+		assertFalse(registry.isRevoked(1L));
+		assertTrue(registry.isRevoked(2L));
+		assertFalse(registry.isRevoked(3L));
+	}
+
+	@Test
+	@RoxableTest(key = "2d96c000a09b")
+	public void theFilterShouldGrowBeyondTheExpectedRevocations() {
+		for (long id = 0; id < 1000; id++) {
+			registry.revoke(id * 7, new Date(NOW + ONE_HOUR));
+		}
+
+		int wronglyRevoked = 0;
+		for (long id = 0; id < 7000; id++) {
+			if (id % 7 == 0) {
+				assertTrue(registry.isRevoked(id));
+			} else if (registry.isRevoked(id)) {
+				wronglyRevoked++;
+			}
+		}
+		assertEquals(0, wronglyRevoked);
+		assertEquals(1000, registry.size());
+	}
+
+	/**
+	 * Registry whose clock is controlled by the test
+	 */
+	private class TestRegistry extends OAuthRevocationRegistry {
+
+		TestRegistry(int expectedRevocations) {
+			super(expectedRevocations);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return now;
+		}
+	}
+}
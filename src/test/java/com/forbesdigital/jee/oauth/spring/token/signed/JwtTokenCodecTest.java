@@ -0,0 +1,174 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see JwtTokenCodec
+ */
+@RoxableTestClass(tags = {"jwtTokenCodec"})
+public class JwtTokenCodecTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long NOW = 1000000000000L;
+	private static final Date EXPIRATION_DATE = new Date(NOW + 60 * 60 * 1000L);
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] OTHER_SECRET = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII);
+	private static final Set<String> SCOPES = new LinkedHashSet<>(Arrays.asList("scope1", "scope2"));
+	//</editor-fold>
+
+	private JwtKeyRing keyRing;
+	private JwtTokenCodec codec;
+
+	@Before
+	public void setUp() {
+		keyRing = new JwtKeyRing();
+		keyRing.addHmacKey("k1", SECRET);
+		keyRing.setSigningKeyId("k1");
+		codec = new TestCodec(keyRing);
+	}
+
+	@Test
+	@RoxableTest(key = "4cf28dcebf9b")
+	public void hmacTokensShouldBeDecodedToTheirDetails() {
+		String accessToken = encode();
+
+		OAuthTokenDetails details = codec.decode(accessToken);
+
+		assertTrue(OAuthSyntaxValidator.isValidAccessToken(accessToken, 0));
+		assertDetails(accessToken, details);
+	}
+
+	@Test
+	@RoxableTest(key = "246510208d95")
+	public void rsaTokensShouldBeVerifiedWithThePublicKeyOnly() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+		keyRing.addRsaKey("rsa", keyPair.getPublic(), keyPair.getPrivate());
+		keyRing.setSigningKeyId("rsa");
+		String accessToken = encode();
+
+		JwtKeyRing verifyingKeyRing = new JwtKeyRing();
+		verifyingKeyRing.addRsaKey("rsa", keyPair.getPublic(), null);
+
+		assertDetails(accessToken, new JwtTokenCodec(verifyingKeyRing).decode(accessToken));
+	}
+
+	@Test
+	@RoxableTest(key = "90d15302e6e0")
+	public void tamperedTokensShouldBeRejected() {
+		String accessToken = encode();
+		String[] parts = accessToken.split("\\.");
+		String forgedPayload = Base64Url.encode(("{\"exp\":" + Long.MAX_VALUE / 1000 + ",\"scope\":\"admin\"}").getBytes(StandardCharsets.UTF_8));
+		char lastChar = accessToken.charAt(accessToken.length() - 1);
+
+		assertNull(codec.decode(parts[0] + "." + forgedPayload + "." + parts[2]));
+		assertNull(codec.decode(accessToken.substring(0, accessToken.length() - 1) + (lastChar == 'A' ? 'B' : 'A')));
+		assertNull(codec.decode(parts[0] + "." + parts[1] + "."));
+		assertNull(codec.decode(parts[0] + "." + parts[1]));
+		assertNull(codec.decode(accessToken + ".x"));
+	}
+
+	@Test
+	@RoxableTest(key = "b59ed8ac328e")
+	public void foreignHeadersShouldBeRejected() {
+		String accessToken = encode();
+		String payload = accessToken.substring(accessToken.indexOf('.') + 1, accessToken.lastIndexOf('.'));
+		String noneHeader = Base64Url.encode("{\"alg\":\"none\",\"typ\":\"JWT\",\"kid\":\"k1\"}".getBytes(StandardCharsets.UTF_8));
+		String unknownKeyHeader = Base64Url.encode("{\"alg\":\"HS256\",\"typ\":\"JWT\",\"kid\":\"k2\"}".getBytes(StandardCharsets.UTF_8));
+
+		assertNull(codec.decode(noneHeader + "." + payload + "."));
+		assertNull(codec.decode(unknownKeyHeader + "." + payload + "." + accessToken.substring(accessToken.lastIndexOf('.') + 1)));
+	}
+
+	@Test
+	@RoxableTest(key = "45da00848df7")
+	public void tokensShouldStayValidUntilTheirKeyIsRemoved() {
+		String oldAccessToken = encode();
+		keyRing.addHmacKey("k2", OTHER_SECRET);
+		keyRing.setSigningKeyId("k2");
+		String newAccessToken = encode();
+
+		assertNotNull(codec.decode(oldAccessToken));
+		assertNotNull(codec.decode(newAccessToken));
+
+		keyRing.removeKey("k1");
+
+		assertNull(codec.decode(oldAccessToken));
+		assertNotNull(codec.decode(newAccessToken));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	@RoxableTest(key = "bc9e9766e627")
+	public void theSigningKeyShouldNotBeRemovable() {
+		keyRing.removeKey("k1");
+	}
+
+	@Test
+	@RoxableTest(key = "e5e6382eca04")
+	public void tokensFromAnotherIssuerShouldBeRejected() {
+		codec.setIssuer("issuer1");
+		String accessToken = encode();
+		codec.setIssuer("issuer2");
+
+		assertNull(codec.decode(accessToken));
+	}
+
+	@Test
+	@RoxableTest(key = "f7cad1836e54")
+	public void expiredTokensShouldBeDecodedAsExpired() {
+		String accessToken = codec.encode(123L, new Date(NOW - 1000), "clientKey", null, "clientRole", SCOPES);
+
+		assertTrue(codec.decode(accessToken).getExpirationDate().before(new Date(NOW)));
+	}
+
+	private String encode() {
+		return codec.encode(123L, EXPIRATION_DATE, "clientKey", "userKey", "clientRole", SCOPES);
+	}
+
+	private void assertDetails(String accessToken, OAuthTokenDetails details) {
+		assertEquals(Long.valueOf(123L), details.getId());
+		assertEquals(accessToken, details.getUsername());
+		assertEquals(EXPIRATION_DATE, details.getExpirationDate());
+		assertEquals("clientKey", details.getClientKey());
+		assertEquals("userKey", details.getUserKey());
+		assertEquals("clientRole", details.getClientRole());
+		GrantedAuthority[] authorities = details.getAuthorities().toArray(new GrantedAuthority[0]);
+		assertEquals(2, authorities.length);
+		assertEquals("scope1", authorities[0].getAuthority());
+		assertEquals("scope2", authorities[1].getAuthority());
+	}
+
+	/**
+	 * Codec whose clock is controlled by the test
+	 */
+	private static class TestCodec extends JwtTokenCodec {
+
+		TestCodec(JwtKeyRing keyRing) {
+			super(keyRing);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return NOW;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.OAuthSyntaxValidator;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see SignedTokenCodec
+ */
+@RoxableTestClass(tags = {"signedTokenCodec"})
+public class SignedTokenCodecTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final long ONE_HOUR = 60 * 60 * 1000L;
+	private static final byte[] SECRET_1 = "0123456789abcdef0123456789abcdef".getBytes();
+	private static final byte[] SECRET_2 = "fedcba9876543210fedcba9876543210".getBytes();
+	//</editor-fold>
+
+	private SignedTokenCodec codec;
+
+	@Before
+	public void setUp() {
+		codec = new SignedTokenCodec(Arrays.asList("scope:read", "scope:write", "admin"));
+		codec.addKey(1, SECRET_1);
+		codec.setSigningKeyId(1);
+	}
+
+	@Test
+	@RoxableTest(key = "9fe98132da9e")
+	public void decodeShouldReturnTheContentOfEncodedTokens() {
+		Date expirationDate = new Date((System.currentTimeMillis() + ONE_HOUR) / 1000 * 1000);
+
+		String accessToken = codec.encode(123456789L, expirationDate, new HashSet<>(Arrays.asList("scope:read", "admin")));
+		SignedToken signedToken = codec.decode(accessToken);
+
+		assertEquals(SignedTokenCodec.TOKEN_LENGTH, accessToken.length());
+		assertTrue(OAuthSyntaxValidator.isValidAccessToken(accessToken, SignedTokenCodec.TOKEN_LENGTH));
+		assertEquals(1, signedToken.getKeyId());
+		assertEquals(123456789L, signedToken.getId());
+		assertEquals(expirationDate, signedToken.getExpirationDate());
+		assertEquals(new HashSet<>(Arrays.asList("scope:read", "admin")), signedToken.getScopes());
+		assertFalse(signedToken.isExpired());
+	}
+
+	@Test
+	@RoxableTest(key = "fcdfd20383f1")
+	public void decodeShouldRejectTamperedTokens() {
+		String accessToken = codec.encode(1L, new Date(System.currentTimeMillis() + ONE_HOUR), Collections.singleton("scope:read"));
+
+		for (int i = 0; i < accessToken.length(); i++) {
+			char tampered = accessToken.charAt(i) == 'A' ? 'B' : 'A';
+			assertNull("Character " + i, codec.decode(accessToken.substring(0, i) + tampered + accessToken.substring(i + 1)));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "5186228312b7")
+	public void decodeShouldRejectTokensWhichAreNotSigned() {
+		assertNull(codec.decode("aZ09-._~+/bcdefghijklm"));
+		assertNull(codec.decode(null));
+	}
+
+	@Test
+	@RoxableTest(key = "d5eea5f27b67")
+	public void expiredTokensShouldBeDecodedAsExpired() {
+		String accessToken = codec.encode(1L, new Date(System.currentTimeMillis() - 1000), Collections.<String>emptySet());
+
+		assertTrue(codec.decode(accessToken).isExpired());
+	}
+
+	@Test
+	@RoxableTest(key = "9286a21e3e8c")
+	public void tokensShouldStayValidWhileTheirKeyIsActive() {
+		String oldAccessToken = codec.encode(1L, new Date(System.currentTimeMillis() + ONE_HOUR), Collections.<String>emptySet());
+
+		codec.addKey(2, SECRET_2);
+		codec.setSigningKeyId(2);
+		String newAccessToken = codec.encode(2L, new Date(System.currentTimeMillis() + ONE_HOUR), Collections.<String>emptySet());
+
+		assertNotNull(codec.decode(oldAccessToken));
+		assertEquals(2, codec.decode(newAccessToken).getKeyId());
+
+		codec.removeKey(1);
+		assertNull(codec.decode(oldAccessToken));
+		assertNotNull(codec.decode(newAccessToken));
+	}
+
+	@Test
+	@RoxableTest(key = "cce61c11f5d8")
+	public void tokensSignedWithAnotherSecretShouldBeRejected() {
+		SignedTokenCodec otherCodec = new SignedTokenCodec(Arrays.asList("scope:read"));
+		otherCodec.addKey(1, SECRET_2);
+		otherCodec.setSigningKeyId(1);
+
+		assertNull(codec.decode(otherCodec.encode(1L, new Date(System.currentTimeMillis() + ONE_HOUR), Collections.<String>emptySet())));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	@RoxableTest(key = "21cbc841ef1f")
+	public void encodeShouldRejectUnknownScopes() {
+		codec.encode(1L, new Date(), Collections.singleton("unknown"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	@RoxableTest(key = "e91dd66dc75c")
+	public void signingKeyShouldNotBeRemovable() {
+		codec.removeKey(1);
+	}
+}
@@ -0,0 +1,60 @@
+package com.forbesdigital.jee.oauth.spring.token.signed;
+
+import com.forbesdigital.jee.oauth.spring.token.OAuthTokenDetails;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @see SignedTokenDetailsBuilder
+ */
+@RoxableTestClass(tags = {"signedTokenDetailsBuilder"})
+public class SignedTokenDetailsBuilderTest {
+
+	//<editor-fold defaultstate="collapsed" desc="Mocks">
+	@Mock
+	private IOAuthSignedTokenDetailsBuilder delegate;
+	@Mock
+	private OAuthTokenDetails tokenDetails;
+	//</editor-fold>
+
+	private SignedTokenCodec codec;
+	private SignedTokenDetailsBuilder builder;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		codec = new SignedTokenCodec(Collections.<String>emptyList());
+		codec.addKey(1, "0123456789abcdef0123456789abcdef".getBytes());
+		codec.setSigningKeyId(1);
+		builder = new SignedTokenDetailsBuilder(codec, delegate);
+	}
+
+	@Test
+	@RoxableTest(key = "968f9153c49c")
+	public void validTokensShouldBeLookedUpThroughTheDelegate() {
+		String accessToken = codec.encode(123L, new Date(System.currentTimeMillis() + 60000), Collections.<String>emptySet());
+		when(delegate.buildTokenDetails(eq(accessToken), isA(SignedToken.class))).thenReturn(tokenDetails);
+
+		assertSame(tokenDetails, builder.buildTokenDetails(accessToken));
+	}
+
+	@Test
+	@RoxableTest(key = "9c7eaf8bb446")
+	public void invalidTokensShouldNotBeLookedUp() {
+		assertNull(builder.buildTokenDetails("aZ09-._~+/bcdefghijklm"));
+		verifyZeroInteractions(delegate);
+	}
+}